@@ -0,0 +1,245 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import javax.jdo.query.BooleanExpression;
+
+import org.datanucleus.api.jdo.query.BooleanExpressionImpl;
+import org.datanucleus.store.query.expression.DyadicExpression;
+import org.datanucleus.store.query.expression.Expression;
+import org.datanucleus.store.query.expression.Literal;
+import org.datanucleus.store.query.expression.PrimaryExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the in-memory evaluation of a filter over a list of candidates, comparing
+ * <ul>
+ * <li>"evaluator" : the Predicate compiled by the Evaluator of the generated Q class ("evaluators")</li>
+ * <li>"reflective" : an interpreter of the same query expression reading the members by reflection and comparing them boxed,
+ * as an evaluator of queries without the generated accessors would</li>
+ * <li>"handWritten" : a lambda reading the fields directly, as the baseline</li>
+ * </ul>
+ * The filter is "this.quantity &gt; 50 &amp;&amp; this.price &lt; 20.0 &amp;&amp; this.name != null".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark
+{
+    private static final String ITEM_SOURCE = "package bench.model;\n\n" +
+        "@javax.jdo.annotations.PersistenceCapable\n" +
+        "public class Item\n" +
+        "{\n" +
+        "    String name;\n" +
+        "    int quantity;\n" +
+        "    double price;\n" +
+        "\n" +
+        "    public static java.util.List<Object> createItems(int size)\n" +
+        "    {\n" +
+        "        java.util.List<Object> items = new java.util.ArrayList<>(size);\n" +
+        "        for (int i = 0; i < size; i++)\n" +
+        "        {\n" +
+        "            Item item = new Item();\n" +
+        "            item.name = (i % 10 == 0 ? null : \"item\" + i);\n" +
+        "            item.quantity = i % 100;\n" +
+        "            item.price = (i % 400) / 10.0;\n" +
+        "            items.add(item);\n" +
+        "        }\n" +
+        "        return items;\n" +
+        "    }\n" +
+        "\n" +
+        "    public static java.util.function.Predicate<Item> handWritten()\n" +
+        "    {\n" +
+        "        return item -> item.quantity > 50 && item.price < 20.0 && item.name != null;\n" +
+        "    }\n" +
+        "}\n";
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private List<Object> items;
+
+    private Predicate<Object> evaluator;
+
+    private Predicate<Object> reflective;
+
+    private Predicate<Object> handWritten;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    throws Exception
+    {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("bench.model.Item", ITEM_SOURCE);
+        Map<String, String> options = new HashMap<>();
+        options.put("evaluators", "true");
+        InMemoryCompiler.Result result = InMemoryCompiler.compile(sources, options);
+        if (!result.succeeded())
+        {
+            throw new IllegalStateException("Compilation failed : " + result.getErrors());
+        }
+
+        ClassLoader loader = result.newClassLoader();
+        Class<?> itemClass = Class.forName("bench.model.Item", true, loader);
+        items = (List<Object>)itemClass.getMethod("createItems", int.class).invoke(null, size);
+        handWritten = (Predicate<Object>)itemClass.getMethod("handWritten").invoke(null);
+
+        Expression filter = new DyadicExpression(
+            new DyadicExpression(
+                new DyadicExpression(new PrimaryExpression(Arrays.asList("this", "quantity")), Expression.OP_GT, new Literal(50)),
+                Expression.OP_AND,
+                new DyadicExpression(new PrimaryExpression(Arrays.asList("this", "price")), Expression.OP_LT, new Literal(20.0))),
+            Expression.OP_AND,
+            new DyadicExpression(new PrimaryExpression(Arrays.asList("this", "name")), Expression.OP_NOTEQ, new Literal(null)));
+        evaluator = (Predicate<Object>)Class.forName("bench.model.QItem$Evaluator", true, loader).getMethod("compile", BooleanExpression.class)
+            .invoke(null, new BooleanExpressionImpl(filter));
+        if (evaluator == null)
+        {
+            throw new IllegalStateException("Filter not compiled by the Evaluator");
+        }
+        reflective = new ReflectivePredicate(itemClass, filter);
+
+        int expected = count(handWritten);
+        if (count(evaluator) != expected || count(reflective) != expected)
+        {
+            throw new IllegalStateException("Predicates disagree : evaluator=" + count(evaluator) + " reflective=" + count(reflective) +
+                " handWritten=" + expected);
+        }
+    }
+
+    private int count(Predicate<Object> predicate)
+    {
+        int count = 0;
+        for (Object item : items)
+        {
+            if (predicate.test(item))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int evaluator()
+    {
+        return count(evaluator);
+    }
+
+    @Benchmark
+    public int reflective()
+    {
+        return count(reflective);
+    }
+
+    @Benchmark
+    public int handWritten()
+    {
+        return count(handWritten);
+    }
+
+    /**
+     * Interpreter of a filter of AND and comparisons of members of the candidate with literals, walking the query expression for each
+     * candidate, reading the members by reflection and comparing them boxed.
+     */
+    private static class ReflectivePredicate implements Predicate<Object>
+    {
+        private final Expression filter;
+
+        private final Map<String, Field> fields = new HashMap<>();
+
+        ReflectivePredicate(Class<?> cls, Expression filter)
+        {
+            this.filter = filter;
+            for (Field field : cls.getDeclaredFields())
+            {
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+            }
+        }
+
+        @Override
+        public boolean test(Object obj)
+        {
+            return (Boolean)evaluate(filter, obj);
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private Object evaluate(Expression expr, Object obj)
+        {
+            if (expr instanceof Literal)
+            {
+                return ((Literal)expr).getLiteral();
+            }
+            else if (expr instanceof PrimaryExpression)
+            {
+                try
+                {
+                    return fields.get(((PrimaryExpression)expr).getTuples().get(1)).get(obj);
+                }
+                catch (IllegalAccessException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            Expression.Operator op = expr.getOperator();
+            Object left = evaluate(expr.getLeft(), obj);
+            if (op == Expression.OP_AND)
+            {
+                return (Boolean)left && (Boolean)evaluate(expr.getRight(), obj);
+            }
+            Object right = evaluate(expr.getRight(), obj);
+            if (op == Expression.OP_NOTEQ)
+            {
+                return (left == null ? right != null : !left.equals(right));
+            }
+            if (left == null || right == null)
+            {
+                return false;
+            }
+            int cmp = (left instanceof Number && right instanceof Number) ?
+                Double.compare(((Number)left).doubleValue(), ((Number)right).doubleValue()) : ((Comparable)left).compareTo(right);
+            return (op == Expression.OP_GT ? cmp > 0 : cmp < 0);
+        }
+    }
+}
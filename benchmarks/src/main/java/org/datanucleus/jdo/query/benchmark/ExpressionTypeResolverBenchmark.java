@@ -0,0 +1,239 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jdo.annotations.PersistenceCapable;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.datanucleus.jdo.query.ExpressionTypeResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Microbenchmark of the resolution of the query expression types of a member from its type, by the lookup tables of the
+ * ExpressionTypeResolver, against the chains of name comparisons that it replaced (see {@link ChainedTypeNames}).
+ * The member types are those of the fields of a class analysed by javac in the setup, covering each kind of supported type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionTypeResolverBenchmark
+{
+    private static final int MEMBER_COUNT = 32;
+
+    private static final String SOURCE = String.join("\n",
+        "package bench.types;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Members",
+        "{",
+        "    enum Status {A, B}",
+        "    boolean f0; byte f1; char f2; double f3; float f4; int f5; long f6; short f7;",
+        "    Boolean f8; Byte f9; Character f10; Double f11; Float f12; Integer f13; Long f14; Short f15;",
+        "    java.math.BigInteger f16; java.math.BigDecimal f17; String f18; java.util.Date f19; java.sql.Date f20; java.sql.Time f21;",
+        "    java.time.LocalDate f22; java.time.LocalTime f23; java.time.LocalDateTime f24; java.util.Optional<String> f25; Status f26;",
+        "    java.util.List<String> f27; java.util.Map<String, Long> f28; java.util.Set<Members> f29; Members f30; java.util.UUID f31;",
+        "}");
+
+    private final List<TypeMirror> types = new ArrayList<>();
+
+    private ExpressionTypeResolver resolver;
+
+    private ChainedTypeNames chained;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        SimpleJavaFileObject source = new SimpleJavaFileObject(URI.create("mem:///bench/types/Members.java"), Kind.SOURCE)
+        {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors)
+            {
+                return SOURCE;
+            }
+        };
+        JavacTask task = (JavacTask)compiler.getTask(null, null, null, Collections.singletonList("-proc:none"), null, Collections.singletonList(source));
+        try
+        {
+            task.analyze();
+        }
+        catch (IOException ioe)
+        {
+            throw new IllegalStateException(ioe);
+        }
+
+        TypeElement membersEl = task.getElements().getTypeElement("bench.types.Members");
+        for (Element member : membersEl.getEnclosedElements())
+        {
+            if (member.getKind() == ElementKind.FIELD)
+            {
+                types.add(member.asType());
+            }
+        }
+        if (types.size() != MEMBER_COUNT)
+        {
+            throw new IllegalStateException("Expected " + MEMBER_COUNT + " members but found " + types.size());
+        }
+
+        resolver = new ExpressionTypeResolver(el -> el.getAnnotation(PersistenceCapable.class) != null, false);
+        chained = new ChainedTypeNames();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEMBER_COUNT)
+    public void resolver(Blackhole bh)
+    {
+        for (TypeMirror type : types)
+        {
+            ExpressionTypeResolver.ExpressionTypes exprTypes = resolver.resolve(type);
+            bh.consume(exprTypes.getInterfaceName());
+            bh.consume(exprTypes.getImplName());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEMBER_COUNT)
+    public void chained(Blackhole bh)
+    {
+        for (TypeMirror type : types)
+        {
+            bh.consume(chained.getInterfaceName(type));
+            bh.consume(chained.getImplName(type));
+        }
+    }
+
+    /**
+     * The resolution as it was before the ExpressionTypeResolver, i.e a chain of comparisons of the type name with each supported type,
+     * once for the interface name and again for the implementation name (the geospatial types, being off by default, are omitted).
+     */
+    static class ChainedTypeNames
+    {
+        private static final String[][] TYPES = {
+            {"java.lang.Boolean", "BooleanExpression", "BooleanExpressionImpl"},
+            {"java.lang.Byte", "ByteExpression", "ByteExpressionImpl"},
+            {"java.lang.Character", "CharacterExpression", "CharacterExpressionImpl"},
+            {"java.lang.Double", "NumericExpression<Double>", "NumericExpressionImpl<Double>"},
+            {"java.lang.Float", "NumericExpression<Float>", "NumericExpressionImpl<Float>"},
+            {"java.lang.Integer", "NumericExpression<Integer>", "NumericExpressionImpl<Integer>"},
+            {"java.lang.Long", "NumericExpression<Long>", "NumericExpressionImpl<Long>"},
+            {"java.lang.Short", "NumericExpression<Short>", "NumericExpressionImpl<Short>"},
+            {"java.math.BigInteger", "NumericExpression<java.math.BigInteger>", "NumericExpressionImpl<java.math.BigInteger>"},
+            {"java.math.BigDecimal", "NumericExpression<java.math.BigDecimal>", "NumericExpressionImpl<java.math.BigDecimal>"},
+            {"java.lang.String", "StringExpression", "StringExpressionImpl"},
+            {"java.util.Date", "DateTimeExpression", "DateTimeExpressionImpl"},
+            {"java.sql.Date", "DateExpression", "DateExpressionImpl"},
+            {"java.sql.Time", "TimeExpression", "TimeExpressionImpl"},
+            {"java.time.LocalDate", "LocalDateExpression", "LocalDateExpressionImpl"},
+            {"java.time.LocalTime", "LocalTimeExpression", "LocalTimeExpressionImpl"},
+            {"java.time.LocalDateTime", "LocalDateTimeExpression", "LocalDateTimeExpressionImpl"}};
+
+        private static final TypeKind[] PRIMITIVE_KINDS = {TypeKind.BOOLEAN, TypeKind.BYTE, TypeKind.CHAR, TypeKind.DOUBLE, TypeKind.FLOAT,
+            TypeKind.INT, TypeKind.LONG, TypeKind.SHORT};
+
+        String getInterfaceName(TypeMirror type)
+        {
+            return getName(type, 1);
+        }
+
+        String getImplName(TypeMirror type)
+        {
+            return getName(type, 2);
+        }
+
+        private String getName(TypeMirror inputType, int column)
+        {
+            TypeMirror type = inputType;
+            List<? extends TypeMirror> typeArgs = null;
+            if (type.getKind() == TypeKind.DECLARED)
+            {
+                typeArgs = ((DeclaredType)type).getTypeArguments();
+                type = ((DeclaredType)type).asElement().asType();
+            }
+            String typeName = type.toString();
+
+            for (int i = 0; i < TYPES.length; i++)
+            {
+                if ((i < PRIMITIVE_KINDS.length && type.getKind() == PRIMITIVE_KINDS[i]) || TYPES[i][0].equals(typeName))
+                {
+                    return TYPES[i][column];
+                }
+            }
+            if (typeName.startsWith("java.util.Optional"))
+            {
+                String name = (column == 1 ? "OptionalExpression" : "OptionalExpressionImpl");
+                return (typeArgs != null && !typeArgs.isEmpty()) ? name + "<" + typeArgs.get(0) + ">" : name;
+            }
+            if (type.getKind() == TypeKind.DECLARED && ((DeclaredType)type).asElement().getKind() == ElementKind.ENUM)
+            {
+                return (column == 1 ? "EnumExpression" : "EnumExpressionImpl");
+            }
+            if (typeName.startsWith("java.util.List") || typeName.startsWith("java.util.ArrayList") || typeName.startsWith("java.util.LinkedList"))
+            {
+                return (column == 1 ? "ListExpression" : "ListExpressionImpl");
+            }
+            if (typeName.startsWith("java.util.Map") || typeName.startsWith("java.util.HashMap") || typeName.startsWith("java.util.TreeMap"))
+            {
+                return (column == 1 ? "MapExpression" : "MapExpressionImpl");
+            }
+            if (typeName.startsWith("java.util.Set") || typeName.startsWith("java.util.HashSet") || typeName.startsWith("java.util.Collection"))
+            {
+                return (column == 1 ? "CollectionExpression" : "CollectionExpressionImpl");
+            }
+            if (type.getKind() == TypeKind.DECLARED && ((DeclaredType)type).asElement().getAnnotation(PersistenceCapable.class) != null)
+            {
+                String qclassName = typeName.substring(0, typeName.lastIndexOf('.') + 1) + "Q" + typeName.substring(typeName.lastIndexOf('.') + 1);
+                return qclassName;
+            }
+            int genericsStart = typeName.indexOf('<');
+            String typeNameWithoutGenerics = (genericsStart > 0 ? typeName.substring(0, genericsStart) : typeName);
+            return (column == 1 ? "ObjectExpression<" : "ObjectExpressionImpl<") + typeNameWithoutGenerics + ">";
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.datanucleus.jdo.query.JDOQueryProcessor;
+
+/**
+ * Compiler of sources held in memory with the JDOQueryProcessor, keeping the generated sources and the classes in memory too.
+ * The classpath is that of this process (i.e the JDO API, and DataNucleus JDO API and core).
+ */
+public final class InMemoryCompiler
+{
+    private InMemoryCompiler()
+    {
+    }
+
+    /**
+     * Result of a compilation.
+     */
+    public static final class Result
+    {
+        final boolean succeeded;
+        final List<String> errors;
+        final Map<String, String> generatedSources;
+        final Map<String, byte[]> classes;
+        final long processorNanos;
+
+        Result(boolean succeeded, List<String> errors, Map<String, String> generatedSources, Map<String, byte[]> classes, long processorNanos)
+        {
+            this.succeeded = succeeded;
+            this.errors = errors;
+            this.generatedSources = generatedSources;
+            this.classes = classes;
+            this.processorNanos = processorNanos;
+        }
+
+        public boolean succeeded()
+        {
+            return succeeded;
+        }
+
+        public List<String> getErrors()
+        {
+            return errors;
+        }
+
+        /**
+         * Accessor for the sources generated by the processor.
+         * @return The sources keyed by the fully-qualified class name
+         */
+        public Map<String, String> getGeneratedSources()
+        {
+            return generatedSources;
+        }
+
+        /**
+         * Accessor for the bytes of the compiled classes (including those of the generated sources).
+         * @return The class bytes keyed by the binary class name
+         */
+        public Map<String, byte[]> getClasses()
+        {
+            return classes;
+        }
+
+        /**
+         * Accessor for the time spent in the processor (initialising it and processing each round).
+         * @return The time in nanoseconds
+         */
+        public long getProcessorNanos()
+        {
+            return processorNanos;
+        }
+
+        /**
+         * Accessor for the total size of the compiled classes whose binary name starts with the specified prefix.
+         * @param prefix Prefix of the class name, e.g "bench.model.Q"
+         * @return The size in bytes
+         */
+        public long getClassBytes(String prefix)
+        {
+            long size = 0;
+            for (Map.Entry<String, byte[]> entry : classes.entrySet())
+            {
+                if (entry.getKey().startsWith(prefix))
+                {
+                    size += entry.getValue().length;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Method to create a (new) class loader for the compiled classes.
+         * @return The class loader
+         */
+        public ClassLoader newClassLoader()
+        {
+            return new ClassLoader(InMemoryCompiler.class.getClassLoader())
+            {
+                @Override
+                protected Class<?> findClass(String name)
+                throws ClassNotFoundException
+                {
+                    byte[] bytes = classes.get(name);
+                    if (bytes == null)
+                    {
+                        throw new ClassNotFoundException(name);
+                    }
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+            };
+        }
+    }
+
+    /**
+     * Method to compile the provided sources, running the JDOQueryProcessor with the provided options.
+     * @param sources The sources keyed by the fully-qualified class name
+     * @param options The processor options (without the "-A")
+     * @return The result
+     */
+    public static Result compile(Map<String, String> sources, Map<String, String> options)
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, String> generatedSources = new ConcurrentHashMap<>();
+        Map<String, byte[]> classes = new ConcurrentHashMap<>();
+        TimedProcessor processor = new TimedProcessor(new JDOQueryProcessor());
+
+        List<JavaFileObject> compilationUnits = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sources.entrySet())
+        {
+            compilationUnits.add(new SourceFile(entry.getKey(), entry.getValue()));
+        }
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> entry : options.entrySet())
+        {
+            args.add("-A" + entry.getKey() + "=" + entry.getValue());
+        }
+
+        boolean succeeded;
+        try (JavaFileManager fileManager = new MemoryFileManager(compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8),
+            generatedSources, classes))
+        {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, args, null, compilationUnits);
+            task.setProcessors(Collections.singletonList(processor));
+            succeeded = task.call();
+        }
+        catch (IOException ioe)
+        {
+            throw new IllegalStateException(ioe);
+        }
+
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+        {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            {
+                errors.add(diagnostic.toString());
+            }
+        }
+        return new Result(succeeded, errors, generatedSources, classes, processor.nanos);
+    }
+
+    /**
+     * Source held as a String.
+     */
+    private static class SourceFile extends SimpleJavaFileObject
+    {
+        private final String code;
+
+        SourceFile(String className, String code)
+        {
+            super(URI.create("mem:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return code;
+        }
+    }
+
+    /**
+     * Generated source, written to memory and then compiled as part of the same compilation.
+     */
+    private static class GeneratedSourceFile extends SimpleJavaFileObject
+    {
+        private final String className;
+        private final Map<String, String> generatedSources;
+
+        GeneratedSourceFile(String className, Map<String, String> generatedSources)
+        {
+            super(URI.create("mem:///generated/" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.className = className;
+            this.generatedSources = generatedSources;
+        }
+
+        @Override
+        public Writer openWriter()
+        {
+            return new StringWriter()
+            {
+                @Override
+                public void close()
+                {
+                    generatedSources.put(className, toString());
+                }
+            };
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return generatedSources.get(className);
+        }
+    }
+
+    /**
+     * Class file, written to memory.
+     */
+    private static class ClassFile extends SimpleJavaFileObject
+    {
+        private final String className;
+        private final Map<String, byte[]> classes;
+
+        ClassFile(String className, Map<String, byte[]> classes)
+        {
+            super(URI.create("mem:///classes/" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.classes = classes;
+        }
+
+        @Override
+        public OutputStream openOutputStream()
+        {
+            return new ByteArrayOutputStream()
+            {
+                @Override
+                public void close()
+                {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+    }
+
+    /**
+     * Resource (e.g the processor statistics), written to memory and discarded.
+     */
+    private static class ResourceFile extends SimpleJavaFileObject
+    {
+        ResourceFile(String relativeName)
+        {
+            super(URI.create("mem:///resources/" + relativeName), Kind.OTHER);
+        }
+
+        @Override
+        public OutputStream openOutputStream()
+        {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public Writer openWriter()
+        {
+            return new StringWriter();
+        }
+    }
+
+    /**
+     * File manager keeping the generated sources and the compiled classes in memory.
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager>
+    {
+        private final Map<String, String> generatedSources;
+        private final Map<String, byte[]> classes;
+
+        MemoryFileManager(JavaFileManager fileManager, Map<String, String> generatedSources, Map<String, byte[]> classes)
+        {
+            super(fileManager);
+            this.generatedSources = generatedSources;
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling)
+        {
+            if (kind == Kind.SOURCE)
+            {
+                return new GeneratedSourceFile(className, generatedSources);
+            }
+            return new ClassFile(className, classes);
+        }
+
+        @Override
+        public FileObject getFileForOutput(Location location, String packageName, String relativeName, FileObject sibling)
+        {
+            return new ResourceFile(packageName.isEmpty() ? relativeName : packageName.replace('.', '/') + "/" + relativeName);
+        }
+
+        @Override
+        public FileObject getFileForInput(Location location, String packageName, String relativeName)
+        throws IOException
+        {
+            if (location == StandardLocation.CLASS_OUTPUT)
+            {
+                // Nothing from a previous compilation
+                throw new FileNotFoundException(relativeName);
+            }
+            return super.getFileForInput(location, packageName, relativeName);
+        }
+    }
+
+    /**
+     * Processor delegating to the JDOQueryProcessor, recording the time spent in it.
+     */
+    private static class TimedProcessor implements Processor
+    {
+        private final Processor delegate;
+
+        long nanos;
+
+        TimedProcessor(Processor delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions()
+        {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes()
+        {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion()
+        {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment pe)
+        {
+            long start = System.nanoTime();
+            delegate.init(pe);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+        {
+            long start = System.nanoTime();
+            try
+            {
+                return delegate.process(annotations, roundEnv);
+            }
+            finally
+            {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation, ExecutableElement member, String userText)
+        {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+}
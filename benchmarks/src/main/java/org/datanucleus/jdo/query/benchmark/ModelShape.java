@@ -0,0 +1,173 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shape of a synthetic domain model, from which the sources of its (persistable) classes are generated.
+ * <ul>
+ * <li>"classes" persistable classes "bench.model.Entity{n}", each with "fields" basic fields</li>
+ * <li>the classes in chains of "inheritanceDepth", each extending the previous class of its chain</li>
+ * <li>each class with "fanOut" relations to the following classes (wrapping around), so there are cyclic relations when fanOut &gt; 0</li>
+ * <li>each class with "nested" persistable static nested classes</li>
+ * <li>"plainClasses" non-persistable classes "bench.plain.Plain{n}", as the rest of a module would have</li>
+ * </ul>
+ */
+public final class ModelShape
+{
+    public static final String MODEL_PACKAGE = "bench.model";
+
+    public static final String PLAIN_PACKAGE = "bench.plain";
+
+    private static final String[] FIELD_TYPES = {"String", "int", "long", "java.util.Date", "java.math.BigDecimal", "boolean", "Double", "java.time.LocalDate"};
+
+    final int classes;
+    final int fields;
+    final int inheritanceDepth;
+    final int fanOut;
+    final int nested;
+    final int plainClasses;
+
+    public ModelShape(int classes, int fields, int inheritanceDepth, int fanOut, int nested, int plainClasses)
+    {
+        this.classes = classes;
+        this.fields = fields;
+        this.inheritanceDepth = Math.max(1, inheritanceDepth);
+        this.fanOut = fanOut;
+        this.nested = nested;
+        this.plainClasses = plainClasses;
+    }
+
+    /**
+     * Method to parse a shape of the form "classes=100,fields=10,depth=1,fanOut=2,nested=0,plain=0", any omitted value being 0 (or 1 for depth).
+     * @param value The shape
+     * @return The shape
+     */
+    public static ModelShape parse(String value)
+    {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        for (String part : value.split(","))
+        {
+            String[] nameValue = part.split("=");
+            values.put(nameValue[0].trim(), Integer.valueOf(nameValue[1].trim()));
+        }
+        return new ModelShape(values.getOrDefault("classes", 1), values.getOrDefault("fields", 0), values.getOrDefault("depth", 1),
+            values.getOrDefault("fanOut", 0), values.getOrDefault("nested", 0), values.getOrDefault("plain", 0));
+    }
+
+    /**
+     * Accessor for the name of a persistable class of the model.
+     * @param number Number of the class
+     * @return The fully-qualified name
+     */
+    public static String getClassName(int number)
+    {
+        return MODEL_PACKAGE + ".Entity" + number;
+    }
+
+    /**
+     * Accessor for the name of the Q class of a persistable class of the model.
+     * @param number Number of the class
+     * @return The fully-qualified name
+     */
+    public static String getQClassName(int number)
+    {
+        return MODEL_PACKAGE + ".QEntity" + number;
+    }
+
+    /**
+     * Accessor for the number of the last class of the first inheritance chain, i.e the class with most (inherited) members.
+     * @return The number of the class
+     */
+    public int getDeepestClass()
+    {
+        return Math.min(classes, inheritanceDepth) - 1;
+    }
+
+    /**
+     * Method to generate the sources of the classes of the model.
+     * @return The sources keyed by the fully-qualified class name
+     */
+    public Map<String, String> generateSources()
+    {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < classes; i++)
+        {
+            sources.put(getClassName(i), generateEntity(i));
+        }
+        for (int i = 0; i < plainClasses; i++)
+        {
+            sources.put(PLAIN_PACKAGE + ".Plain" + i, generatePlain(i));
+        }
+        return sources;
+    }
+
+    private String generateEntity(int number)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(MODEL_PACKAGE).append(";\n\n");
+        sb.append("@javax.jdo.annotations.PersistenceCapable\n");
+        sb.append("public class Entity").append(number);
+        if (number % inheritanceDepth != 0)
+        {
+            sb.append(" extends Entity").append(number - 1);
+        }
+        sb.append("\n{\n");
+        for (int j = 0; j < fields; j++)
+        {
+            sb.append("    ").append(FIELD_TYPES[j % FIELD_TYPES.length]).append(" e").append(number).append("f").append(j).append(";\n");
+        }
+        for (int j = 1; j <= fanOut; j++)
+        {
+            sb.append("    Entity").append((number + j) % classes).append(" e").append(number).append("r").append(j).append(";\n");
+        }
+        for (int j = 0; j < nested; j++)
+        {
+            sb.append("\n    @javax.jdo.annotations.PersistenceCapable\n");
+            sb.append("    public static class Nested").append(j).append("\n    {\n");
+            sb.append("        String name;\n");
+            sb.append("        int value;\n");
+            sb.append("        Entity").append(number).append(" owner;\n");
+            sb.append("    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String generatePlain(int number)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(PLAIN_PACKAGE).append(";\n\n");
+        sb.append("public class Plain").append(number).append("\n{\n");
+        for (int j = 0; j < Math.max(fields, 1); j++)
+        {
+            sb.append("    private ").append(FIELD_TYPES[j % FIELD_TYPES.length]).append(" f").append(j).append(";\n");
+        }
+        sb.append("\n    public String describe()\n    {\n        return \"Plain").append(number).append("\" + f0;\n    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "classes=" + classes + ",fields=" + fields + ",depth=" + inheritanceDepth + ",fanOut=" + fanOut + ",nested=" + nested + ",plain=" + plainClasses;
+    }
+}
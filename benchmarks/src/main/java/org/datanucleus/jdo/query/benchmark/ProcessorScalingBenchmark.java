@@ -0,0 +1,177 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Harness measuring the compilation of synthetic models with the JDOQueryProcessor, in memory, for a range of model shapes, so as to
+ * show how the processor scales with the number of classes, fields per class, inheritance depth, relation fan-out, nested persistable
+ * classes, and non-persistable classes in the module. For each shape this reports the median of several compilations of
+ * <ul>
+ * <li>the wall time of the whole compilation, and of the processor alone</li>
+ * <li>the bytes allocated by the compiling thread (which does all of the work, unless "parallelRender" is used)</li>
+ * <li>the peak heap used (the sum of the peaks of the heap pools, after a GC before the compilation)</li>
+ * <li>the size of the generated Q classes</li>
+ * </ul>
+ * Run as
+ * <pre>
+ * java -cp target/benchmarks.jar org.datanucleus.jdo.query.benchmark.ProcessorScalingBenchmark [-A{option}={value}]... [{shape}]...
+ * </pre>
+ * where a shape is as "classes=1000,fields=10,depth=1,fanOut=2,nested=0,plain=0" (see {@link ModelShape#parse(String)}), and
+ * the options are passed to the processor. Without shapes, each dimension is varied in turn from a base shape.
+ */
+public class ProcessorScalingBenchmark
+{
+    private static final String BASE_SHAPE = "classes=100,fields=10,depth=1,fanOut=2,nested=0,plain=0";
+
+    private static final String[] DEFAULT_SHAPES = {
+        BASE_SHAPE,
+        "classes=500,fields=10,depth=1,fanOut=2,nested=0,plain=0",
+        "classes=1000,fields=10,depth=1,fanOut=2,nested=0,plain=0",
+        "classes=100,fields=50,depth=1,fanOut=2,nested=0,plain=0",
+        "classes=100,fields=200,depth=1,fanOut=2,nested=0,plain=0",
+        "classes=100,fields=10,depth=4,fanOut=2,nested=0,plain=0",
+        "classes=100,fields=10,depth=10,fanOut=2,nested=0,plain=0",
+        "classes=100,fields=10,depth=1,fanOut=0,nested=0,plain=0",
+        "classes=100,fields=10,depth=1,fanOut=8,nested=0,plain=0",
+        "classes=100,fields=10,depth=1,fanOut=2,nested=2,plain=0",
+        "classes=100,fields=10,depth=1,fanOut=2,nested=0,plain=1000",
+        "classes=100,fields=10,depth=1,fanOut=2,nested=0,plain=4000"};
+
+    private static final int WARMUP_RUNS = 3;
+
+    private static final int RUNS = 5;
+
+    /**
+     * Measurements of one compilation.
+     */
+    static final class Measurement
+    {
+        long wallNanos;
+        long processorNanos;
+        long allocatedBytes;
+        long peakHeapBytes;
+        long qclassBytes;
+    }
+
+    public static void main(String[] args)
+    {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> shapes = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("-A"))
+            {
+                String[] nameValue = arg.substring(2).split("=", 2);
+                options.put(nameValue[0], nameValue.length > 1 ? nameValue[1] : "true");
+            }
+            else
+            {
+                shapes.add(arg);
+            }
+        }
+        if (shapes.isEmpty())
+        {
+            shapes.addAll(Arrays.asList(DEFAULT_SHAPES));
+        }
+
+        System.out.println("Processor options : " + options);
+        for (int i = 0; i < WARMUP_RUNS; i++)
+        {
+            measure(ModelShape.parse(BASE_SHAPE), options);
+        }
+
+        System.out.println(String.format("%-60s %10s %14s %14s %14s %14s", "shape", "wall ms", "processor ms", "allocated MB", "peak heap MB", "Q classes KB"));
+        for (String shapeValue : shapes)
+        {
+            ModelShape shape = ModelShape.parse(shapeValue);
+            List<Measurement> measurements = new ArrayList<>();
+            for (int i = 0; i < RUNS; i++)
+            {
+                measurements.add(measure(shape, options));
+            }
+            System.out.println(String.format("%-60s %10.1f %14.1f %14.1f %14.1f %14.1f", shape,
+                median(measurements, m -> m.wallNanos) / 1e6, median(measurements, m -> m.processorNanos) / 1e6,
+                median(measurements, m -> m.allocatedBytes) / 1048576.0, median(measurements, m -> m.peakHeapBytes) / 1048576.0,
+                median(measurements, m -> m.qclassBytes) / 1024.0));
+        }
+    }
+
+    /**
+     * Method to compile the model of the specified shape, measuring the compilation.
+     * @param shape Shape of the model
+     * @param options Processor options
+     * @return The measurements
+     */
+    static Measurement measure(ModelShape shape, Map<String, String> options)
+    {
+        Map<String, String> sources = shape.generateSources();
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                heapPools.add(pool);
+            }
+        }
+
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools)
+        {
+            pool.resetPeakUsage();
+        }
+        long allocatedStart = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        InMemoryCompiler.Result result = InMemoryCompiler.compile(sources, options);
+        Measurement measurement = new Measurement();
+        measurement.wallNanos = System.nanoTime() - start;
+        measurement.allocatedBytes = threadBean.getCurrentThreadAllocatedBytes() - allocatedStart;
+        for (MemoryPoolMXBean pool : heapPools)
+        {
+            measurement.peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        if (!result.succeeded())
+        {
+            throw new IllegalStateException("Compilation of " + shape + " failed : " + result.getErrors());
+        }
+        measurement.processorNanos = result.getProcessorNanos();
+        measurement.qclassBytes = result.getClassBytes(ModelShape.MODEL_PACKAGE + ".Q");
+        return measurement;
+    }
+
+    private static double median(List<Measurement> measurements, ToLongFunction<Measurement> value)
+    {
+        long[] values = new long[measurements.size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = value.applyAsLong(measurements.get(i));
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+}
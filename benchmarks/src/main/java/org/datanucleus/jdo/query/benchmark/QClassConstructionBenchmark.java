@@ -0,0 +1,138 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the construction of the candidate, a parameter and a variable of a generated Q class, for each query mode and field depth,
+ * over a fixture domain model with a wide class, a deep inheritance hierarchy, and cyclic relations.
+ * The Q classes are generated (with the cache of candidates etc disabled, so each call constructs) and compiled in the setup.
+ * Run with the GC profiler to report the bytes allocated by each construction, i.e
+ * <pre>
+ * java -jar target/benchmarks.jar QClassConstructionBenchmark -prof gc
+ * </pre>
+ * where "gc.alloc.rate.norm" is the allocated bytes per construction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QClassConstructionBenchmark
+{
+    /** Fixture domain model, see {@link Fixture}. */
+    @Param({"WIDE", "DEEP", "CYCLIC"})
+    public String fixture;
+
+    @Param({"FIELD", "PROPERTY", "FLYWEIGHT"})
+    public String queryMode;
+
+    @Param({"1", "3", "5"})
+    public int fieldDepth;
+
+    private MethodHandle candidate;
+
+    private MethodHandle parameter;
+
+    private MethodHandle variable;
+
+    /**
+     * Fixture domain models.
+     */
+    public enum Fixture
+    {
+        /** A class with 300 fields. */
+        WIDE(new ModelShape(1, 300, 1, 0, 0, 0)),
+
+        /** Chains of 8 classes, each extending the previous one and having 10 fields and a relation to the following class. */
+        DEEP(new ModelShape(16, 10, 8, 1, 0, 0)),
+
+        /** 20 classes, each with 8 fields and relations to the 4 following classes (so each class is in many cycles), and a nested class. */
+        CYCLIC(new ModelShape(20, 8, 1, 4, 1, 0));
+
+        final ModelShape shape;
+
+        Fixture(ModelShape shape)
+        {
+            this.shape = shape;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    throws Exception
+    {
+        ModelShape shape = Fixture.valueOf(fixture).shape;
+        Map<String, String> options = new HashMap<>();
+        options.put("queryMode", queryMode);
+        options.put("fieldDepth", String.valueOf(fieldDepth));
+        options.put("expressionCache", "false");
+        InMemoryCompiler.Result result = InMemoryCompiler.compile(shape.generateSources(), options);
+        if (!result.succeeded())
+        {
+            throw new IllegalStateException("Compilation of fixture " + fixture + " failed : " + result.getErrors());
+        }
+
+        Class<?> qclass = Class.forName(ModelShape.getQClassName(shape.getDeepestClass()), true, result.newClassLoader());
+        MethodType factoryType = MethodType.methodType(qclass, String.class);
+        candidate = MethodHandles.publicLookup().findStatic(qclass, "candidate", factoryType);
+        parameter = MethodHandles.publicLookup().findStatic(qclass, "parameter", factoryType);
+        variable = MethodHandles.publicLookup().findStatic(qclass, "variable", factoryType);
+    }
+
+    @Benchmark
+    public Object candidate()
+    throws Throwable
+    {
+        return candidate.invoke("this");
+    }
+
+    @Benchmark
+    public Object parameter()
+    throws Throwable
+    {
+        return parameter.invoke("p");
+    }
+
+    @Benchmark
+    public Object variable()
+    throws Throwable
+    {
+        return variable.invoke("v");
+    }
+}
@@ -0,0 +1,146 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the layout of the members of the generated Q classes, comparing the fields of the FIELD query mode, the array
+ * of members created on access of the PROPERTY query mode, and the members created on each access of the FLYWEIGHT query mode,
+ * over the fixture domain models of {@link QClassConstructionBenchmark}.
+ * <ul>
+ * <li>the size of the Q classes of the fixture is printed by the setup of each trial, as "Q class bytes"</li>
+ * <li>"loadClass" is the time to define, link and initialise the Q class of the fixture in a new class loader</li>
+ * <li>"construct" is the time to construct the candidate (with the cache of candidates disabled, so each call constructs). Since
+ * a candidate holds everything its construction allocates, "gc.alloc.rate.norm" is the heap retained by a candidate (e.g by a
+ * cached query) before any of its members are used</li>
+ * <li>"access" is the time to access a member of a candidate, with "gc.alloc.rate.norm" being the bytes allocated by each access
+ * once the member has been accessed (none for FIELD and PROPERTY, the member expression for FLYWEIGHT)</li>
+ * </ul>
+ * i.e
+ * <pre>
+ * java -jar target/benchmarks.jar QClassLayoutBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QClassLayoutBenchmark
+{
+    /** Fixture domain model, see {@link QClassConstructionBenchmark.Fixture}. */
+    @Param({"WIDE", "DEEP", "CYCLIC"})
+    public String fixture;
+
+    @Param({"FIELD", "PROPERTY", "FLYWEIGHT"})
+    public String queryMode;
+
+    @Param({"1", "3"})
+    public int fieldDepth;
+
+    private InMemoryCompiler.Result result;
+
+    private String qclassName;
+
+    private MethodHandle candidate;
+
+    private MethodHandle member;
+
+    private Object candidateInstance;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    throws Throwable
+    {
+        ModelShape shape = QClassConstructionBenchmark.Fixture.valueOf(fixture).shape;
+        Map<String, String> options = new HashMap<>();
+        options.put("queryMode", queryMode);
+        options.put("fieldDepth", String.valueOf(fieldDepth));
+        options.put("expressionCache", "false");
+        // Don't construct the candidate when the Q class is initialised, so that "loadClass" doesn't include a construction
+        options.put("candidateField", "false");
+        result = InMemoryCompiler.compile(shape.generateSources(), options);
+        if (!result.succeeded())
+        {
+            throw new IllegalStateException("Compilation of fixture " + fixture + " failed : " + result.getErrors());
+        }
+
+        qclassName = ModelShape.getQClassName(shape.getDeepestClass());
+        System.out.println("Q class bytes : " + qclassName + "=" + result.getClasses().get(qclassName).length +
+            ", all Q classes=" + result.getClassBytes(ModelShape.MODEL_PACKAGE + ".Q"));
+
+        Class<?> qclass = Class.forName(qclassName, true, result.newClassLoader());
+        candidate = MethodHandles.publicLookup().findStatic(qclass, "candidate", MethodType.methodType(qclass, String.class));
+
+        // First basic field of the class, a field of the Q class in FIELD mode and a method otherwise
+        String memberName = "e" + shape.getDeepestClass() + "f0";
+        if (queryMode.equalsIgnoreCase("FIELD"))
+        {
+            Field field = qclass.getField(memberName);
+            member = MethodHandles.publicLookup().findGetter(qclass, memberName, field.getType());
+        }
+        else
+        {
+            member = MethodHandles.publicLookup().unreflect(qclass.getMethod(memberName));
+        }
+        candidateInstance = candidate.invoke("this");
+        member.invoke(candidateInstance);
+    }
+
+    @Benchmark
+    public Class<?> loadClass()
+    throws ClassNotFoundException
+    {
+        return Class.forName(qclassName, true, result.newClassLoader());
+    }
+
+    @Benchmark
+    public Object construct()
+    throws Throwable
+    {
+        return candidate.invoke("this");
+    }
+
+    @Benchmark
+    public Object access()
+    throws Throwable
+    {
+        return member.invoke(candidateInstance);
+    }
+}
@@ -0,0 +1,293 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.jdo.query.BooleanExpression;
+import javax.jdo.query.ByteExpression;
+import javax.jdo.query.CharacterExpression;
+import javax.jdo.query.CollectionExpression;
+import javax.jdo.query.DateExpression;
+import javax.jdo.query.DateTimeExpression;
+import javax.jdo.query.EnumExpression;
+import javax.jdo.query.ListExpression;
+import javax.jdo.query.LocalDateExpression;
+import javax.jdo.query.LocalDateTimeExpression;
+import javax.jdo.query.LocalTimeExpression;
+import javax.jdo.query.MapExpression;
+import javax.jdo.query.NumericExpression;
+import javax.jdo.query.ObjectExpression;
+import javax.jdo.query.OptionalExpression;
+import javax.jdo.query.StringExpression;
+import javax.jdo.query.TimeExpression;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+import org.datanucleus.jdo.query.AnnotationProcessorUtils.TypeCategory;
+
+/**
+ * Resolver for the query expression interface and implementation to use for the type of a member in a Q class.
+ * The supported types are held in lookup tables, keyed by primitive kind and by the qualified name of the declared type,
+ * and built once when the resolver is created, so a member type is resolved with a single lookup rather than
+ * by comparing its name against each supported type in turn.
+ */
+public class ExpressionTypeResolver
+{
+    private static final String GEOSPATIAL_INTERFACE_PACKAGE = "javax.jdo.query.geospatial.";
+
+    private static final String GEOSPATIAL_IMPL_PACKAGE = "org.datanucleus.api.jdo.query.geospatial.";
+
+    /**
+     * Query expression interface and implementation names for a type.
+     */
+    public static class ExpressionTypes
+    {
+        final String interfaceName;
+        final String implName;
+
+        public ExpressionTypes(String interfaceName, String implName)
+        {
+            this.interfaceName = interfaceName;
+            this.implName = implName;
+        }
+
+        /**
+         * Accessor for the query expression interface name, e.g "StringExpression", "NumericExpression&lt;Integer&gt;".
+         * @return The interface name
+         */
+        public String getInterfaceName()
+        {
+            return interfaceName;
+        }
+
+        /**
+         * Accessor for the query expression implementation name, e.g "StringExpressionImpl", "NumericExpressionImpl&lt;Integer&gt;".
+         * @return The implementation name
+         */
+        public String getImplName()
+        {
+            return implName;
+        }
+    }
+
+    private static final ExpressionTypes ENUM_TYPES = new ExpressionTypes(EnumExpression.class.getSimpleName(), "EnumExpressionImpl");
+
+    private static final ExpressionTypes OPTIONAL_TYPES = new ExpressionTypes(OptionalExpression.class.getSimpleName(), "OptionalExpressionImpl");
+
+    private static final ExpressionTypes MAP_TYPES = new ExpressionTypes(MapExpression.class.getSimpleName(), "MapExpressionImpl"); // TODO Add generics?
+
+    private static final ExpressionTypes LIST_TYPES = new ExpressionTypes(ListExpression.class.getSimpleName(), "ListExpressionImpl"); // TODO Add generics?
+
+    private static final ExpressionTypes COLLECTION_TYPES = new ExpressionTypes(CollectionExpression.class.getSimpleName(), "CollectionExpressionImpl"); // TODO Add generics?
+
+    private final Predicate<TypeElement> persistableCheck;
+
+    private final Map<TypeKind, ExpressionTypes> typesByKind = new EnumMap<>(TypeKind.class);
+
+    private final Map<String, ExpressionTypes> typesByName = new HashMap<>();
+
+    /** Expression types to use for any other type in a package, keyed by package name prefix. */
+    private final Map<String, ExpressionTypes> typesByPackagePrefix = new HashMap<>();
+
+    /**
+     * Constructor, building the lookup tables for the supported types.
+     * @param persistableCheck Check for whether a type is persistable, so has its own Q class
+     * @param allowGeospatialExtensions Whether to support the geospatial types
+     */
+    public ExpressionTypeResolver(Predicate<TypeElement> persistableCheck, boolean allowGeospatialExtensions)
+    {
+        this.persistableCheck = persistableCheck;
+
+        addType(TypeKind.BOOLEAN, Boolean.class, BooleanExpression.class.getSimpleName(), "BooleanExpressionImpl");
+        addType(TypeKind.BYTE, Byte.class, ByteExpression.class.getSimpleName(), "ByteExpressionImpl");
+        addType(TypeKind.CHAR, Character.class, CharacterExpression.class.getSimpleName(), "CharacterExpressionImpl");
+        addNumericType(TypeKind.DOUBLE, Double.class, "Double");
+        addNumericType(TypeKind.FLOAT, Float.class, "Float");
+        addNumericType(TypeKind.INT, Integer.class, "Integer");
+        addNumericType(TypeKind.LONG, Long.class, "Long");
+        addNumericType(TypeKind.SHORT, Short.class, "Short");
+        addNumericType(null, BigInteger.class, BigInteger.class.getName());
+        addNumericType(null, BigDecimal.class, BigDecimal.class.getName());
+        addType(null, String.class, StringExpression.class.getSimpleName(), "StringExpressionImpl");
+        addType(null, Date.class, DateTimeExpression.class.getSimpleName(), "DateTimeExpressionImpl");
+        addType(null, java.sql.Date.class, DateExpression.class.getSimpleName(), "DateExpressionImpl");
+        addType(null, java.sql.Time.class, TimeExpression.class.getSimpleName(), "TimeExpressionImpl");
+        addType(null, LocalDate.class, LocalDateExpression.class.getSimpleName(), "LocalDateExpressionImpl");
+        addType(null, LocalTime.class, LocalTimeExpression.class.getSimpleName(), "LocalTimeExpressionImpl");
+        addType(null, LocalDateTime.class, LocalDateTimeExpression.class.getSimpleName(), "LocalDateTimeExpressionImpl");
+
+        if (allowGeospatialExtensions)
+        {
+            // Support geospatial types here since they can invoke methods
+            // Vividsolutions JTS
+            addGeospatialType("com.vividsolutions.jts.geom.Polygon", "Polygon");
+            addGeospatialType("com.vividsolutions.jts.geom.Point", "Point");
+            addGeospatialType("com.vividsolutions.jts.geom.LineString", "LineString");
+            addGeospatialType("com.vividsolutions.jts.geom.LinearRing", "LinearRing");
+            addGeospatialType("com.vividsolutions.jts.geom.MultiLineString", "MultiLineString");
+            addGeospatialType("com.vividsolutions.jts.geom.MultiPoint", "MultiPoint");
+            addGeospatialType("com.vividsolutions.jts.geom.MultiPolygon", "MultiPolygon");
+            typesByPackagePrefix.put("com.vividsolutions.jts.geom", getGeospatialTypes("Geometry"));
+
+            // PostGIS
+            addGeospatialType("org.postgis.Polygon", "Polygon");
+            addGeospatialType("org.postgis.Point", "Point");
+            addGeospatialType("org.postgis.LineString", "LineString");
+            addGeospatialType("org.postgis.LinearRing", "LinearRing");
+            addGeospatialType("org.postgis.MultiPolygon", "MultiPolygon");
+            addGeospatialType("org.postgis.MultiPoint", "MultiPoint");
+            addGeospatialType("org.postgis.MultiLineString", "MultiLineString");
+            typesByPackagePrefix.put("org.postgis", getGeospatialTypes("Geometry"));
+
+            // Oracle JGeometry
+            addGeospatialType("oracle.spatial.geometry.JGeometry", "Geometry");
+        }
+    }
+
+    private void addType(TypeKind kind, Class<?> cls, String interfaceName, String implName)
+    {
+        ExpressionTypes types = new ExpressionTypes(interfaceName, implName);
+        if (kind != null)
+        {
+            typesByKind.put(kind, types);
+        }
+        typesByName.put(cls.getName(), types);
+    }
+
+    private void addNumericType(TypeKind kind, Class<?> cls, String genericTypeName)
+    {
+        addType(kind, cls, NumericExpression.class.getSimpleName() + "<" + genericTypeName + ">", "NumericExpressionImpl<" + genericTypeName + ">");
+    }
+
+    private void addGeospatialType(String typeName, String geometryName)
+    {
+        typesByName.put(typeName, getGeospatialTypes(geometryName));
+    }
+
+    private static ExpressionTypes getGeospatialTypes(String geometryName)
+    {
+        return new ExpressionTypes(GEOSPATIAL_INTERFACE_PACKAGE + geometryName + "Expression", GEOSPATIAL_IMPL_PACKAGE + geometryName + "ExpressionImpl");
+    }
+
+    /**
+     * Method to return the query expression interface and implementation names for the specified type.
+     * @param type The type
+     * @return The query expression interface and implementation names to use
+     */
+    public ExpressionTypes resolve(TypeMirror type)
+    {
+        TypeKind kind = type.getKind();
+        if (kind.isPrimitive())
+        {
+            return typesByKind.get(kind);
+        }
+        if (kind != TypeKind.DECLARED)
+        {
+            // Fallback to "ObjectExpression<{type}>" (e.g array), omitting any generics on the type
+            return getObjectTypes(type.toString());
+        }
+
+        // Use the element of the type. This was needed to detect such as a field annotated with a Bean Validation 2.0 @NotNull,
+        // which comes through as "(@javax.validation.constraints.NotNull :: theUserType)".
+        DeclaredType declType = (DeclaredType)type;
+        TypeElement typeElement = (TypeElement)declType.asElement();
+        String typeName = typeElement.getQualifiedName().toString();
+
+        ExpressionTypes types = typesByName.get(typeName);
+        if (types != null)
+        {
+            return types;
+        }
+
+        if (typeName.equals(java.util.Optional.class.getName()))
+        {
+            List<? extends TypeMirror> typeArgs = declType.getTypeArguments();
+            if (!typeArgs.isEmpty())
+            {
+                return new ExpressionTypes(OptionalExpression.class.getSimpleName() + "<" + typeArgs.get(0).toString() + ">",
+                    "OptionalExpressionImpl<" + typeArgs.get(0).toString() + ">");
+            }
+            return OPTIONAL_TYPES;
+        }
+        else if (typeElement.getKind() == ElementKind.ENUM)
+        {
+            return ENUM_TYPES;
+        }
+
+        if (!typesByPackagePrefix.isEmpty())
+        {
+            for (Map.Entry<String, ExpressionTypes> entry : typesByPackagePrefix.entrySet())
+            {
+                if (typeName.startsWith(entry.getKey()))
+                {
+                    return entry.getValue();
+                }
+            }
+        }
+
+        TypeCategory cat = AnnotationProcessorUtils.getTypeCategoryForTypeMirror(typeName);
+        if (cat == TypeCategory.MAP)
+        {
+            return MAP_TYPES;
+        }
+        else if (cat == TypeCategory.LIST)
+        {
+            return LIST_TYPES;
+        }
+        else if (cat == TypeCategory.COLLECTION || cat == TypeCategory.SET)
+        {
+            return COLLECTION_TYPES;
+        }
+
+        if (persistableCheck.test(typeElement))
+        {
+            // Persistent field ("mydomain.Xxx" becomes "mydomain.QXxx")
+            String qclassName = typeName.substring(0, typeName.lastIndexOf('.')+1) +
+                JDOQueryProcessor.getQueryClassNameForClassName(typeName.substring(typeName.lastIndexOf('.')+1));
+            return new ExpressionTypes(qclassName, qclassName);
+        }
+
+        return getObjectTypes(typeName);
+    }
+
+    private static ExpressionTypes getObjectTypes(String typeName)
+    {
+        // "ObjectExpression<{type}>" for this field/property type, omitting any generics on the type
+        String typeNameWithoutGenerics = typeName;
+        if (typeName.indexOf("<") > 0)
+        {
+            typeNameWithoutGenerics = typeNameWithoutGenerics.substring(0, typeName.indexOf("<"));
+        }
+        return new ExpressionTypes(ObjectExpression.class.getSimpleName() + "<" + typeNameWithoutGenerics + ">",
+            "ObjectExpressionImpl<" + typeNameWithoutGenerics + ">");
+    }
+}
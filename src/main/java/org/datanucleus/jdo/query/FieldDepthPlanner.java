@@ -0,0 +1,268 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Planner for the depth to which the related Q classes of a Q class are created (in FIELD mode).
+ * By default all relations are created to the same "fieldDepth", so the number of expressions built by a candidate grows
+ * exponentially with the number of relations. This allows
+ * <ul>
+ * <li>the depth to be overridden for a class (the depth of its candidates), or capped for a relation field</li>
+ * <li>when planning is enabled, analysing the relationship graph of the persistable classes so that relations that are part
+ * of a cycle are capped to "cycleFieldDepth", and relations to "leaf" classes (having no relations themselves) are always
+ * created since they are cheap, so are navigable beyond the depth limit</li>
+ * </ul>
+ * The graph is derived from the persistable classes (and their persistable supertypes) so has to be cleared for each round.
+ */
+public class FieldDepthPlanner
+{
+    /** Value for when a relation has no cap on its depth. */
+    public static final int NO_CAP = -1;
+
+    private final ProcessingEnvironment processingEnv;
+
+    private final TypeMetadataCache typeMetadata;
+
+    private final int fieldDepth;
+
+    private final boolean planning;
+
+    private final int cycleFieldDepth;
+
+    /** Overrides of the depth keyed by class name, or of the depth cap keyed by "{className}.{fieldName}". */
+    private final Map<String, Integer> overrides;
+
+    /** Index of the strongly connected component of the relationship graph for each class. */
+    private final Map<TypeElement, Integer> componentByType = new HashMap<>();
+
+    private final Map<TypeElement, Boolean> leafByType = new HashMap<>();
+
+    private int nextComponent = 0;
+
+    /**
+     * Constructor for a planner.
+     * @param processingEnv Processing environment
+     * @param typeMetadata Metadata for the types
+     * @param fieldDepth The default depth
+     * @param planning Whether to plan the depth of relations using the relationship graph
+     * @param cycleFieldDepth The depth cap for relations that are part of a cycle, when planning
+     * @param overrides Overrides of the depth keyed by class name, or of the depth cap keyed by "{className}.{fieldName}"
+     */
+    public FieldDepthPlanner(ProcessingEnvironment processingEnv, TypeMetadataCache typeMetadata, int fieldDepth, boolean planning, int cycleFieldDepth,
+            Map<String, Integer> overrides)
+    {
+        this.processingEnv = processingEnv;
+        this.typeMetadata = typeMetadata;
+        this.fieldDepth = fieldDepth;
+        this.planning = planning;
+        this.cycleFieldDepth = cycleFieldDepth;
+        this.overrides = overrides;
+    }
+
+    /**
+     * Method to clear the analysis of the relationship graph, to be called at the start of each processing round.
+     */
+    public void clear()
+    {
+        componentByType.clear();
+        leafByType.clear();
+    }
+
+    /**
+     * Accessor for the default depth.
+     * @return The depth
+     */
+    public int getFieldDepth()
+    {
+        return fieldDepth;
+    }
+
+    /**
+     * Accessor for the depth of candidates (and parameters/variables) of the specified class.
+     * @param el The class
+     * @return The depth
+     */
+    public int getClassDepth(TypeElement el)
+    {
+        Integer depth = overrides.get(el.getQualifiedName().toString());
+        return (depth != null ? depth : fieldDepth);
+    }
+
+    /**
+     * Accessor for the cap on the depth for the specified relation.
+     * @param el The class declaring the relation
+     * @param memberName Name of the relation member
+     * @param relatedEl The related class
+     * @return The cap, or NO_CAP
+     */
+    public int getDepthCap(TypeElement el, String memberName, TypeElement relatedEl)
+    {
+        Integer cap = overrides.get(el.getQualifiedName().toString() + "." + memberName);
+        if (cap != null)
+        {
+            return cap;
+        }
+        if (planning && getComponent(el) == getComponent(relatedEl))
+        {
+            // Relation is part of a cycle (e.g bidirectional, or self-referencing), so is cut short
+            return cycleFieldDepth;
+        }
+        return NO_CAP;
+    }
+
+    /**
+     * Accessor for whether the specified relation should always be created, regardless of depth.
+     * This is the case when planning and the related class is a leaf, having no relations, so cheap to create.
+     * @param el The class declaring the relation
+     * @param memberName Name of the relation member
+     * @param relatedEl The related class
+     * @return Whether to always create it
+     */
+    public boolean isAlwaysCreated(TypeElement el, String memberName, TypeElement relatedEl)
+    {
+        if (!planning || overrides.containsKey(el.getQualifiedName().toString() + "." + memberName))
+        {
+            return false;
+        }
+
+        Boolean leaf = leafByType.get(relatedEl);
+        if (leaf == null)
+        {
+            leaf = getRelatedTypes(relatedEl).isEmpty();
+            leafByType.put(relatedEl, leaf);
+        }
+        return leaf;
+    }
+
+    /**
+     * Method to return the persistable class that is the type of the specified member, if it is a relation.
+     * @param member The member
+     * @return The related class, or null if not a relation
+     */
+    public TypeElement getRelatedType(Element member)
+    {
+        TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
+        if (type.getKind() != TypeKind.DECLARED)
+        {
+            return null;
+        }
+        TypeElement typeEl = (TypeElement)processingEnv.getTypeUtils().asElement(type);
+        return typeMetadata.isPersistable(typeEl) ? typeEl : null;
+    }
+
+    /**
+     * Method to return the classes whose Q classes are created when creating the Q class of the specified class, namely the
+     * related classes of its (and its persistable supertypes') relations.
+     * @param el The class
+     * @return The related classes
+     */
+    private List<TypeElement> getRelatedTypes(TypeElement el)
+    {
+        List<TypeElement> relatedEls = new ArrayList<>();
+        TypeElement currentEl = el;
+        while (currentEl != null)
+        {
+            for (Element member : typeMetadata.getPersistentMembers(currentEl))
+            {
+                if (member.getKind() == ElementKind.FIELD)
+                {
+                    TypeElement relatedEl = getRelatedType(member);
+                    if (relatedEl != null)
+                    {
+                        relatedEls.add(relatedEl);
+                    }
+                }
+            }
+            currentEl = typeMetadata.getPersistentSupertype(currentEl);
+        }
+        return relatedEls;
+    }
+
+    /**
+     * Accessor for the strongly connected component of the relationship graph that the specified class is in, finding the
+     * components of all classes reachable from it (using Tarjan's algorithm) when not yet known.
+     * @param el The class
+     * @return Index of the component
+     */
+    private int getComponent(TypeElement el)
+    {
+        Integer component = componentByType.get(el);
+        if (component == null)
+        {
+            findComponents(el, new HashMap<>(), new HashMap<>(), new ArrayDeque<>());
+            component = componentByType.get(el);
+        }
+        return component;
+    }
+
+    private int findComponents(TypeElement el, Map<TypeElement, Integer> indexByType, Map<TypeElement, Integer> lowLinkByType, Deque<TypeElement> stack)
+    {
+        int index = indexByType.size();
+        indexByType.put(el, index);
+        int lowLink = index;
+        stack.push(el);
+
+        for (TypeElement relatedEl : getRelatedTypes(el))
+        {
+            if (componentByType.containsKey(relatedEl))
+            {
+                // Component already found
+                continue;
+            }
+            Integer relatedIndex = indexByType.get(relatedEl);
+            if (relatedIndex == null)
+            {
+                lowLink = Math.min(lowLink, findComponents(relatedEl, indexByType, lowLinkByType, stack));
+            }
+            else
+            {
+                // On the stack, so part of the current component
+                lowLink = Math.min(lowLink, relatedIndex);
+            }
+        }
+        lowLinkByType.put(el, lowLink);
+
+        if (lowLink == index)
+        {
+            // Root of a component, so pop it
+            int component = nextComponent++;
+            TypeElement componentEl;
+            do
+            {
+                componentEl = stack.pop();
+                componentByType.put(componentEl, component);
+            }
+            while (componentEl != el);
+        }
+        return lowLink;
+    }
+}
@@ -19,60 +19,50 @@ package org.datanucleus.jdo.query;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.util.Date;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
-import javax.jdo.annotations.NotPersistent;
+import javax.annotation.processing.SupportedOptions;
 import javax.jdo.annotations.PersistenceCapable;
 import javax.lang.model.SourceVersion;
-import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.TypeParameterElement;
-import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
 import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
-import org.datanucleus.jdo.query.AnnotationProcessorUtils.TypeCategory;
-
-import javax.jdo.query.BooleanExpression;
-import javax.jdo.query.ByteExpression;
-import javax.jdo.query.CharacterExpression;
-import javax.jdo.query.CollectionExpression;
-import javax.jdo.query.DateExpression;
-import javax.jdo.query.DateTimeExpression;
-import javax.jdo.query.EnumExpression;
-import javax.jdo.query.ListExpression;
-import javax.jdo.query.LocalDateExpression;
-import javax.jdo.query.LocalDateTimeExpression;
-import javax.jdo.query.LocalTimeExpression;
-import javax.jdo.query.MapExpression;
-import javax.jdo.query.NumericExpression;
-import javax.jdo.query.ObjectExpression;
-import javax.jdo.query.OptionalExpression;
-import javax.jdo.query.PersistableExpression;
-import javax.jdo.query.StringExpression;
-import javax.jdo.query.TimeExpression;
 import javax.jdo.JDOQLTypedQuery;
 
 /**
@@ -84,30 +74,177 @@ import javax.jdo.JDOQLTypedQuery;
  * </ul>
  * 
  * <p>
- * This processor can generate classes in two modes.
+ * This processor can generate classes in the following modes.
  * <ul>
- * <li>Property access - so users type in "field1()", "field1().field2()" etc. Specify the compiler argument "queryMode" as "PROPERTY" to get this</li>
+ * <li>Property access - so users type in "field1()", "field1().field2()" etc, and each member expression is only created when first accessed.
+ * This supports navigation to any depth and is safe with cyclic relations. Specify the compiler argument "queryMode" as "PROPERTY" to get this.
+ * "LAZY" is accepted as an alias of "PROPERTY", and generates the same code.</li>
  * <li>Field access - so users type in "field1", "field1.field2". This is the default.</li>
+ * <li>Flyweight access - so users type in "field1()", "field1().field2()" etc, with each call creating the expression for the member,
+ * so a Q class (e.g the candidate of a cached query) holds nothing beyond its own name and parent, and only the members used by
+ * a query are ever created. Specify the compiler argument "queryMode" as "FLYWEIGHT" to get this</li>
  * </ul>
+ * With field access all member expressions of a Q class are created when it is constructed, recursing into related Q classes 
+ * up to "fieldDepth" levels, so with many (bidirectional) relations a single candidate can build a large number of expressions.
+ * The depth can be overridden per class or capped per relation ("fieldDepthOverrides"), or planned from the relationship graph
+ * ("fieldDepthPlanning") so that relations in cycles are cut short and relations to leaf classes are always available.
+ * With property access the cost of a candidate is in proportion to the paths actually used by the query.
+ * </p>
+ * <p>
+ * Each Q class is generated from its persistable class (and any persistable static inner classes) and the types reachable
+ * from it, and is registered with the Filer against that class, so this is an "isolating" incremental processor for Gradle.
+ * Options that generate a resource from all persistable classes (e.g "jdoqueryStats", "treeSizeReport", "persistableIndex") make it
+ * "aggregating".
+ * </p>
  */
 @SupportedAnnotationTypes({"javax.jdo.annotations.PersistenceCapable"})
+@SupportedOptions({JDOQueryProcessor.OPTION_MODE, JDOQueryProcessor.OPTION_PARALLEL_RENDER, JDOQueryProcessor.OPTION_OUTPUT_DIRECTORY,
+    JDOQueryProcessor.OPTION_STATS, JDOQueryProcessor.OPTION_FIELD_DEPTH, JDOQueryProcessor.OPTION_FIELD_DEPTH_PLANNING, JDOQueryProcessor.OPTION_CYCLE_FIELD_DEPTH,
+    JDOQueryProcessor.OPTION_FIELD_DEPTH_OVERRIDES, JDOQueryProcessor.OPTION_TREE_SIZE_REPORT, JDOQueryProcessor.OPTION_NODE_BUDGET,
+    JDOQueryProcessor.OPTION_NODE_BUDGET_ERROR, JDOQueryProcessor.OPTION_EXPRESSION_CACHE, JDOQueryProcessor.OPTION_EXPRESSION_CACHE_SIZE,
+    JDOQueryProcessor.OPTION_PATH_CONSTANTS, JDOQueryProcessor.OPTION_PATH_CONSTANTS_LIMIT, JDOQueryProcessor.OPTION_NAMED_QUERIES,
+    JDOQueryProcessor.OPTION_FIELD_NUMBERS, JDOQueryProcessor.OPTION_PERSISTABLE_INDEX, JDOQueryProcessor.OPTION_ACCESSORS,
+    JDOQueryProcessor.OPTION_EVALUATORS, JDOQueryProcessor.OPTION_CANDIDATE_FIELD})
 public class JDOQueryProcessor extends AbstractProcessor
 {
-    // use "javac -AqueryMode=FIELD" to use fields
+    // use "javac -AqueryMode=FIELD" to use fields, "javac -AqueryMode=PROPERTY" to use (lazily created) properties, "LAZY" being an alias of "PROPERTY",
+    // "javac -AqueryMode=FLYWEIGHT" for properties created on each access
     public final static String OPTION_MODE = "queryMode";
 
-    private final static int MODE_FIELD = 1;
-    private final static int MODE_PROPERTY = 2;
+    // use "javac -AparallelRender=4" to render the Q class sources on 4 threads
+    public final static String OPTION_PARALLEL_RENDER = "parallelRender";
+
+    // use "javac -AoutputDirectory=target/generated-sources/qclasses" to write the Q class sources to that directory. The Q classes written
+    // are listed in OUTPUT_DIRECTORY_MANIFEST_NAME in that directory, so those for classes since removed (or no longer persistable) are deleted
+    public final static String OPTION_OUTPUT_DIRECTORY = "outputDirectory";
+
+    // use "javac -AjdoqueryStats=true" to record timings etc of the Q class generation, written to STATS_RESOURCE_NAME
+    public final static String OPTION_STATS = "jdoqueryStats";
+
+    // use "javac -AfieldDepth=3" to create related Q classes (in FIELD mode) to a depth of 3
+    public final static String OPTION_FIELD_DEPTH = "fieldDepth";
+
+    // use "javac -AfieldDepthPlanning=true" to cap relations in cycles to "cycleFieldDepth" and always create relations to leaf classes
+    public final static String OPTION_FIELD_DEPTH_PLANNING = "fieldDepthPlanning";
+
+    // use "javac -AcycleFieldDepth=0" to cap relations in cycles to a depth of 0 when planning
+    public final static String OPTION_CYCLE_FIELD_DEPTH = "cycleFieldDepth";
+
+    // use "javac -AfieldDepthOverrides=mydomain.Order=2,mydomain.Customer.referrer=0" to set the depth of a class, or cap the depth of a relation
+    public final static String OPTION_FIELD_DEPTH_OVERRIDES = "fieldDepthOverrides";
+
+    // use "javac -AtreeSizeReport=true" to report the expression nodes built by each Q class, written to TREE_SIZE_RESOURCE_NAME
+    public final static String OPTION_TREE_SIZE_REPORT = "treeSizeReport";
+
+    // use "javac -AnodeBudget=10000" to warn when a Q class builds more than 10000 expression nodes
+    public final static String OPTION_NODE_BUDGET = "nodeBudget";
+
+    // use "javac -AnodeBudgetError=true" to make exceeding the "nodeBudget" an error rather than a warning
+    public final static String OPTION_NODE_BUDGET_ERROR = "nodeBudgetError";
+
+    // use "javac -AexpressionCache=false" to create a new candidate/parameter/variable on each call rather than caching them by name
+    public final static String OPTION_EXPRESSION_CACHE = "expressionCache";
+
+    // use "javac -AexpressionCacheSize=256" to cache up to 256 candidates (and parameters, and variables) per Q class
+    public final static String OPTION_EXPRESSION_CACHE_SIZE = "expressionCacheSize";
+
+    // use "javac -ApathConstants=true" to generate a nested class "Paths" in each Q class with the JDOQL paths of its members as constants
+    public final static String OPTION_PATH_CONSTANTS = "pathConstants";
+
+    // use "javac -ApathConstantsLimit=200" to generate at most 200 path constants per Q class
+    public final static String OPTION_PATH_CONSTANTS_LIMIT = "pathConstantsLimit";
+
+    // use "javac -AnamedQueries=true" to validate the JDOQL named queries (@Query) of each class and add them to its Q class
+    public final static String OPTION_NAMED_QUERIES = "namedQueries";
+
+    // use "javac -AfieldNumbers=true" to add the (enhancer) field numbers of the managed fields, with lookup by name, to each Q class
+    public final static String OPTION_FIELD_NUMBERS = "fieldNumbers";
 
-    private final static String CODE_INDENT = "    ";
+    // use "javac -ApersistableIndex=true" to write an index of the persistable classes to PersistableIndex.RESOURCE_NAME
+    public final static String OPTION_PERSISTABLE_INDEX = "persistableIndex";
+
+    // use "javac -Aaccessors=true" to add a FieldAccessor class to each Q class, to read and write the managed fields by field number
+    // without reflection (this implies "fieldNumbers")
+    public final static String OPTION_ACCESSORS = "accessors";
+
+    // use "javac -Aevaluators=true" to add an Evaluator class to each Q class, to compile filters into Predicates for in-memory
+    // evaluation (this implies "accessors")
+    public final static String OPTION_EVALUATORS = "evaluators";
+
+    // use "javac -AcandidateField=true" to add the deprecated static field "jdoCandidate" to each Q class, as in earlier versions,
+    // which creates the default candidate (and so initialises the related Q classes) when the Q class is initialised. By default the
+    // default candidate is only created on first use of "candidate()"
+    public final static String OPTION_CANDIDATE_FIELD = "candidateField";
+
+    public final static String STATS_RESOURCE_NAME = "META-INF/datanucleus/jdoquery-stats.json";
+
+    public final static String OUTPUT_DIRECTORY_MANIFEST_NAME = ".jdoquery-generated";
+
+    public final static String TREE_SIZE_RESOURCE_NAME = "META-INF/datanucleus/jdoquery-tree-sizes.json";
+
+    private final static String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private final static String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
+    final static int MODE_FIELD = 1;
+    final static int MODE_PROPERTY = 2;
+    final static int MODE_FLYWEIGHT = 3;
 
     public int queryMode = MODE_FIELD;
 
     /** Max field depth to use when generating references to the related Q class(es). */
     public int fieldDepth = 5;
 
+    /** Number of threads to render the Q class sources on, where 1 means render on the compiler thread. */
+    public int parallelRender = 1;
+
+    /** Directory to write the Q class sources to, or null to write them using the Filer (to the "-s" directory). */
+    public Path outputDirectory = null;
+
+    /** Q classes written to the output directory by this compilation, and the (binary) name of the class of each. */
+    Map<String, String> outputDirectoryQClasses = null;
+
+    /** Statistics for the generation, when enabled. */
+    ProcessorStats stats = null;
+
     boolean allowGeospatialExtensions = false;
 
+    /** Resolver for the query expression interface/implementation for member types. */
+    ExpressionTypeResolver expressionTypeResolver;
+
+    /** Metadata for the types referenced in the current round. */
+    TypeMetadataCache typeMetadata;
+
+    /** Planner for the depth of the related Q classes. */
+    FieldDepthPlanner fieldDepthPlanner;
+
+    /** Estimator for the expression nodes built by the Q classes, when reporting or checking against a budget. */
+    TreeSizeEstimator treeSizeEstimator;
+
+    boolean treeSizeReport = false;
+
+    /** Max expression nodes a Q class constructor should build, or 0 if not checked. */
+    long nodeBudget = 0;
+
+    boolean nodeBudgetError = false;
+
+    /** Max number of path constants to generate per Q class, or 0 to not generate them. */
+    int pathConstantsLimit = 0;
+
+    /** Collector for the named queries of each class, when adding them to the Q classes. */
+    NamedQueryCollector namedQueryCollector;
+
+    /** Whether to add the field numbers of the managed fields to the Q classes. */
+    boolean fieldNumbers = false;
+
+    /** Whether to add accessors for the managed fields to the Q classes. */
+    boolean accessors = false;
+
+    /** Index of the persistable classes, when writing it. */
+    PersistableIndex persistableIndex;
+
+    /** Renderer for the source of the Q classes. */
+    QClassRenderer renderer;
+
     @Override
     public synchronized void init(ProcessingEnvironment pe)
     {
@@ -117,9 +254,97 @@ public class JDOQueryProcessor extends AbstractProcessor
 
         // Get the query mode
         String queryMode = pe.getOptions().get(OPTION_MODE);
-        if (queryMode != null && queryMode.equalsIgnoreCase("FIELD"))
+        if (queryMode != null)
+        {
+            if (queryMode.equalsIgnoreCase("FIELD"))
+            {
+                this.queryMode = MODE_FIELD;
+            }
+            else if (queryMode.equalsIgnoreCase("PROPERTY") || queryMode.equalsIgnoreCase("LAZY"))
+            {
+                this.queryMode = MODE_PROPERTY;
+            }
+            else if (queryMode.equalsIgnoreCase("COMPACT"))
+            {
+                // The table of members was larger, and slower to construct, than the fields, whose constructors of wide classes are now split
+                pe.getMessager().printMessage(Kind.WARNING, "DataNucleus : queryMode=COMPACT is no longer supported, so using FIELD");
+            }
+            else if (queryMode.equalsIgnoreCase("FLYWEIGHT"))
+            {
+                this.queryMode = MODE_FLYWEIGHT;
+            }
+            else
+            {
+                pe.getMessager().printMessage(Kind.WARNING, "DataNucleus : queryMode=" + queryMode + " not supported, so using FIELD");
+            }
+        }
+
+        String parallelRender = pe.getOptions().get(OPTION_PARALLEL_RENDER);
+        if (parallelRender != null)
+        {
+            try
+            {
+                this.parallelRender = Math.max(1, Integer.parseInt(parallelRender.trim()));
+            }
+            catch (NumberFormatException nfe)
+            {
+                pe.getMessager().printMessage(Kind.WARNING, "DataNucleus : parallelRender=" + parallelRender + " is not a number of threads, so rendering serially");
+            }
+        }
+
+        this.fieldDepth = getIntegerOption(pe, OPTION_FIELD_DEPTH, fieldDepth);
+        boolean fieldDepthPlanning = Boolean.parseBoolean(pe.getOptions().get(OPTION_FIELD_DEPTH_PLANNING));
+        int cycleFieldDepth = getIntegerOption(pe, OPTION_CYCLE_FIELD_DEPTH, 1);
+        Map<String, Integer> fieldDepthOverrides = new HashMap<>();
+        String overrides = pe.getOptions().get(OPTION_FIELD_DEPTH_OVERRIDES);
+        if (overrides != null)
+        {
+            for (String override : overrides.split(","))
+            {
+                int sepPos = override.indexOf('=');
+                try
+                {
+                    fieldDepthOverrides.put(override.substring(0, sepPos).trim(), Math.max(0, Integer.parseInt(override.substring(sepPos + 1).trim())));
+                }
+                catch (RuntimeException re)
+                {
+                    pe.getMessager().printMessage(Kind.WARNING, "DataNucleus : fieldDepthOverrides entry \"" + override + "\" is not of the form {class}={depth} or {class}.{field}={depth}, so ignored");
+                }
+            }
+        }
+
+        treeSizeReport = Boolean.parseBoolean(pe.getOptions().get(OPTION_TREE_SIZE_REPORT));
+        nodeBudget = getIntegerOption(pe, OPTION_NODE_BUDGET, 0);
+        nodeBudgetError = Boolean.parseBoolean(pe.getOptions().get(OPTION_NODE_BUDGET_ERROR));
+
+        fieldNumbers = Boolean.parseBoolean(pe.getOptions().get(OPTION_FIELD_NUMBERS));
+        boolean evaluators = Boolean.parseBoolean(pe.getOptions().get(OPTION_EVALUATORS));
+        accessors = Boolean.parseBoolean(pe.getOptions().get(OPTION_ACCESSORS)) || evaluators;
+        if (accessors)
+        {
+            // Accessors are by field number
+            fieldNumbers = true;
+        }
+        if (Boolean.parseBoolean(pe.getOptions().get(OPTION_PERSISTABLE_INDEX)))
+        {
+            persistableIndex = new PersistableIndex();
+        }
+
+        if (Boolean.parseBoolean(pe.getOptions().get(OPTION_PATH_CONSTANTS)))
+        {
+            pathConstantsLimit = getIntegerOption(pe, OPTION_PATH_CONSTANTS_LIMIT, 500);
+        }
+
+        String outputDirectory = pe.getOptions().get(OPTION_OUTPUT_DIRECTORY);
+        if (outputDirectory != null && outputDirectory.trim().length() > 0)
         {
-            this.queryMode = MODE_FIELD;
+            this.outputDirectory = Paths.get(outputDirectory.trim());
+            this.outputDirectoryQClasses = new TreeMap<>();
+        }
+
+        if (Boolean.parseBoolean(pe.getOptions().get(OPTION_STATS)))
+        {
+            stats = new ProcessorStats();
         }
 
         // Check for geospatial extensions
@@ -131,6 +356,25 @@ public class JDOQueryProcessor extends AbstractProcessor
         catch (Throwable thr)
         {
         }
+
+        typeMetadata = new TypeMetadataCache(pe);
+        fieldDepthPlanner = new FieldDepthPlanner(pe, typeMetadata, fieldDepth, fieldDepthPlanning, cycleFieldDepth, fieldDepthOverrides);
+        if (treeSizeReport || nodeBudget > 0)
+        {
+            treeSizeEstimator = new TreeSizeEstimator(typeMetadata, fieldDepthPlanner, this.queryMode);
+        }
+        if (Boolean.parseBoolean(pe.getOptions().get(OPTION_NAMED_QUERIES)))
+        {
+            namedQueryCollector = new NamedQueryCollector(pe, typeMetadata, fieldDepthPlanner);
+        }
+        expressionTypeResolver = new ExpressionTypeResolver(this::isPersistableType, allowGeospatialExtensions);
+        int expressionCacheSize = getIntegerOption(pe, OPTION_EXPRESSION_CACHE_SIZE, 64);
+        if ("false".equalsIgnoreCase(pe.getOptions().get(OPTION_EXPRESSION_CACHE)))
+        {
+            expressionCacheSize = 0;
+        }
+        boolean candidateField = Boolean.parseBoolean(pe.getOptions().get(OPTION_CANDIDATE_FIELD));
+        renderer = new QClassRenderer(this.getClass().getName(), this.queryMode, expressionCacheSize, evaluators, candidateField);
         
         // TODO Parse persistence.xml and extract names of classes that are persistable
 //        pe.getElementUtils().getTypeElement(fullyQualifiedClassName);
@@ -142,17 +386,73 @@ public class JDOQueryProcessor extends AbstractProcessor
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
     {
+        // Elements are only valid for the round they were obtained in
+        typeMetadata.clear();
+        fieldDepthPlanner.clear();
+        if (treeSizeEstimator != null)
+        {
+            treeSizeEstimator.clear();
+        }
+
         if (roundEnv.processingOver())
         {
+            if (stats != null)
+            {
+                writeStats();
+            }
+            if (treeSizeReport)
+            {
+                writeResource(TREE_SIZE_RESOURCE_NAME, treeSizeEstimator.toJson());
+            }
+            if (persistableIndex != null)
+            {
+                writePersistableIndex();
+            }
+            if (outputDirectory != null)
+            {
+                removeOrphanedSourceFiles();
+            }
             return false;
         }
 
-        Set<? extends Element> elements = roundEnv.getRootElements();
+        long startTime = System.nanoTime();
+
+        // Only visit the persistable classes rather than every root element, since they are often a small part of the module
+        Set<TypeElement> classElements = new LinkedHashSet<>();
+        Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(PersistenceCapable.class);
         for (Element e : elements)
         {
             if (e instanceof TypeElement)
             {
-                processClass((TypeElement)e);
+                TypeElement classEl = (TypeElement)e;
+                Element enclosingEl = classEl.getEnclosingElement();
+                if (enclosingEl.getKind() == ElementKind.PACKAGE)
+                {
+                    classElements.add(classEl);
+                }
+                else if (enclosingEl instanceof TypeElement && enclosingEl.getEnclosingElement().getKind() == ElementKind.PACKAGE &&
+                    isPersistableType((TypeElement)enclosingEl))
+                {
+                    // Persistable (static) inner class has its Q class inlined in the Q class of its persistable outer class
+                    classElements.add((TypeElement)enclosingEl);
+                }
+            }
+        }
+
+        if (stats != null)
+        {
+            stats.addDiscoveryTime(System.nanoTime() - startTime);
+        }
+
+        if (parallelRender > 1 && classElements.size() > 1)
+        {
+            processClassesInParallel(classElements);
+        }
+        else
+        {
+            for (TypeElement classEl : classElements)
+            {
+                processClass(classEl);
             }
         }
         return false;
@@ -164,6 +464,44 @@ public class JDOQueryProcessor extends AbstractProcessor
         return SourceVersion.latest();
     }
 
+    /**
+     * Accessor for the supported options. This also tells Gradle (which registers this processor as "dynamic") which incremental
+     * category applies : "isolating" when each Q class only depends on its own class, or "aggregating" when a resource is generated
+     * from all classes.
+     * @return The supported options
+     */
+    @Override
+    public Set<String> getSupportedOptions()
+    {
+        Set<String> options = new HashSet<>(super.getSupportedOptions());
+        options.add(stats != null || treeSizeReport || persistableIndex != null ? GRADLE_AGGREGATING : GRADLE_ISOLATING);
+        return options;
+    }
+
+    /**
+     * Convenience method to return the value of an integer option that must not be negative.
+     * @param pe Processing environment
+     * @param name Name of the option
+     * @param defaultValue Value to use when the option isn't specified (or isn't valid)
+     * @return The value
+     */
+    private static int getIntegerOption(ProcessingEnvironment pe, String name, int defaultValue)
+    {
+        String value = pe.getOptions().get(name);
+        if (value != null)
+        {
+            try
+            {
+                return Math.max(0, Integer.parseInt(value.trim()));
+            }
+            catch (NumberFormatException nfe)
+            {
+                pe.getMessager().printMessage(Kind.WARNING, "DataNucleus : " + name + "=" + value + " is not a number, so using " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Handler for processing a JDO annotated class to create the criteria class stub.
      * @param el The class element
@@ -175,924 +513,700 @@ public class JDOQueryProcessor extends AbstractProcessor
             return;
         }
 
-        Elements elementUtils = processingEnv.getElementUtils();
-
-        // TODO Support specification of the location for writing the class source files
         // TODO Set references to other classes to be the class name and put the package in the imports
-        String classNameFull = elementUtils.getBinaryName(el).toString();
-        String pkgName = classNameFull.substring(0, classNameFull.lastIndexOf('.'));
-        String classNameSimple = classNameFull.substring(classNameFull.lastIndexOf('.') + 1);
-        String qclassNameSimple = getQueryClassNameForClassName(classNameSimple);
-        String qclassNameFull = pkgName + "." + qclassNameSimple;
-        System.out.println("DataNucleus : JDOQLTypedQuery Q class generation : " + classNameFull + " -> " + qclassNameFull);
+        long startTime = System.nanoTime();
+        QClassModel model = createModel(el);
+        long modelTime = System.nanoTime();
+        checkTreeSize(el, model);
+        addToPersistableIndex(el, model);
+        ProcessorStats.ClassStats classStats = (stats != null ? stats.addClass(model) : null);
+        long renderStartTime = System.nanoTime();
+        String source = renderer.render(model);
+        long renderTime = System.nanoTime();
+        try
+        {
+            writeSourceFile(el, model, source);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
 
-        Map<String, TypeMirror> genericLookups = null;
-        List<? extends TypeParameterElement> elTypeParams = el.getTypeParameters();
-        for (TypeParameterElement elTypeParam : elTypeParams)
+        if (classStats != null)
         {
-            List<? extends TypeMirror> elTypeBounds = elTypeParam.getBounds();
-            if (elTypeBounds != null && !elTypeBounds.isEmpty())
+            classStats.setResolutionTime(modelTime - startTime);
+            classStats.setRenderTime(renderTime - renderStartTime);
+            classStats.setWriteTime(System.nanoTime() - renderTime);
+            classStats.setGeneratedBytes(source.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    /**
+     * Handler for processing JDO annotated classes using multiple threads to render the criteria class stubs.
+     * Elements are not thread-safe so each class is first snapshot into its model on the compiler thread. The models are then
+     * rendered by a pool of threads, and each source is written using the Filer on the compiler thread as soon as it (and all
+     * sources before it) are rendered, so the files are created in the same order and with the same content as when serial.
+     * @param classElements The class elements
+     */
+    protected void processClassesInParallel(Set<TypeElement> classElements)
+    {
+        List<TypeElement> els = new ArrayList<>(classElements.size());
+        List<QClassModel> models = new ArrayList<>(classElements.size());
+        List<ProcessorStats.ClassStats> modelStats = new ArrayList<>(classElements.size());
+        for (TypeElement el : classElements)
+        {
+            if (isPersistableType(el))
             {
-                genericLookups = new HashMap<String, TypeMirror>();
-                genericLookups.put(elTypeParam.toString(), elTypeBounds.get(0));
+                long startTime = System.nanoTime();
+                QClassModel model = createModel(el);
+                long modelTime = System.nanoTime();
+                checkTreeSize(el, model);
+                addToPersistableIndex(el, model);
+                els.add(el);
+                models.add(model);
+                if (stats != null)
+                {
+                    ProcessorStats.ClassStats classStats = stats.addClass(model);
+                    classStats.setResolutionTime(modelTime - startTime);
+                    modelStats.add(classStats);
+                }
             }
         }
 
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelRender, models.size()), r ->
+        {
+            Thread thread = new Thread(r, "DataNucleus-JDOQueryProcessor-render");
+            thread.setDaemon(true);
+            return thread;
+        });
         try
         {
-            JavaFileObject javaFile = processingEnv.getFiler().createSourceFile(qclassNameFull);
-            Writer w = javaFile.openWriter();
-            try
+            List<Future<String>> sources = new ArrayList<>(models.size());
+            for (int i = 0; i < models.size(); i++)
             {
-                // Package declaration and imports
-                w.append("package " + pkgName + ";\n");
-                w.append("\n");
-                w.append("import javax.annotation.processing.Generated;\n");
-                w.append("import javax.jdo.query.*;\n");
-                w.append("import org.datanucleus.api.jdo.query.*;\n");
-                List<? extends Element> encElems = el.getEnclosedElements();
-                if (encElems != null)
+                QClassModel model = models.get(i);
+                ProcessorStats.ClassStats classStats = (stats != null ? modelStats.get(i) : null);
+                sources.add(executor.submit(() ->
                 {
-                    for (Element encE : encElems)
+                    long startTime = System.nanoTime();
+                    String source = renderer.render(model);
+                    if (classStats != null)
                     {
-                        if (encE instanceof TypeElement)
-                        {
-                            TypeElement encEl = (TypeElement)encE;
-                            if (isPersistableType(encEl))
-                            {
-                                String innerclassNameFull = elementUtils.getBinaryName(encEl).toString();
-                                String innerclassNameSimple = innerclassNameFull.substring(innerclassNameFull.lastIndexOf('.') + 1);
-                                String innerclassNameSimpleShort = innerclassNameSimple.substring(innerclassNameSimple.indexOf("$")+1);
-                                w.append("import " + classNameFull + "." + innerclassNameSimpleShort + ";\n");
-                            }
-                        }
+                        classStats.setRenderTime(System.nanoTime() - startTime);
                     }
-                }
-                w.append("\n");
-
-                // Class declaration
-                w.append("@Generated(value=\"" + this.getClass().getName() + "\")\n");
-                w.append("public class " + qclassNameSimple);
-                TypeElement superEl = getPersistentSupertype(el);
-                if (superEl != null)
-                {
-                    // "public class QASub extends QA"
-                    String superClassName = elementUtils.getBinaryName(superEl).toString();
-                    w.append(" extends ").append(superClassName.substring(0, superClassName.lastIndexOf('.')+1));
-                    w.append(getQueryClassNameForClassName(superClassName.substring(superClassName.lastIndexOf('.')+1)));
-                }
-                else
-                {
-                    // "public class QA extends PersistableExpressionImpl<A> implements PersistableExpression<A>"
-                    w.append(" extends ").append("PersistableExpressionImpl").append("<" + classNameSimple + ">");
-                    w.append(" implements ").append(PersistableExpression.class.getSimpleName() + "<" + classNameSimple + ">");
-                }
-                w.append("\n");
-                w.append("{\n");
-
-                String indent = "    ";
-
-                // Add static accessor for the candidate of this type
-                addStaticMethodAccessors(w, indent, qclassNameSimple, classNameSimple);
-                w.append("\n");
+                    return source;
+                }));
+            }
 
-                // Add fields for persistable members
-                List<? extends Element> members = getPersistentMembers(el);
-                if (members != null)
+            for (int i = 0; i < models.size(); i++)
+            {
+                QClassModel model = models.get(i);
+                try
                 {
-                    Iterator<? extends Element> iter = members.iterator();
-                    while (iter.hasNext())
+                    String source = sources.get(i).get();
+                    long startTime = System.nanoTime();
+                    writeSourceFile(els.get(i), model, source);
+                    if (stats != null)
                     {
-                        Element member = iter.next();
-                        if (member.getKind() == ElementKind.FIELD ||
-                            (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
-                        {
-                            TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
-                            if (type instanceof TypeVariable && genericLookups != null && genericLookups.containsKey(type.toString()))
-                            {
-                                type = genericLookups.get(type.toString());
-                            }
-                            String memberName = AnnotationProcessorUtils.getMemberName(member);
-                            String intfName = getExpressionInterfaceNameForType(type);
-
-                            if (intfName.startsWith(classNameFull + "."))
-                            {
-                                // TODO If intfName is an inner class of this class then omit this class name
-                                intfName = intfName.substring(classNameFull.length()+1);
-                            }
-
-                            if (queryMode == MODE_FIELD)
-                            {
-                                w.append(indent).append("public final ").append(intfName);
-                                w.append(" ").append(memberName).append(";\n");
-                            }
-                            else
-                            {
-                                w.append(indent).append("private ").append(intfName);
-                                w.append(" ").append(memberName).append(";\n");
-                            }
-                        }
+                        modelStats.get(i).setWriteTime(System.nanoTime() - startTime);
+                        modelStats.get(i).setGeneratedBytes(source.getBytes(StandardCharsets.UTF_8).length);
                     }
                 }
-
-                // ========== Constructor(PersistableExpression parent, String name, int depth) ==========
-                w.append("\n");
-                addConstructorWithPersistableExpression(w, indent, qclassNameSimple, superEl, members, classNameFull, genericLookups);
-
-                // ========== Constructor(Class type, String name, ExpressionType exprType) ==========
-                w.append("\n");
-                addConstructorWithType(w, indent, qclassNameSimple, members, classNameFull, genericLookups);
-
-                // Property accessors
-                if (queryMode == MODE_PROPERTY && members != null)
+                catch (ExecutionException e)
                 {
-                    Iterator<? extends Element> iter = members.iterator();
-                    while (iter.hasNext())
-                    {
-                        Element member = iter.next();
-                        if (member.getKind() == ElementKind.FIELD ||
-                            (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
-                        {
-                            w.append("\n");
-                            addPropertyAccessorMethod(w, indent, member, classNameFull, genericLookups);
-                        }
-                    }
+                    processingEnv.getMessager().printMessage(Kind.ERROR, "DataNucleus : error rendering Q class " + model.getQClassNameFull() + " : " + e.getCause(), els.get(i));
                 }
-
-                if (encElems != null)
+                catch (IOException e)
                 {
-                    for (Element encE : encElems)
-                    {
-                        if (encE instanceof TypeElement)
-                        {
-                            String indentInner = "        ";
-                            TypeElement encEl = (TypeElement)encE;
-                            if (isPersistableType(encEl))
-                            {
-                                // Static inner class that is persistable, so needing own Qclass inlined here
-                                w.append("\n");
-                                System.out.println("Persistable (static) inner class " + elementUtils.getBinaryName(encEl).toString() + " really should be in own file. " +
-                                    "Trying to generate Q class inlined!");
-
-                                // TODO Support static inner persistable classes
-                                String innerclassNameFull = elementUtils.getBinaryName(encEl).toString();
-                                String innerclassNameSimple = innerclassNameFull.substring(innerclassNameFull.lastIndexOf('.') + 1);
-                                String innerclassNameSimpleShort = innerclassNameSimple.substring(innerclassNameSimple.indexOf("$")+1);
-                                String qinnerclassNameSimpleShort = getQueryClassNameForClassName(innerclassNameSimpleShort);
-                                String qinnerclassNameFull = pkgName + "." + qclassNameSimple + "$" + qinnerclassNameSimpleShort;
-                                System.out.println("DataNucleus : JDOQLTypedQuery Q class generation : " + innerclassNameFull + " -> " + qinnerclassNameFull);
-
-                                // Class declaration
-                                w.append(indent).append("public static class " + qinnerclassNameSimpleShort);
-                                TypeElement innerSuperEl = getPersistentSupertype(encEl);
-                                if (innerSuperEl != null)
-                                {
-                                    // "public class QASub extends QA"
-                                    String superClassName = elementUtils.getBinaryName(innerSuperEl).toString();
-                                    w.append(" extends ").append(superClassName.substring(0, superClassName.lastIndexOf('.')+1));
-                                    w.append(getQueryClassNameForClassName(superClassName.substring(superClassName.lastIndexOf('.')+1)));
-                                }
-                                else
-                                {
-                                    // "public class QA extends PersistableExpressionImpl<A> implements PersistableExpression<A>"
-                                    w.append(" extends ").append("PersistableExpressionImpl").append("<" + innerclassNameSimpleShort + ">");
-                                    w.append(" implements ").append(PersistableExpression.class.getSimpleName() + "<" + innerclassNameSimpleShort + ">");
-                                }
-                                w.append("\n");
-                                w.append(indent).append("{\n");
-
-                                // Add static accessor for the candidate of this type
-                                addStaticMethodAccessors(w, indentInner, qinnerclassNameSimpleShort, innerclassNameSimpleShort);
-                                w.append("\n");
-
-                                // Add fields for persistable members
-                                List<? extends Element> innerMembers = getPersistentMembers(encEl);
-                                if (members != null)
-                                {
-                                    Iterator<? extends Element> iter = innerMembers.iterator();
-                                    while (iter.hasNext())
-                                    {
-                                        Element member = iter.next();
-                                        if (member.getKind() == ElementKind.FIELD ||
-                                            (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
-                                        {
-                                            TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
-                                            if (type instanceof TypeVariable && genericLookups != null && genericLookups.containsKey(type.toString()))
-                                            {
-                                                type = genericLookups.get(type.toString());
-                                            }
-                                            String memberName = AnnotationProcessorUtils.getMemberName(member);
-                                            String intfName = getExpressionInterfaceNameForType(type);
-
-                                            if (queryMode == MODE_FIELD)
-                                            {
-                                                w.append(indentInner).append("public final ").append(intfName).append(" ").append(memberName).append(";\n");
-                                            }
-                                            else
-                                            {
-                                                w.append(indentInner).append("private ").append(intfName).append(" ").append(memberName).append(";\n");
-                                            }
-                                        }
-                                    }
-                                }
-
-                                // ========== Constructor(PersistableExpression parent, String name, int depth) ==========
-                                w.append("\n");
-                                addConstructorWithPersistableExpression(w, indentInner, qinnerclassNameSimpleShort, innerSuperEl, innerMembers, classNameFull, genericLookups);
-
-                                // ========== Constructor(Class type, String name, ExpressionType exprType) ==========
-                                w.append("\n");
-                                addConstructorWithType(w, indentInner, qinnerclassNameSimpleShort, innerMembers, classNameFull, genericLookups);
-
-                                // Property accessors
-                                if (queryMode == MODE_PROPERTY && members != null)
-                                {
-                                    Iterator<? extends Element> iter = members.iterator();
-                                    while (iter.hasNext())
-                                    {
-                                        Element member = iter.next();
-                                        if (member.getKind() == ElementKind.FIELD ||
-                                            (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
-                                        {
-                                            w.append("\n");
-                                            addPropertyAccessorMethod(w, indentInner, member, classNameFull, genericLookups);
-                                        }
-                                    }
-                                }
-
-                                w.append(indent).append("}\n");
-                            }
-                        }
-                    }
+                    e.printStackTrace();
                 }
-
-                w.append("}\n");
-                w.flush();
-            }
-            finally
-            {
-                w.close();
             }
         }
-        catch (IOException e)
+        catch (InterruptedException e)
         {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Method to add the code for static method accessors needed by this QClass.
-     * @param w The writer
-     * @param indent Indent to apply to the code
-     * @param qclassNameSimple Simple name of the QClass that this is constructing
-     * @param classNameSimple Simple name of this persistable class
-     * @throws IOException Thrown if an error occurs on writing this code
+     * Method to estimate the expression nodes built by the Q class (and any inner Q classes) of the specified class, reporting them
+     * when required and checking them against the node budget.
+     * @param el The class element
+     * @param model Model of its Q class
      */
-    protected void addStaticMethodAccessors(Writer w, String indent, String qclassNameSimple, String classNameSimple)
-    throws IOException
+    protected void checkTreeSize(TypeElement el, QClassModel model)
     {
-        // Add static accessor for the candidate of this type
-        w.append(indent).append("public static final ").append(qclassNameSimple).append(" jdoCandidate").append(" = candidate(\"this\");\n");
-        w.append("\n");
-
-        // Add static method to generate candidate of this type with a particular name
-        w.append(indent).append("public static " + qclassNameSimple + " candidate(String name)\n");
-        w.append(indent).append("{\n");
-        w.append(indent).append(CODE_INDENT).append("return new ").append(qclassNameSimple).append("(null, name, " + fieldDepth + ");\n");
-        w.append(indent).append("}\n");
-        w.append("\n");
-
-        // Add static method to generate candidate of this type for default name ("this")
-        w.append(indent).append("public static " + qclassNameSimple + " candidate()\n");
-        w.append(indent).append("{\n");
-        w.append(indent).append(CODE_INDENT).append("return jdoCandidate;\n");
-        w.append(indent).append("}\n");
-        w.append("\n");
-
-        // Add static method to generate parameter of this type
-        w.append(indent).append("public static " + qclassNameSimple + " parameter(String name)\n");
-        w.append(indent).append("{\n");
-        w.append(indent).append(CODE_INDENT).append("return new ").append(qclassNameSimple).append("(" + classNameSimple + ".class, name, ExpressionType.PARAMETER);\n");
-        w.append(indent).append("}\n");
-        w.append("\n");
-
-        // Add static method to generate variable of this type
-        w.append(indent).append("public static " + qclassNameSimple + " variable(String name)\n");
-        w.append(indent).append("{\n");
-        w.append(indent).append(CODE_INDENT).append("return new ").append(qclassNameSimple).append("(" + classNameSimple + ".class, name, ExpressionType.VARIABLE);\n");
-        w.append(indent).append("}\n");
+        if (treeSizeEstimator == null)
+        {
+            return;
+        }
+
+        checkTreeSize(el, treeSizeEstimator.estimate(el, model.getClassNameFull()));
+        for (Element encE : el.getEnclosedElements())
+        {
+            if (encE instanceof TypeElement && isPersistableType((TypeElement)encE))
+            {
+                TypeElement encEl = (TypeElement)encE;
+                checkTreeSize(encEl, treeSizeEstimator.estimate(encEl, processingEnv.getElementUtils().getBinaryName(encEl).toString()));
+            }
+        }
     }
 
-    /**
-     * Method to add the code for a constructor taking in (PersistableExpression parent, String name, int depth).
-     * @param w The writer
-     * @param indent Indent to apply to the code
-     * @param qclassNameSimple Simple name of the QClass that this is constructing
-     * @param superEl Any super element
-     * @param members Members for this QClass that need initialising
-     * @param classNameFull Fully qualified class name
-     * @param genericLookups Lookup for TypeVariables
-     * @throws IOException Thrown if an error occurs on writing this code
-     */
-    protected void addConstructorWithPersistableExpression(Writer w, String indent, String qclassNameSimple, TypeElement superEl, List<? extends Element> members, String classNameFull,
-            Map<String, TypeMirror> genericLookups)
-    throws IOException
+    private void checkTreeSize(TypeElement el, TreeSizeEstimator.Estimate estimate)
     {
-        w.append(indent).append("public " + qclassNameSimple).append("(").append(PersistableExpression.class.getSimpleName() + " parent, String name, int depth)\n");
-        w.append(indent).append("{\n");
-        if (superEl != null)
+        if (treeSizeReport)
         {
-            w.append(indent).append(CODE_INDENT).append("super(parent, name, depth);\n");
+            processingEnv.getMessager().printMessage(Kind.NOTE, "DataNucleus : JDOQLTypedQuery Q class for " + estimate.getClassName() + " builds " +
+                estimate.getCandidateNodes() + " expression nodes per candidate and " + estimate.getTypeNodes() + " per parameter/variable");
         }
-        else
+        if (nodeBudget > 0 && Math.max(estimate.getCandidateNodes(), estimate.getTypeNodes()) > nodeBudget)
+        {
+            processingEnv.getMessager().printMessage(nodeBudgetError ? Kind.ERROR : Kind.WARNING, "DataNucleus : JDOQLTypedQuery Q class for " + estimate.getClassName() +
+                " builds " + Math.max(estimate.getCandidateNodes(), estimate.getTypeNodes()) + " expression nodes, more than the nodeBudget of " + nodeBudget +
+                ". Consider reducing fieldDepth, using fieldDepthOverrides or fieldDepthPlanning, or queryMode=PROPERTY", el);
+        }
+    }
+
+    /**
+     * Method to add the specified class (and any persistable inner classes) to the index of persistable classes, when writing it.
+     * @param el The class element
+     * @param model Model of its Q class
+     */
+    protected void addToPersistableIndex(TypeElement el, QClassModel model)
+    {
+        if (persistableIndex == null)
         {
-            w.append(indent).append(CODE_INDENT).append("super(parent, name);\n");
+            return;
         }
-        if (queryMode == MODE_FIELD && members != null)
+
+        addToPersistableIndex(el, model.getQClassNameFull());
+        for (QClassModel innerModel : model.getInnerClasses())
         {
-            // Initialise all fields
-            Iterator<? extends Element> iter = members.iterator();
-            while (iter.hasNext())
+            TypeElement innerEl = processingEnv.getElementUtils().getTypeElement(innerModel.getClassNameFull().replace('$', '.'));
+            if (innerEl != null)
             {
-                Element member = iter.next();
-                if (member.getKind() == ElementKind.FIELD ||
-                    (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
-                {
-                    TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
-                    if (type instanceof TypeVariable && genericLookups != null && genericLookups.containsKey(type.toString()))
-                    {
-                        type = genericLookups.get(type.toString());
-                    }
-                    String memberName = AnnotationProcessorUtils.getMemberName(member);
-                    String implClassName = getExpressionImplClassNameForType(type);
-                    if (implClassName.startsWith(classNameFull + "."))
-                    {
-                        // TODO If intfName is an inner class of this class then omit this class name
-                        implClassName = implClassName.substring(classNameFull.length()+1);
-                    }
-                    if (isPersistableType(type))
-                    {
-                        // if (depth > 0)
-                        // {
-                        //     this.{field} = new {ImplType}(this, memberName, depth-1);
-                        // }
-                        // else
-                        // {
-                        //     this.{field} = null;
-                        // }
-                        w.append(indent).append(CODE_INDENT).append("if (depth > 0)\n");
-                        w.append(indent).append(CODE_INDENT).append("{\n");
-                        w.append(indent).append(CODE_INDENT).append(CODE_INDENT).append("this.").append(memberName).append(" = new ").append(implClassName)
-                            .append("(this, \"" + memberName + "\", depth-1);\n");
-                        w.append(indent).append(CODE_INDENT).append("}\n");
-                        w.append(indent).append(CODE_INDENT).append("else\n");
-                        w.append(indent).append(CODE_INDENT).append("{\n");
-                        w.append(indent).append(CODE_INDENT).append(CODE_INDENT).append("this.").append(memberName).append(" = null;\n");
-                        w.append(indent).append(CODE_INDENT).append("}\n");
-                    }
-                    else
-                    {
-                        // this.{field} = new {ImplType}(this, memberName);
-                        w.append(indent).append(CODE_INDENT).append("this.").append(memberName);
-                        w.append(" = new ").append(implClassName).append("(this, \"" + memberName + "\");\n");
-                    }
-                }
+                addToPersistableIndex(innerEl, innerModel.getQClassNameFull());
             }
         }
-        w.append(indent).append("}\n");
+    }
+
+    private void addToPersistableIndex(TypeElement el, String qclassNameFull)
+    {
+        // Fingerprint the persistent members (and their types) and the supertype, being what the Q class is generated from
+        Elements elementUtils = processingEnv.getElementUtils();
+        TypeElement superEl = getPersistentSupertype(el);
+        String superClassName = (superEl != null ? elementUtils.getBinaryName(superEl).toString() : null);
+        StringBuilder members = new StringBuilder(superClassName != null ? superClassName : "");
+        for (Element member : getPersistentMembers(el))
+        {
+            members.append(';').append(member.getSimpleName()).append(':').append(AnnotationProcessorUtils.getDeclaredType(member));
+        }
+        persistableIndex.add(new PersistableIndex.Entry(elementUtils.getBinaryName(el).toString(), superClassName, qclassNameFull,
+            PersistableIndex.getFingerprint(members.toString())));
     }
 
     /**
-     * Method to add the code for a constructor taking in (Class type, String name, ExpressionType exprType).
-     * @param w The writer
-     * @param indent Indent to apply to the code
-     * @param qclassNameSimple Simple name of the QClass that this is constructing
-     * @param members Members for this QClass that need initialising
-     * @param classNameFull Fully qualified class name
-     * @param genericLookups Lookup for TypeVariables
-     * @throws IOException Thrown if an error occurs on writing this code
+     * Method to write the index of persistable classes. Any existing index in the output is merged, retaining the entries for
+     * classes not processed by this (incremental) compilation that are still persistable.
      */
-    protected void addConstructorWithType(Writer w, String indent, String qclassNameSimple, List<? extends Element> members, String classNameFull, Map<String, TypeMirror> genericLookups)
-    throws IOException
+    protected void writePersistableIndex()
     {
-        w.append(indent).append("public " + qclassNameSimple).append("(").append(Class.class.getSimpleName() + "<?> type, String name, ExpressionType exprType)\n");
-        w.append(indent).append("{\n");
-        w.append(indent).append(CODE_INDENT).append("super(type, name, exprType);\n");
-        if (queryMode == MODE_FIELD && members != null)
+        try
         {
-            // Initialise all fields
-            Iterator<? extends Element> iter = members.iterator();
-            while (iter.hasNext())
+            FileObject existingFile = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", PersistableIndex.RESOURCE_NAME);
+            PersistableIndex existingIndex = new PersistableIndex();
+            existingIndex.merge(existingFile.getCharContent(true));
+            for (PersistableIndex.Entry entry : existingIndex.getEntries())
             {
-                Element member = iter.next();
-                if (member.getKind() == ElementKind.FIELD ||
-                    (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
+                if (persistableIndex.getEntry(entry.getClassName()) == null &&
+                    isPersistableType(processingEnv.getElementUtils().getTypeElement(entry.getClassName().replace('$', '.'))))
                 {
-                    TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
-                    if (type instanceof TypeVariable && genericLookups != null && genericLookups.containsKey(type.toString()))
-                    {
-                        type = genericLookups.get(type.toString());
-                    }
-                    String memberName = AnnotationProcessorUtils.getMemberName(member);
-                    String implClassName = getExpressionImplClassNameForType(type);
-                    if (implClassName.startsWith(classNameFull + "."))
-                    {
-                        // TODO If intfName is an inner class of this class then omit this class name
-                        implClassName = implClassName.substring(classNameFull.length()+1);
-                    }
-                    if (isPersistableType(type))
-                    {
-                        // this.{field} = new {ImplType}(this, memberName, fieldDepth);
-                        w.append(indent).append(CODE_INDENT).append("this.").append(memberName).append(" = new ").append(implClassName)
-                            .append("(this, \"" + memberName + "\", " + fieldDepth + ");\n");
-                    }
-                    else
-                    {
-                        // this.{field} = new {ImplType}(this, memberName);
-                        w.append(indent).append(CODE_INDENT).append("this.").append(memberName).append(" = new ").append(implClassName)
-                            .append("(this, \"" + memberName + "\");\n");
-                    }
+                    persistableIndex.add(entry);
                 }
             }
         }
-        w.append(indent).append("}\n");
+        catch (IOException | IllegalArgumentException e)
+        {
+            // No existing index
+        }
+
+        writeResource(PersistableIndex.RESOURCE_NAME, persistableIndex.toContent());
     }
 
     /**
-     * Generate accessor for a property.
-     * <pre>
-     * public {type} {memberName}()
-     * {
-     *     if (memberVar == null)
-     *     {
-     *         this.memberVar = new {implClassName}(this, \"memberName\");
-     *     }
-     *     return this.memberVar;
-     * }
-     * </pre>
-     * @param w The writer
-     * @param indent The indent to use
-     * @param member The member we are generating for
-     * @param classNameFull Fully qualified class name
-     * @param genericLookups Lookup for TypeVariables
-     * @throws IOException Thrown if an exception occurs during generation
+     * Method to write the statistics of the generation as a JSON resource, and a summary to the build output.
      */
-    protected void addPropertyAccessorMethod(Writer w, String indent, Element member, String classNameFull, Map<String, TypeMirror> genericLookups)
-    throws IOException
+    protected void writeStats()
     {
-        TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
-        if (type instanceof TypeVariable && genericLookups != null && genericLookups.containsKey(type.toString()))
-        {
-            type = genericLookups.get(type.toString());
-        }
-        String memberName = AnnotationProcessorUtils.getMemberName(member);
-        String implClassName = getExpressionImplClassNameForType(type);
-        if (implClassName.startsWith(classNameFull + "."))
-        {
-            // TODO If intfName is an inner class of this class then omit this class name
-            implClassName = implClassName.substring(classNameFull.length()+1);
-        }
-        String intfName = getExpressionInterfaceNameForType(type);
-
-        w.append(indent).append("public ").append(intfName).append(" ").append(memberName).append("()\n");
-        w.append(indent).append("{\n");
-        w.append(indent).append(CODE_INDENT).append("if (this.").append(memberName).append(" == null)\n");
-        w.append(indent).append(CODE_INDENT).append("{\n");
-        w.append(indent).append(CODE_INDENT).append(CODE_INDENT).append("this." + memberName).append(" = new ").append(implClassName).append("(this, \"" + memberName + "\");\n");
-        w.append(indent).append(CODE_INDENT).append("}\n");
-        w.append(indent).append(CODE_INDENT).append("return this.").append(memberName).append(";\n");
-        w.append(indent).append("}\n");
+        processingEnv.getMessager().printMessage(Kind.NOTE, stats.getSummary());
+        writeResource(STATS_RESOURCE_NAME, stats.toJson());
     }
 
     /**
-     * Convenience method to return the query expression interface name for a specified type.
-     * @param inputType The type
-     * @return The query expression interface name to use
+     * Method to write a resource to the class output, warning if it cannot be written.
+     * @param name Name of the resource
+     * @param content Content of the resource
      */
-    private String getExpressionInterfaceNameForType(TypeMirror inputType)
+    protected void writeResource(String name, String content)
     {
-        TypeMirror type = inputType;
-        List<? extends TypeMirror> typeArgs = null; // Generic type args for this type
-        if (type.getKind() == TypeKind.DECLARED)
+        try
         {
-            typeArgs = ((DeclaredType) type).getTypeArguments();
-
-            // This was needed to detect such as a field annotated with a Bean Validation 2.0 @NotNull, which comes through as 
-            // "(@javax.validation.constraints.NotNull :: theUserType)", so this converts that to "theUserType". TODO Is this the best way to trap that case ?
-            type = ((DeclaredType)type).asElement().asType();
-        }
-        String typeName = type.toString();
-
-        if (type.getKind() == TypeKind.BOOLEAN || Boolean.class.getName().equals(typeName))
-        {
-            return BooleanExpression.class.getSimpleName();
-        }
-        else if (type.getKind() == TypeKind.BYTE || Byte.class.getName().equals(typeName))
-        {
-            return ByteExpression.class.getSimpleName();
-        }
-        else if (type.getKind() == TypeKind.CHAR || Character.class.getName().equals(typeName))
-        {
-            return CharacterExpression.class.getSimpleName();
-        }
-        else if (type.getKind() == TypeKind.DOUBLE || Double.class.getName().equals(typeName))
-        {
-            return NumericExpression.class.getSimpleName() + "<Double>";
-        }
-        else if (type.getKind() == TypeKind.FLOAT || Float.class.getName().equals(typeName))
-        {
-            return NumericExpression.class.getSimpleName() + "<Float>";
-        }
-        else if (type.getKind() == TypeKind.INT || Integer.class.getName().equals(typeName))
-        {
-            return NumericExpression.class.getSimpleName() + "<Integer>";
-        }
-        else if (type.getKind() == TypeKind.LONG || Long.class.getName().equals(typeName))
-        {
-            return NumericExpression.class.getSimpleName() + "<Long>";
-        }
-        else if (type.getKind() == TypeKind.SHORT || Short.class.getName().equals(typeName))
-        {
-            return NumericExpression.class.getSimpleName() + "<Short>";
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", name);
+            Writer w = file.openWriter();
+            try
+            {
+                w.write(content);
+            }
+            finally
+            {
+                w.close();
+            }
         }
-        else if (typeName.equals(BigInteger.class.getName()))
+        catch (IOException e)
         {
-            return NumericExpression.class.getSimpleName() + "<java.math.BigInteger>";
+            processingEnv.getMessager().printMessage(Kind.WARNING, "DataNucleus : unable to write " + name + " : " + e.getMessage());
         }
-        else if (typeName.equals(BigDecimal.class.getName()))
+    }
+
+    /**
+     * Method to write the source of a Q class, in a single write.
+     * When an output directory is specified the source is written there rather than using the Filer, and is not written
+     * when the existing file is identical, so the file is left untouched and doesn't trigger any downstream rebuild.
+     * Note that such files are not compiled as part of this compilation (nor tracked by incremental builds), so the directory
+     * needs adding as a source directory of the build.
+     * @param el The class element that the Q class is for
+     * @param model Model of the Q class
+     * @param source Source of the Q class
+     * @throws IOException Thrown if an error occurs on writing the file
+     */
+    protected void writeSourceFile(TypeElement el, QClassModel model, String source)
+    throws IOException
+    {
+        if (outputDirectory != null)
         {
-            return NumericExpression.class.getSimpleName() + "<java.math.BigDecimal>";
+            Path file = outputDirectory.resolve(model.getQClassNameFull().replace('.', '/') + ".java");
+            writeFileIfChanged(file, source.getBytes(StandardCharsets.UTF_8));
+            outputDirectoryQClasses.put(model.getQClassNameFull(), processingEnv.getElementUtils().getBinaryName(el).toString());
+            return;
         }
-        else if (typeName.equals(String.class.getName()))
+
+        // Pass the class as originating element so that incremental builds (e.g Gradle "isolating") know what this Q class depends on
+        JavaFileObject javaFile = processingEnv.getFiler().createSourceFile(model.getQClassNameFull(), el);
+        Writer w = javaFile.openWriter();
+        try
         {
-            return StringExpression.class.getSimpleName();
+            w.write(source);
         }
-        else if (typeName.equals(Date.class.getName()))
+        finally
         {
-            return DateTimeExpression.class.getSimpleName();
+            w.close();
         }
-        else if (typeName.equals(java.sql.Date.class.getName()))
+    }
+
+    /**
+     * Method to delete the Q classes in the output directory that were written by an earlier compilation for a class that has since
+     * been removed (or renamed), or is no longer persistable, and then to update the list of Q classes in the output directory.
+     * The Q classes of classes not in this (incremental) compilation that are still persistable are retained.
+     */
+    protected void removeOrphanedSourceFiles()
+    {
+        Path manifestFile = outputDirectory.resolve(OUTPUT_DIRECTORY_MANIFEST_NAME);
+        Map<String, String> qclasses = new TreeMap<>();
+        try
         {
-            return DateExpression.class.getSimpleName();
+            if (Files.isRegularFile(manifestFile))
+            {
+                for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8))
+                {
+                    int sepPos = line.indexOf('=');
+                    if (sepPos <= 0 || outputDirectoryQClasses.containsKey(line.substring(0, sepPos)))
+                    {
+                        continue;
+                    }
+
+                    String qclassName = line.substring(0, sepPos);
+                    String className = line.substring(sepPos + 1);
+                    TypeElement el = processingEnv.getElementUtils().getTypeElement(className.replace('$', '.'));
+                    if (el != null && isPersistableType(el))
+                    {
+                        qclasses.put(qclassName, className);
+                    }
+                    else if (Files.deleteIfExists(outputDirectory.resolve(qclassName.replace('.', '/') + ".java")))
+                    {
+                        processingEnv.getMessager().printMessage(Kind.NOTE,
+                            "DataNucleus : JDOQLTypedQuery Q class " + qclassName + " deleted since " + className + " no longer exists or is not persistable");
+                    }
+                }
+            }
+
+            qclasses.putAll(outputDirectoryQClasses);
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> entry : qclasses.entrySet())
+            {
+                sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+            }
+            writeFileIfChanged(manifestFile, sb.toString().getBytes(StandardCharsets.UTF_8));
         }
-        else if (typeName.equals(java.sql.Time.class.getName()))
+        catch (IOException ioe)
         {
-            return TimeExpression.class.getSimpleName();
+            processingEnv.getMessager().printMessage(Kind.WARNING, "DataNucleus : error updating Q classes in " + outputDirectory + " : " + ioe.getMessage());
         }
-        else if (typeName.equals(LocalDate.class.getName()))
+    }
+
+    /**
+     * Method to write the provided bytes to a file, unless the file already has these bytes.
+     * The bytes are written to a temporary file in the same directory which is then (atomically where supported) moved to the
+     * file, so the file is never seen partially written.
+     * @param file The file
+     * @param bytes The bytes for the file
+     * @return Whether the file was written
+     * @throws IOException Thrown if an error occurs on writing the file
+     */
+    protected static boolean writeFileIfChanged(Path file, byte[] bytes)
+    throws IOException
+    {
+        if (Files.isRegularFile(file) && Files.size(file) == bytes.length && Arrays.equals(Files.readAllBytes(file), bytes))
         {
-            return LocalDateExpression.class.getSimpleName();
+            return false;
         }
-        else if (typeName.equals(LocalTime.class.getName()))
+
+        Path dir = file.getParent();
+        Files.createDirectories(dir);
+        Path tmpFile = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try
         {
-            return LocalTimeExpression.class.getSimpleName();
+            Files.write(tmpFile, bytes);
+            try
+            {
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException amnse)
+            {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
         }
-        else if (typeName.equals(LocalDateTime.class.getName()))
+        finally
         {
-            return LocalDateTimeExpression.class.getSimpleName();
+            Files.deleteIfExists(tmpFile);
         }
-        else if (typeName.startsWith(java.util.Optional.class.getName()))
+        return true;
+    }
+
+    /**
+     * Method to create the model of the Q class for a persistable class, including any persistable static inner classes.
+     * @param el The class element
+     * @return The model of its Q class
+     */
+    protected QClassModel createModel(TypeElement el)
+    {
+        Elements elementUtils = processingEnv.getElementUtils();
+
+        String classNameFull = elementUtils.getBinaryName(el).toString();
+        String pkgName = classNameFull.substring(0, classNameFull.lastIndexOf('.'));
+        String classNameSimple = classNameFull.substring(classNameFull.lastIndexOf('.') + 1);
+        String qclassNameSimple = getQueryClassNameForClassName(classNameSimple);
+        String qclassNameFull = pkgName + "." + qclassNameSimple;
+        processingEnv.getMessager().printMessage(Kind.NOTE, "DataNucleus : JDOQLTypedQuery Q class generation : " + classNameFull + " -> " + qclassNameFull);
+
+        List<QClassModel> innerModels = new ArrayList<>();
+        List<? extends Element> encElems = el.getEnclosedElements();
+        if (encElems != null)
         {
-            if (typeArgs != null)
+            for (Element encE : encElems)
             {
-                return OptionalExpression.class.getSimpleName() + "<" + typeArgs.get(0).toString() + ">";
+                if (encE instanceof TypeElement)
+                {
+                    TypeElement encEl = (TypeElement)encE;
+                    if (isPersistableType(encEl))
+                    {
+                        // Static inner class that is persistable, so needing own Qclass inlined here
+                        processingEnv.getMessager().printMessage(Kind.NOTE, "Persistable (static) inner class " + elementUtils.getBinaryName(encEl).toString() +
+                            " really should be in own file. Trying to generate Q class inlined!", encEl);
+
+                        // TODO Support static inner persistable classes
+                        String innerclassNameFull = elementUtils.getBinaryName(encEl).toString();
+                        String innerclassNameSimple = innerclassNameFull.substring(innerclassNameFull.lastIndexOf('.') + 1);
+                        String innerclassNameSimpleShort = innerclassNameSimple.substring(innerclassNameSimple.indexOf("$")+1);
+                        String qinnerclassNameSimpleShort = getQueryClassNameForClassName(innerclassNameSimpleShort);
+                        String qinnerclassNameFull = pkgName + "." + qclassNameSimple + "$" + qinnerclassNameSimpleShort;
+                        processingEnv.getMessager().printMessage(Kind.NOTE,
+                            "DataNucleus : JDOQLTypedQuery Q class generation : " + innerclassNameFull + " -> " + qinnerclassNameFull);
+
+                        innerModels.add(new QClassModel(pkgName, innerclassNameFull, innerclassNameSimpleShort, qinnerclassNameFull, qinnerclassNameSimpleShort,
+                            getSuperQClassName(encEl), fieldDepthPlanner.getClassDepth(encEl), createMemberModels(encEl, classNameFull), createMemberPaths(encEl),
+                            getNamedQueries(encEl), getFieldNames(encEl), getFieldAccesses(encEl), Collections.emptyList()));
+                    }
+                }
             }
-            return OptionalExpression.class.getSimpleName();
         }
-        else if (type.getKind() == TypeKind.DECLARED && type instanceof DeclaredType && ((DeclaredType)type).asElement().getKind() == ElementKind.ENUM)
+
+        return new QClassModel(pkgName, classNameFull, classNameSimple, qclassNameFull, qclassNameSimple, getSuperQClassName(el),
+            fieldDepthPlanner.getClassDepth(el), createMemberModels(el, classNameFull), createMemberPaths(el), getNamedQueries(el), getFieldNames(el),
+            getFieldAccesses(el), innerModels);
+    }
+
+    /**
+     * Method to return the name of the Q class of the persistent supertype of the specified class.
+     * @param el The class element
+     * @return Name of the Q class of its persistent supertype, or null if it has none
+     */
+    private String getSuperQClassName(TypeElement el)
+    {
+        TypeElement superEl = getPersistentSupertype(el);
+        if (superEl == null)
         {
-            // TODO Is this the best way to detect an Enum??
-            return EnumExpression.class.getSimpleName();
+            return null;
         }
-        if (allowGeospatialExtensions)
+
+        // "public class QASub extends QA"
+        String superClassName = processingEnv.getElementUtils().getBinaryName(superEl).toString();
+        return superClassName.substring(0, superClassName.lastIndexOf('.')+1) + getQueryClassNameForClassName(superClassName.substring(superClassName.lastIndexOf('.')+1));
+    }
+
+    /**
+     * Method to create the models of the persistable members of the specified class, resolving the expression types of each.
+     * @param el The class element
+     * @param classNameFull Fully qualified name of the (outermost) class whose Q class these members are generated in
+     * @return The member models
+     */
+    private List<QClassModel.Member> createMemberModels(TypeElement el, String classNameFull)
+    {
+        Map<String, TypeMirror> genericLookups = null;
+        List<? extends TypeParameterElement> elTypeParams = el.getTypeParameters();
+        for (TypeParameterElement elTypeParam : elTypeParams)
         {
-            // Support geospatial types here since they can invoke methods
-            if (typeName.startsWith("com.vividsolutions.jts.geom"))
+            List<? extends TypeMirror> elTypeBounds = elTypeParam.getBounds();
+            if (elTypeBounds != null && !elTypeBounds.isEmpty())
             {
-                // Vividsolutions JTS
-                if (typeName.equals("com.vividsolutions.jts.geom.Polygon"))
-                {
-                    return "javax.jdo.query.geospatial.PolygonExpression";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.Point"))
-                {
-                    return "javax.jdo.query.geospatial.PointExpression";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.LineString"))
-                {
-                    return "javax.jdo.query.geospatial.LineStringExpression";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.LinearRing"))
-                {
-                    return "javax.jdo.query.geospatial.LinearRingExpression";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.MultiLineString"))
+                if (genericLookups == null)
                 {
-                    return "javax.jdo.query.geospatial.MultiLineStringExpression";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.MultiPoint"))
-                {
-                    return "javax.jdo.query.geospatial.MultiPointExpression";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.MultiPolygon"))
-                {
-                    return "javax.jdo.query.geospatial.MultiPolygonExpression";
-                }
-                else
-                {
-                    return "javax.jdo.query.geospatial.GeometryExpression";
+                    genericLookups = new HashMap<String, TypeMirror>();
                 }
+                genericLookups.put(elTypeParam.toString(), elTypeBounds.get(0));
             }
-            else if (typeName.startsWith("org.postgis"))
+        }
+
+        List<QClassModel.Member> memberModels = new ArrayList<>();
+        List<? extends Element> members = getPersistentMembers(el);
+        for (Element member : members)
+        {
+            if (member.getKind() == ElementKind.FIELD ||
+                (member.getKind() == ElementKind.METHOD && AnnotationProcessorUtils.isJavaBeanGetter((ExecutableElement) member)))
             {
-                // PostGIS
-                if (typeName.equals("org.postgis.Polygon"))
-                {
-                    return "javax.jdo.query.geospatial.PolygonExpression";
-                }
-                else if (typeName.equals("org.postgis.Point"))
-                {
-                    return "javax.jdo.query.geospatial.PointExpression";
-                }
-                else if (typeName.equals("org.postgis.LineString"))
+                TypeMirror type = AnnotationProcessorUtils.getDeclaredType(member);
+                if (type instanceof TypeVariable && genericLookups != null && genericLookups.containsKey(type.toString()))
                 {
-                    return "javax.jdo.query.geospatial.LineStringExpression";
+                    type = genericLookups.get(type.toString());
                 }
-                else if (typeName.equals("org.postgis.LinearRing"))
-                {
-                    return "javax.jdo.query.geospatial.LinearRingExpression";
-                }
-                else if (typeName.equals("org.postgis.MultiPolygon"))
+
+                ExpressionTypeResolver.ExpressionTypes exprTypes = expressionTypeResolver.resolve(type);
+                String intfName = exprTypes.getInterfaceName();
+                String implClassName = exprTypes.getImplName();
+                if (intfName.startsWith(classNameFull + "."))
                 {
-                    return "javax.jdo.query.geospatial.MultiPolygonExpression";
+                    // TODO If intfName is an inner class of this class then omit this class name
+                    intfName = intfName.substring(classNameFull.length()+1);
                 }
-                else if (typeName.equals("org.postgis.MultiPoint"))
+                if (implClassName.startsWith(classNameFull + "."))
                 {
-                    return "javax.jdo.query.geospatial.MultiPointExpression";
+                    implClassName = implClassName.substring(classNameFull.length()+1);
                 }
-                else if (typeName.equals("org.postgis.MultiLineString"))
+
+                String memberName = AnnotationProcessorUtils.getMemberName(member);
+                if (isPersistableType(type))
                 {
-                    return "javax.jdo.query.geospatial.MultiLineStringExpression";
+                    // Relation, so plan the depth of the related Q class
+                    TypeElement relatedEl = (TypeElement)processingEnv.getTypeUtils().asElement(type);
+                    memberModels.add(new QClassModel.Member(memberName, intfName, implClassName, true,
+                        fieldDepthPlanner.getDepthCap(el, memberName, relatedEl), fieldDepthPlanner.isAlwaysCreated(el, memberName, relatedEl)));
                 }
                 else
                 {
-                    return "javax.jdo.query.geospatial.GeometryExpression";
+                    memberModels.add(new QClassModel.Member(memberName, intfName, implClassName, false));
                 }
             }
-            else if (typeName.equals("oracle.spatial.geometry.JGeometry"))
-            {
-                // Oracle JGeometry
-                return "javax.jdo.query.geospatial.GeometryExpression";
-            }
         }
+        return memberModels;
+    }
 
-        String declTypeName = AnnotationProcessorUtils.getDeclaredTypeName(processingEnv, type, true);
-        TypeCategory cat = AnnotationProcessorUtils.getTypeCategoryForTypeMirror(declTypeName);
-        if (cat == TypeCategory.MAP)
-        {
-            return MapExpression.class.getSimpleName(); // TODO Add generics?
-        }
-        else if (cat == TypeCategory.LIST)
-        {
-            return ListExpression.class.getSimpleName(); // TODO Add generics?
-        }
-        else if (cat == TypeCategory.COLLECTION || cat == TypeCategory.SET)
+    /**
+     * Method to return the names of the managed fields of the specified class in (absolute) field number order, so those of its
+     * persistent supertypes first, when adding the field numbers to the Q classes.
+     * @param el The class element
+     * @return The field names, or null if not adding field numbers
+     */
+    private List<String> getFieldNames(TypeElement el)
+    {
+        if (!fieldNumbers)
         {
-            return CollectionExpression.class.getSimpleName(); // TODO Add generics?
+            return null;
         }
 
-        TypeElement typeElement = (TypeElement) processingEnv.getTypeUtils().asElement(type);
-        if (typeElement != null && isPersistableType(typeElement))
+        List<String> fieldNames = new ArrayList<>();
+        TypeElement superEl = getPersistentSupertype(el);
+        if (superEl != null)
         {
-            // Persistent field ("mydomain.Xxx" becomes "mydomain.QXxx")
-            return declTypeName.substring(0, declTypeName.lastIndexOf('.')+1) + getQueryClassNameForClassName(declTypeName.substring(declTypeName.lastIndexOf('.')+1));
-        }
-        else
-        {
-            // Fallback to "ObjectExpression<{type}>" for this field/property type, omitting any generics on the type
-            String typeNameWithoutGenerics = typeName;
-            if (typeName.indexOf("<") > 0) // TODO Maybe use typeArgs to do this?
-            {
-                typeNameWithoutGenerics = typeNameWithoutGenerics.substring(0, typeName.indexOf("<"));
-            }
-            return ObjectExpression.class.getSimpleName() + "<" + typeNameWithoutGenerics + ">";
+            fieldNames.addAll(getFieldNames(superEl));
         }
+        fieldNames.addAll(typeMetadata.getManagedFieldNames(el));
+        return fieldNames;
     }
 
     /**
-     * Convenience method to return the query expression implementation name for a specified type.
-     * @param inputType The type
-     * @return The query expression implementation class name to use
+     * Method to return how to access the managed fields of the specified class in (absolute) field number order, as for getFieldNames,
+     * from code in the package of the class when adding accessors to the Q classes.
+     * A field is read/written using its JavaBean getter/setter where accessible, since access via methods of the (enhanced) class is
+     * mediated by its StateManager, otherwise directly where the field is accessible.
+     * @param el The class element
+     * @return The field accesses, or null if not adding accessors
      */
-    private String getExpressionImplClassNameForType(TypeMirror inputType)
+    private List<QClassModel.FieldAccess> getFieldAccesses(TypeElement el)
     {
-        TypeMirror type = inputType;
-        List<? extends TypeMirror> typeArgs = null; // Generic type args for this type
-        if (type.getKind() == TypeKind.DECLARED)
+        if (!accessors)
         {
-            typeArgs = ((DeclaredType) type).getTypeArguments();
-
-            // This was needed to detect such as a field annotated with a Bean Validation 2.0 @NotNull, which comes through as 
-            // "(@javax.validation.constraints.NotNull :: theUserType)", so this converts that to "theUserType". TODO Is this the best way to trap that case ?
-            type = ((DeclaredType)type).asElement().asType();
+            return null;
         }
-        String typeName = type.toString();
 
-        if (type.getKind() == TypeKind.BOOLEAN || Boolean.class.getName().equals(typeName))
-        {
-            return "BooleanExpressionImpl";
-        }
-        else if (type.getKind() == TypeKind.BYTE || Byte.class.getName().equals(typeName))
-        {
-            return "ByteExpressionImpl";
-        }
-        else if (type.getKind() == TypeKind.CHAR || Character.class.getName().equals(typeName))
-        {
-            return "CharacterExpressionImpl";
-        }
-        else if (type.getKind() == TypeKind.DOUBLE || Double.class.getName().equals(typeName))
-        {
-            return "NumericExpressionImpl<Double>";
-        }
-        else if (type.getKind() == TypeKind.FLOAT || Float.class.getName().equals(typeName))
-        {
-            return "NumericExpressionImpl<Float>";
-        }
-        else if (type.getKind() == TypeKind.INT || Integer.class.getName().equals(typeName))
-        {
-            return "NumericExpressionImpl<Integer>";
-        }
-        else if (type.getKind() == TypeKind.LONG || Long.class.getName().equals(typeName))
-        {
-            return "NumericExpressionImpl<Long>";
-        }
-        else if (type.getKind() == TypeKind.SHORT || Short.class.getName().equals(typeName))
-        {
-            return "NumericExpressionImpl<Short>";
-        }
-        else if (typeName.equals(BigInteger.class.getName()))
-        {
-            return "NumericExpressionImpl<java.math.BigInteger>";
-        }
-        else if (typeName.equals(BigDecimal.class.getName()))
-        {
-            return "NumericExpressionImpl<java.math.BigDecimal>";
-        }
-        else if (typeName.equals(String.class.getName()))
-        {
-            return "StringExpressionImpl";
-        }
-        else if (typeName.equals(Date.class.getName()))
-        {
-            return "DateTimeExpressionImpl";
-        }
-        else if (typeName.equals(java.sql.Date.class.getName()))
-        {
-            return "DateExpressionImpl";
-        }
-        else if (typeName.equals(java.sql.Time.class.getName()))
-        {
-            return "TimeExpressionImpl";
-        }
-        else if (typeName.equals(LocalDate.class.getName()))
-        {
-            return "LocalDateExpressionImpl";
-        }
-        else if (typeName.equals(LocalTime.class.getName()))
-        {
-            return "LocalTimeExpressionImpl";
-        }
-        else if (typeName.equals(LocalDateTime.class.getName()))
-        {
-            return "LocalDateTimeExpressionImpl";
-        }
-        else if (typeName.startsWith(java.util.Optional.class.getName()))
-        {
-            if (typeArgs != null)
-            {
-                return "OptionalExpressionImpl<" + typeArgs.get(0).toString() + ">";
-            }
-            return "OptionalExpressionImpl";
-        }
-        else if (type.getKind() == TypeKind.DECLARED && type instanceof DeclaredType && ((DeclaredType)type).asElement().getKind() == ElementKind.ENUM)
+        Elements elementUtils = processingEnv.getElementUtils();
+        Types typeUtils = processingEnv.getTypeUtils();
+        String pkgName = elementUtils.getPackageOf(el).getQualifiedName().toString();
+        List<? extends Element> allMembers = elementUtils.getAllMembers(el);
+
+        List<TypeElement> typeEls = new ArrayList<>();
+        for (TypeElement currentEl = el; currentEl != null; currentEl = getPersistentSupertype(currentEl))
         {
-            // TODO Is this the best way to detect an Enum??
-            return "EnumExpressionImpl";
+            typeEls.add(0, currentEl);
         }
 
-        if (allowGeospatialExtensions)
+        List<QClassModel.FieldAccess> fieldAccesses = new ArrayList<>();
+        for (TypeElement typeEl : typeEls)
         {
-            // Support geospatial types here since they can invoke methods
-            if (typeName.startsWith("com.vividsolutions.jts.geom"))
+            for (String fieldName : typeMetadata.getManagedFieldNames(typeEl))
             {
-                // Vividsolutions JTS
-                if (typeName.equals("com.vividsolutions.jts.geom.Polygon"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.PolygonExpressionImpl";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.Point"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.PointExpressionImpl";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.LineString"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.LineStringExpressionImpl";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.LinearRing"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.LinearRingExpressionImpl";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.MultiPolygon"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.MultiPolygonExpressionImpl";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.MultiPoint"))
+                Element field = null;
+                for (Element member : typeEl.getEnclosedElements())
                 {
-                    return "org.datanucleus.api.jdo.query.geospatial.MultiPointExpressionImpl";
-                }
-                else if (typeName.equals("com.vividsolutions.jts.geom.MultiLineString"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.MultiLineStringExpressionImpl";
-                }
-                else
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.GeometryExpressionImpl";
-                }
-            }
-            else if (typeName.startsWith("org.postgis"))
-            {
-                // PostGIS
-                if (typeName.equals("org.postgis.Polygon"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.PolygonExpressionImpl";
-                }
-                else if (typeName.equals("org.postgis.Point"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.PointExpressionImpl";
-                }
-                else if (typeName.equals("org.postgis.LineString"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.LineStringExpressionImpl";
-                }
-                else if (typeName.equals("org.postgis.LinearRing"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.LinearRingExpressionImpl";
-                }
-                else if (typeName.equals("org.postgis.MultiPolygon"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.MultiPolygonExpressionImpl";
-                }
-                else if (typeName.equals("org.postgis.MultiPoint"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.MultiPointExpressionImpl";
-                }
-                else if (typeName.equals("org.postgis.MultiLineString"))
-                {
-                    return "org.datanucleus.api.jdo.query.geospatial.MultiLineStringExpressionImpl";
+                    if (member.getKind() == ElementKind.FIELD && member.getSimpleName().contentEquals(fieldName))
+                    {
+                        field = member;
+                        break;
+                    }
                 }
-                else
+                TypeMirror type = typeUtils.erasure(field.asType());
+                String propertyName = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+
+                String getterName = null;
+                String setterName = null;
+                for (Element member : allMembers)
                 {
-                    return "org.datanucleus.api.jdo.query.geospatial.GeometryExpressionImpl";
+                    if (member.getKind() != ElementKind.METHOD || member.getModifiers().contains(Modifier.STATIC) || !isAccessible(member, pkgName))
+                    {
+                        continue;
+                    }
+                    ExecutableElement method = (ExecutableElement)member;
+                    String methodName = method.getSimpleName().toString();
+                    if (getterName == null && method.getParameters().isEmpty() && typeUtils.isSameType(typeUtils.erasure(method.getReturnType()), type) &&
+                        (methodName.equals("get" + propertyName) || (type.getKind() == TypeKind.BOOLEAN && methodName.equals("is" + propertyName))))
+                    {
+                        getterName = methodName;
+                    }
+                    else if (setterName == null && method.getParameters().size() == 1 && methodName.equals("set" + propertyName) &&
+                        typeUtils.isSameType(typeUtils.erasure(method.getParameters().get(0).asType()), type))
+                    {
+                        setterName = methodName;
+                    }
                 }
-            }
-            else if (typeName.equals("oracle.spatial.geometry.JGeometry"))
-            {
-                // Oracle JGeometry
-                return "org.datanucleus.api.jdo.query.geospatial.GeometryExpressionImpl";
+
+                fieldAccesses.add(new QClassModel.FieldAccess(fieldName, type.toString(), isAccessible(field, pkgName), getterName, setterName));
             }
         }
+        return fieldAccesses;
+    }
 
-        String declTypeName = AnnotationProcessorUtils.getDeclaredTypeName(processingEnv, type, true);
-        TypeCategory cat = AnnotationProcessorUtils.getTypeCategoryForTypeMirror(declTypeName);
-        if (cat == TypeCategory.MAP)
+    /**
+     * Method to return whether the specified member of a class is accessible from code in the specified package (not in the class).
+     * @param member The member
+     * @param pkgName Name of the package
+     * @return Whether it is accessible
+     */
+    private boolean isAccessible(Element member, String pkgName)
+    {
+        if (member.getModifiers().contains(Modifier.PUBLIC))
         {
-            return "MapExpressionImpl";
+            return true;
         }
-        else if (cat == TypeCategory.LIST)
+        else if (member.getModifiers().contains(Modifier.PRIVATE))
         {
-            return "ListExpressionImpl";
+            return false;
         }
-        else if (cat == TypeCategory.COLLECTION || cat == TypeCategory.SET)
+        return processingEnv.getElementUtils().getPackageOf(member).getQualifiedName().contentEquals(pkgName);
+    }
+
+    /**
+     * Method to return the JDOQL named queries of the specified class, when adding them to the Q classes.
+     * @param el The class element
+     * @return The named queries
+     */
+    private List<QClassModel.NamedQuery> getNamedQueries(TypeElement el)
+    {
+        return (namedQueryCollector != null ? namedQueryCollector.getNamedQueries(el) : Collections.emptyList());
+    }
+
+    /**
+     * Method to create the JDOQL paths of the members of the specified class from its default candidate ("this"), navigating
+     * relations up to the depth of the class but not back into a class already on the path, and at most "pathConstantsLimit" paths.
+     * @param el The class element
+     * @return The paths (e.g "this.customer", "this.customer.address.city")
+     */
+    private List<String> createMemberPaths(TypeElement el)
+    {
+        if (pathConstantsLimit == 0)
         {
-            return "CollectionExpressionImpl";
+            return Collections.emptyList();
         }
 
-        TypeElement typeElement = (TypeElement) processingEnv.getTypeUtils().asElement(type);
-        if (typeElement != null && isPersistableType(typeElement))
+        List<String> paths = new ArrayList<>();
+        Set<TypeElement> pathEls = new HashSet<>();
+        addMemberPaths(el, "this", fieldDepthPlanner.getClassDepth(el), pathEls, paths);
+        if (paths.size() >= pathConstantsLimit)
         {
-            // Persistent field ("mydomain.Xxx" becomes "mydomain.QXxx")
-            return declTypeName.substring(0, declTypeName.lastIndexOf('.')+1) + getQueryClassNameForClassName(declTypeName.substring(declTypeName.lastIndexOf('.')+1));
+            processingEnv.getMessager().printMessage(Kind.NOTE, "DataNucleus : path constants for " + el.getQualifiedName() + " limited to " + pathConstantsLimit, el);
         }
-        else
+        return paths;
+    }
+
+    private void addMemberPaths(TypeElement el, String path, int depth, Set<TypeElement> pathEls, List<String> paths)
+    {
+        pathEls.add(el);
+        TypeElement currentEl = el;
+        while (currentEl != null && paths.size() < pathConstantsLimit)
         {
-            // Fallback to "ObjectExpressionImpl<{type}>" for this field/property type, omitting any generics on the type
-            String typeNameWithoutGenerics = typeName;
-            if (typeName.indexOf("<") > 0) // TODO Maybe use typeArgs to do this?
+            for (Element member : getPersistentMembers(currentEl))
             {
-                typeNameWithoutGenerics = typeNameWithoutGenerics.substring(0, typeName.indexOf("<"));
+                if (paths.size() >= pathConstantsLimit)
+                {
+                    break;
+                }
+                if (member.getKind() != ElementKind.FIELD)
+                {
+                    continue;
+                }
+
+                String memberPath = path + "." + AnnotationProcessorUtils.getMemberName(member);
+                paths.add(memberPath);
+                TypeElement relatedEl = fieldDepthPlanner.getRelatedType(member);
+                if (relatedEl != null && depth > 0 && !pathEls.contains(relatedEl))
+                {
+                    addMemberPaths(relatedEl, memberPath, depth - 1, pathEls, paths);
+                }
             }
-            return "ObjectExpressionImpl<" + typeNameWithoutGenerics + ">";
+            currentEl = getPersistentSupertype(currentEl);
         }
+        pathEls.remove(el);
     }
 
     /**
@@ -1112,16 +1226,7 @@ public class JDOQueryProcessor extends AbstractProcessor
 
     private boolean isPersistableType(TypeElement el)
     {
-        if (el == null)
-        {
-            return false;
-        }
-        if ((el.getAnnotation(PersistenceCapable.class) != null))
-        {
-            return true;
-        }
-        // TODO Also allow for types that are specified as persistable in XML
-        return false;
+        return typeMetadata.isPersistable(el);
     }
 
     /**
@@ -1129,48 +1234,9 @@ public class JDOQueryProcessor extends AbstractProcessor
      * @param el The class (TypeElement)
      * @return The members that are persistable (Element)
      */
-    private static List<? extends Element> getPersistentMembers(TypeElement el)
+    private List<? extends Element> getPersistentMembers(TypeElement el)
     {
-        List<? extends Element> members = AnnotationProcessorUtils.getFieldMembers(el); // All fields needed
-        if (members != null)
-        {
-            // Remove any non-persistent members
-            Iterator<? extends Element> iter = members.iterator();
-            while (iter.hasNext())
-            {
-                Element member = iter.next();
-                boolean persistent = true;
-
-                if (member.getModifiers().contains(Modifier.STATIC))
-                {
-                    // Don't include static member in Q class
-                    persistent = false;
-                }
-                else
-                {
-                    List<? extends AnnotationMirror> annots = member.getAnnotationMirrors();
-                    if (annots != null)
-                    {
-                        Iterator<? extends AnnotationMirror> annotIter = annots.iterator();
-                        while (annotIter.hasNext())
-                        {
-                            AnnotationMirror annot = annotIter.next();
-                            if (annot.getAnnotationType().toString().equals(NotPersistent.class.getName()))
-                            {
-                                // Ignore this
-                                persistent = false;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (!persistent)
-                {
-                    iter.remove();
-                }
-            }
-        }
-        return members;
+        return typeMetadata.getPersistentMembers(el);
     }
 
     /**
@@ -1180,18 +1246,7 @@ public class JDOQueryProcessor extends AbstractProcessor
      */
     public TypeElement getPersistentSupertype(TypeElement element)
     {
-        TypeMirror superType = element.getSuperclass();
-        if (superType == null || Object.class.getName().equals(element.toString()))
-        {
-            return null;
-        }
-
-        TypeElement superElement = (TypeElement) processingEnv.getTypeUtils().asElement(superType);
-        if (superElement == null || isPersistableType(superElement))
-        {
-            return superElement;
-        }
-        return getPersistentSupertype(superElement);
+        return typeMetadata.getPersistentSupertype(element);
     }
 
     /**
@@ -0,0 +1,639 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.jdo.annotations.Queries;
+import javax.jdo.annotations.Query;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Collector for the JDOQL named queries declared on a persistable class using the JDO @Query/@Queries annotations, so that
+ * its Q class can have the single-string form of each as a constant, a typed method to create it, and a typed method to execute it.
+ * Each query is validated at compile time, ignoring the contents of string literals, and any problem is reported as an error
+ * against the annotation :
+ * <ul>
+ * <li>every "this.{member}..." path (in the filter, ordering, result etc) must navigate persistent members of the candidate class
+ * and its related classes</li>
+ * <li>the types of declared parameters ("PARAMETERS {type} {name}, ...") must be resolvable, and explicit and implicit (":name")
+ * parameters cannot be mixed</li>
+ * <li>a parameter compared with a member path must be of a type comparable with the member. The type of an implicit parameter is
+ * taken from the member it is compared with (otherwise it is Object)</li>
+ * </ul>
+ */
+public class NamedQueryCollector
+{
+    private static final String IDENTIFIER = "[A-Za-z_$][A-Za-z0-9_$]*";
+
+    private static final String PATH = "((?:\\s*\\.\\s*" + IDENTIFIER + ")+)";
+
+    private static final String COMPARISON = "\\s*(?:==|!=|<=|>=|<|>)\\s*";
+
+    /** Path from the candidate, e.g "this.customer.address.city", with the character following it (to detect method calls). */
+    private static final Pattern THIS_PATH = Pattern.compile("\\bthis" + PATH + "(\\s*\\()?");
+
+    private static final Pattern CANDIDATE_CLASS = Pattern.compile("(?i)\\bFROM\\s+([A-Za-z_$][A-Za-z0-9_$.]*)");
+
+    /** Start of a SELECT query, with "UNIQUE" and the result clause (if any). */
+    private static final Pattern SELECT = Pattern.compile("(?is)^\\s*SELECT\\s+(UNIQUE\\b)?(.*?)\\bFROM\\b");
+
+    /** Parameter declarations, up to the next clause. */
+    private static final Pattern PARAMETERS = Pattern.compile("(?is)\\bPARAMETERS\\b(.*?)(?=\\b(?:VARIABLES|IMPORT|GROUP\\s+BY|ORDER\\s+BY|RANGE)\\b|$)");
+
+    private static final Pattern PARAMETER_DECLARATION = Pattern.compile("(?s)\\s*(.+?)\\s+(" + IDENTIFIER + ")\\s*");
+
+    private static final Pattern IMPORT = Pattern.compile("(?i)\\bIMPORT\\s+([A-Za-z_$][A-Za-z0-9_$.]*(?:\\.\\*)?)");
+
+    private static final Pattern IMPLICIT_PARAMETER = Pattern.compile(":(" + IDENTIFIER + ")");
+
+    /** Comparison of a path from the candidate with an identifier (possibly a parameter), e.g "this.name == :name". */
+    private static final Pattern PATH_COMPARISON = Pattern.compile("(?<![\\w$.])this" + PATH + COMPARISON + "(:?" + IDENTIFIER + ")(?![\\w$]|\\s*[.(])");
+
+    /** Comparison of an identifier (possibly a parameter) with a path from the candidate, e.g ":name == this.name". */
+    private static final Pattern REVERSED_COMPARISON = Pattern.compile("(?<![\\w$.:])(:?" + IDENTIFIER + ")" + COMPARISON + "this" + PATH + "(?![\\w$]|\\s*[.(])");
+
+    private final ProcessingEnvironment processingEnv;
+
+    private final TypeMetadataCache typeMetadata;
+
+    private final FieldDepthPlanner fieldDepthPlanner;
+
+    public NamedQueryCollector(ProcessingEnvironment processingEnv, TypeMetadataCache typeMetadata, FieldDepthPlanner fieldDepthPlanner)
+    {
+        this.processingEnv = processingEnv;
+        this.typeMetadata = typeMetadata;
+        this.fieldDepthPlanner = fieldDepthPlanner;
+    }
+
+    /**
+     * Method to return the (validated) JDOQL named queries declared on the specified class.
+     * @param el The class element
+     * @return The named queries
+     */
+    public List<QClassModel.NamedQuery> getNamedQueries(TypeElement el)
+    {
+        List<QClassModel.NamedQuery> queries = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (AnnotationMirror annot : el.getAnnotationMirrors())
+        {
+            String annotName = ((TypeElement)annot.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (annotName.equals(Query.class.getName()))
+            {
+                addNamedQuery(el, annot, annot, names, queries);
+            }
+            else if (annotName.equals(Queries.class.getName()))
+            {
+                Object value = getAnnotationValue(annot, "value");
+                if (value instanceof List)
+                {
+                    for (Object queryValue : (List<?>)value)
+                    {
+                        addNamedQuery(el, (AnnotationMirror)((AnnotationValue)queryValue).getValue(), annot, names, queries);
+                    }
+                }
+            }
+        }
+        return queries;
+    }
+
+    private void addNamedQuery(TypeElement el, AnnotationMirror annot, AnnotationMirror reportAnnot, Set<String> names, List<QClassModel.NamedQuery> queries)
+    {
+        Object name = getAnnotationValue(annot, "name");
+        Object value = getAnnotationValue(annot, "value");
+        Object language = getAnnotationValue(annot, "language");
+        if (name == null || value == null || value.toString().trim().isEmpty() ||
+            (language != null && !"JDOQL".equalsIgnoreCase(language.toString())))
+        {
+            // Only JDOQL queries can be validated against the model (and have typed methods)
+            return;
+        }
+
+        String queryName = name.toString();
+        String queryText = value.toString().trim();
+        if (!names.add(queryName))
+        {
+            reportError(el, reportAnnot, queryName, "is declared more than once");
+            return;
+        }
+
+        // Validate the query without the contents of string literals, which can contain anything
+        String maskedText = maskStringLiterals(queryText);
+        TypeElement candidateEl = getCandidate(el, maskedText);
+        boolean valid = validatePaths(el, reportAnnot, queryName, candidateEl, maskedText);
+        Map<String, TypeMirror> parameters = getParameters(el, reportAnnot, queryName, candidateEl, maskedText);
+        if (!valid || parameters == null)
+        {
+            return;
+        }
+
+        List<QClassModel.Parameter> queryParams = new ArrayList<>(parameters.size());
+        for (Map.Entry<String, TypeMirror> entry : parameters.entrySet())
+        {
+            queryParams.add(new QClassModel.Parameter(entry.getKey(), entry.getValue().toString()));
+        }
+        Matcher selectMatcher = SELECT.matcher(maskedText);
+        boolean select = selectMatcher.find();
+        boolean unique = select && selectMatcher.group(1) != null;
+        boolean result = select && !selectMatcher.group(2).trim().isEmpty();
+        queries.add(new QClassModel.NamedQuery(queryName, queryText, queryParams, select, unique, result));
+    }
+
+    /**
+     * Method to return the candidate class of a query, being that of its FROM clause if persistable, otherwise the class it is declared on.
+     * @param el The class element the query is declared on
+     * @param queryText The single-string JDOQL (with string literals masked)
+     * @return The candidate class
+     */
+    private TypeElement getCandidate(TypeElement el, String queryText)
+    {
+        Matcher candidateMatcher = CANDIDATE_CLASS.matcher(queryText);
+        if (candidateMatcher.find())
+        {
+            TypeElement fromEl = processingEnv.getElementUtils().getTypeElement(candidateMatcher.group(1));
+            if (fromEl != null && typeMetadata.isPersistable(fromEl))
+            {
+                return fromEl;
+            }
+        }
+        return el;
+    }
+
+    /**
+     * Method to validate the member paths of a query against the persistent members.
+     * @param el The class element the query is declared on
+     * @param annot The annotation, for reporting against
+     * @param queryName Name of the query
+     * @param candidateEl The candidate class of the query
+     * @param queryText The single-string JDOQL (with string literals masked)
+     * @return Whether the paths are valid
+     */
+    private boolean validatePaths(TypeElement el, AnnotationMirror annot, String queryName, TypeElement candidateEl, String queryText)
+    {
+        boolean valid = true;
+        Matcher matcher = THIS_PATH.matcher(queryText);
+        while (matcher.find())
+        {
+            String[] names = getPathNames(matcher.group(1));
+            int numberOfMembers = (matcher.group(2) != null ? names.length - 1 : names.length); // Last name is a method when followed by "("
+            TypeElement currentEl = candidateEl;
+            for (int i = 0; i < numberOfMembers && currentEl != null; i++)
+            {
+                Element member = getPersistentMember(currentEl, names[i]);
+                if (member == null)
+                {
+                    reportError(el, annot, queryName, "refers to \"" + names[i] + "\" which is not a persistent member of " + currentEl.getQualifiedName());
+                    valid = false;
+                    break;
+                }
+
+                // Continue navigating if a relation, otherwise anything more is a method call on the member
+                currentEl = fieldDepthPlanner.getRelatedType(member);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Method to return the parameters of a query with their types, validating them against the members they are compared with.
+     * @param el The class element the query is declared on
+     * @param annot The annotation, for reporting against
+     * @param queryName Name of the query
+     * @param candidateEl The candidate class of the query
+     * @param queryText The single-string JDOQL (with string literals masked)
+     * @return The types of the parameters keyed by name, in the order their values are passed, or null if not valid
+     */
+    private Map<String, TypeMirror> getParameters(TypeElement el, AnnotationMirror annot, String queryName, TypeElement candidateEl, String queryText)
+    {
+        boolean valid = true;
+        Map<String, TypeMirror> parameters = new LinkedHashMap<>();
+
+        // Explicit parameters, in the order declared
+        Matcher paramsMatcher = PARAMETERS.matcher(queryText);
+        boolean explicit = paramsMatcher.find();
+        if (explicit)
+        {
+            List<String> imports = new ArrayList<>();
+            Matcher importMatcher = IMPORT.matcher(queryText);
+            while (importMatcher.find())
+            {
+                imports.add(importMatcher.group(1));
+            }
+
+            for (String declaration : splitDeclarations(paramsMatcher.group(1)))
+            {
+                Matcher declMatcher = PARAMETER_DECLARATION.matcher(declaration);
+                if (!declMatcher.matches())
+                {
+                    reportError(el, annot, queryName, "has an invalid parameter declaration \"" + declaration.trim() + "\"");
+                    valid = false;
+                    continue;
+                }
+                String paramName = declMatcher.group(2);
+                TypeMirror paramType = resolveType(declMatcher.group(1), candidateEl, imports);
+                if (paramType == null)
+                {
+                    reportError(el, annot, queryName, "declares parameter \"" + paramName + "\" of type \"" + declMatcher.group(1).trim() + "\" which cannot be resolved");
+                    valid = false;
+                }
+                else if (parameters.put(paramName, paramType) != null)
+                {
+                    reportError(el, annot, queryName, "declares parameter \"" + paramName + "\" more than once");
+                    valid = false;
+                }
+            }
+        }
+
+        // Implicit parameters, in the order first used
+        Matcher implicitMatcher = IMPLICIT_PARAMETER.matcher(queryText);
+        while (implicitMatcher.find())
+        {
+            if (explicit)
+            {
+                reportError(el, annot, queryName, "uses implicit parameter \":" + implicitMatcher.group(1) + "\" as well as declaring parameters");
+                return null;
+            }
+            parameters.putIfAbsent(implicitMatcher.group(1), null);
+        }
+
+        for (String paramName : parameters.keySet())
+        {
+            if (SourceVersion.isKeyword(paramName))
+            {
+                reportError(el, annot, queryName, "has parameter \"" + paramName + "\" which is a Java keyword");
+                valid = false;
+            }
+        }
+
+        // Validate (or, for implicit parameters, take) the types of the parameters compared with members
+        Matcher matcher = PATH_COMPARISON.matcher(queryText);
+        while (matcher.find())
+        {
+            valid &= validateComparison(el, annot, queryName, candidateEl, getPathNames(matcher.group(1)), matcher.group(2), parameters);
+        }
+        matcher = REVERSED_COMPARISON.matcher(queryText);
+        while (matcher.find())
+        {
+            valid &= validateComparison(el, annot, queryName, candidateEl, getPathNames(matcher.group(2)), matcher.group(1), parameters);
+        }
+
+        for (Map.Entry<String, TypeMirror> entry : parameters.entrySet())
+        {
+            if (entry.getValue() == null)
+            {
+                // Implicit parameter not compared with a member
+                entry.setValue(processingEnv.getElementUtils().getTypeElement(Object.class.getName()).asType());
+            }
+        }
+        return valid ? parameters : null;
+    }
+
+    /**
+     * Method to validate the comparison of a member path with an identifier, when the identifier is a parameter.
+     * @param el The class element the query is declared on
+     * @param annot The annotation, for reporting against
+     * @param queryName Name of the query
+     * @param candidateEl The candidate class of the query
+     * @param names Names of the members of the path
+     * @param identifier The identifier the path is compared with (starting ":" if an implicit parameter)
+     * @param parameters The types of the parameters (null for an implicit parameter of unknown type), updated with implicit parameter types
+     * @return Whether the comparison is valid
+     */
+    private boolean validateComparison(TypeElement el, AnnotationMirror annot, String queryName, TypeElement candidateEl, String[] names,
+            String identifier, Map<String, TypeMirror> parameters)
+    {
+        boolean implicit = identifier.startsWith(":");
+        String paramName = (implicit ? identifier.substring(1) : identifier);
+        if (!parameters.containsKey(paramName))
+        {
+            // Literal, variable, etc
+            return true;
+        }
+
+        Element member = null;
+        TypeElement currentEl = candidateEl;
+        for (int i = 0; i < names.length; i++)
+        {
+            member = (currentEl != null ? getPersistentMember(currentEl, names[i]) : null);
+            if (member == null)
+            {
+                // Not a path of persistent members (already reported), or a field of a non-persistable type
+                return true;
+            }
+            currentEl = fieldDepthPlanner.getRelatedType(member);
+        }
+
+        TypeMirror memberType = AnnotationProcessorUtils.getDeclaredType(member);
+        TypeMirror paramType = parameters.get(paramName);
+        if (paramType == null)
+        {
+            parameters.put(paramName, memberType.getKind() == TypeKind.TYPEVAR ? processingEnv.getTypeUtils().erasure(memberType) : memberType);
+            return true;
+        }
+        if (!isComparable(memberType, paramType))
+        {
+            reportError(el, annot, queryName, "compares \"this." + String.join(".", names) + "\" of type " + memberType +
+                " with parameter \"" + paramName + "\" of type " + paramType);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method to return whether values of two types can be compared in JDOQL, namely if both are numeric (or character), if one is
+     * assignable to the other (after boxing), or if one is an enum and the other a String.
+     * @param type1 The first type
+     * @param type2 The second type
+     * @return Whether they are comparable
+     */
+    private boolean isComparable(TypeMirror type1, TypeMirror type2)
+    {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror boxed1 = types.erasure(box(type1));
+        TypeMirror boxed2 = types.erasure(box(type2));
+        if (isNumeric(boxed1) && isNumeric(boxed2))
+        {
+            return true;
+        }
+        if (types.isAssignable(boxed1, boxed2) || types.isAssignable(boxed2, boxed1))
+        {
+            return true;
+        }
+        return (isEnum(boxed1) && isString(boxed2)) || (isString(boxed1) && isEnum(boxed2));
+    }
+
+    private TypeMirror box(TypeMirror type)
+    {
+        return AnnotationProcessorUtils.typeIsPrimitive(type) ? processingEnv.getTypeUtils().boxedClass((PrimitiveType)type).asType() : type;
+    }
+
+    private boolean isNumeric(TypeMirror type)
+    {
+        Elements elements = processingEnv.getElementUtils();
+        return processingEnv.getTypeUtils().isSubtype(type, elements.getTypeElement(Number.class.getName()).asType()) ||
+            processingEnv.getTypeUtils().isSameType(type, elements.getTypeElement(Character.class.getName()).asType());
+    }
+
+    private boolean isString(TypeMirror type)
+    {
+        return processingEnv.getTypeUtils().isSameType(type, processingEnv.getElementUtils().getTypeElement(String.class.getName()).asType());
+    }
+
+    private boolean isEnum(TypeMirror type)
+    {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType)type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    /**
+     * Method to resolve the type of a declared parameter, as JDOQL does : a primitive, a fully-qualified class, or a class imported
+     * by the query, in java.lang, or in the package of the candidate class. A generic type has wildcards for its type arguments.
+     * @param typeName Name of the type as declared (e.g "String", "java.util.Collection&lt;Long&gt;", "long[]")
+     * @param candidateEl The candidate class of the query
+     * @param imports The imports of the query (e.g "java.util.Date", "mydomain.*")
+     * @return The type, or null if not resolvable
+     */
+    private TypeMirror resolveType(String typeName, TypeElement candidateEl, List<String> imports)
+    {
+        Types types = processingEnv.getTypeUtils();
+        String name = typeName.replaceAll("\\s", "");
+        int arrayDimensions = 0;
+        while (name.endsWith("[]"))
+        {
+            arrayDimensions++;
+            name = name.substring(0, name.length() - 2);
+        }
+        int genericsStart = name.indexOf('<');
+        if (genericsStart > 0)
+        {
+            name = name.substring(0, genericsStart);
+        }
+
+        TypeMirror type;
+        TypeKind primitiveKind = getPrimitiveKind(name);
+        if (primitiveKind != null)
+        {
+            type = types.getPrimitiveType(primitiveKind);
+        }
+        else
+        {
+            TypeElement typeEl = resolveTypeElement(name, candidateEl, imports);
+            if (typeEl == null)
+            {
+                return null;
+            }
+            TypeMirror[] typeArgs = new TypeMirror[typeEl.getTypeParameters().size()];
+            for (int i = 0; i < typeArgs.length; i++)
+            {
+                typeArgs[i] = types.getWildcardType(null, null);
+            }
+            type = types.getDeclaredType(typeEl, typeArgs);
+        }
+        for (int i = 0; i < arrayDimensions; i++)
+        {
+            type = types.getArrayType(type);
+        }
+        return type;
+    }
+
+    private TypeElement resolveTypeElement(String name, TypeElement candidateEl, List<String> imports)
+    {
+        Elements elements = processingEnv.getElementUtils();
+        if (name.indexOf('.') > 0)
+        {
+            return elements.getTypeElement(name);
+        }
+
+        for (String importName : imports)
+        {
+            TypeElement typeEl = null;
+            if (importName.endsWith(".*"))
+            {
+                typeEl = elements.getTypeElement(importName.substring(0, importName.length() - 1) + name);
+            }
+            else if (importName.endsWith("." + name))
+            {
+                typeEl = elements.getTypeElement(importName);
+            }
+            if (typeEl != null)
+            {
+                return typeEl;
+            }
+        }
+
+        TypeElement typeEl = elements.getTypeElement("java.lang." + name);
+        if (typeEl == null)
+        {
+            String packageName = elements.getPackageOf(candidateEl).getQualifiedName().toString();
+            typeEl = elements.getTypeElement(packageName.isEmpty() ? name : packageName + "." + name);
+        }
+        return typeEl;
+    }
+
+    private static TypeKind getPrimitiveKind(String name)
+    {
+        switch (name)
+        {
+            case "boolean":
+                return TypeKind.BOOLEAN;
+            case "byte":
+                return TypeKind.BYTE;
+            case "char":
+                return TypeKind.CHAR;
+            case "short":
+                return TypeKind.SHORT;
+            case "int":
+                return TypeKind.INT;
+            case "long":
+                return TypeKind.LONG;
+            case "float":
+                return TypeKind.FLOAT;
+            case "double":
+                return TypeKind.DOUBLE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Method to split the parameter declarations of a query at the commas that are not within type arguments.
+     * @param declarations The declarations (e.g "String name, java.util.Map&lt;String, Long&gt; counts")
+     * @return The declarations
+     */
+    private static List<String> splitDeclarations(String declarations)
+    {
+        List<String> split = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < declarations.length(); i++)
+        {
+            char c = declarations.charAt(i);
+            if (c == '<')
+            {
+                depth++;
+            }
+            else if (c == '>')
+            {
+                depth--;
+            }
+            else if (c == ',' && depth == 0)
+            {
+                split.add(declarations.substring(start, i));
+                start = i + 1;
+            }
+        }
+        split.add(declarations.substring(start));
+        return split;
+    }
+
+    /**
+     * Method to replace the contents of the string literals (in single or double quotes) of a query with spaces, so that
+     * they are not taken as paths or parameters.
+     * @param queryText The single-string JDOQL
+     * @return The JDOQL with the contents of string literals masked
+     */
+    static String maskStringLiterals(String queryText)
+    {
+        char[] chars = queryText.toCharArray();
+        char quote = 0;
+        for (int i = 0; i < chars.length; i++)
+        {
+            char c = chars[i];
+            if (quote == 0)
+            {
+                if (c == '"' || c == '\'')
+                {
+                    quote = c;
+                }
+            }
+            else if (c == quote)
+            {
+                quote = 0;
+            }
+            else
+            {
+                if (c == '\\' && i + 1 < chars.length)
+                {
+                    // Escaped character
+                    chars[i++] = ' ';
+                }
+                chars[i] = ' ';
+            }
+        }
+        return new String(chars);
+    }
+
+    private static String[] getPathNames(String path)
+    {
+        return path.replaceAll("\\s", "").substring(1).split("\\.");
+    }
+
+    private Element getPersistentMember(TypeElement el, String name)
+    {
+        TypeElement currentEl = el;
+        while (currentEl != null)
+        {
+            for (Element member : typeMetadata.getPersistentMembers(currentEl))
+            {
+                if (member.getKind() == ElementKind.FIELD && member.getSimpleName().contentEquals(name))
+                {
+                    return member;
+                }
+            }
+            currentEl = typeMetadata.getPersistentSupertype(currentEl);
+        }
+        return null;
+    }
+
+    private void reportError(TypeElement el, AnnotationMirror annot, String queryName, String message)
+    {
+        processingEnv.getMessager().printMessage(Kind.ERROR, "DataNucleus : named query \"" + queryName + "\" " + message, el, annot);
+    }
+
+    private static Object getAnnotationValue(AnnotationMirror annot, String name)
+    {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annot.getElementValues().entrySet())
+        {
+            if (entry.getKey().getSimpleName().contentEquals(name))
+            {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+}
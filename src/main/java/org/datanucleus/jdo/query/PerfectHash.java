@@ -0,0 +1,193 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Perfect hash of a set of strings (e.g field names) to their index, found at generation time so that generated code can look
+ * up the index of a string with two table reads and one equals() rather than a map lookup. This uses "hash and displace" :
+ * <pre>
+ * int h = key.hashCode();
+ * int displacement = displacements[(h * BUCKET_MULTIPLIER) &gt;&gt;&gt; bucketShift];
+ * int index = slots[((h ^ displacement) * SLOT_MULTIPLIER) &gt;&gt;&gt; slotShift] - 1;
+ * </pre>
+ * where a slot holds index+1 (0 when unused), and the key at that index has to be compared since any string hashes to some slot.
+ * Displacements and slots are less than 65536 so can be held in the chars of a String constant.
+ */
+public class PerfectHash
+{
+    public static final int BUCKET_MULTIPLIER = 0x9E3779B9;
+
+    public static final int SLOT_MULTIPLIER = 0x85EBCA6B;
+
+    private static final int MAX_DISPLACEMENT = 0xFFFF;
+
+    final int bucketShift;
+    final int slotShift;
+    final char[] displacements;
+    final char[] slots;
+
+    private PerfectHash(int bucketShift, int slotShift, char[] displacements, char[] slots)
+    {
+        this.bucketShift = bucketShift;
+        this.slotShift = slotShift;
+        this.displacements = displacements;
+        this.slots = slots;
+    }
+
+    /**
+     * Method to find a perfect hash for the provided keys.
+     * @param keys The keys, where the index of each in the list is what it is hashed to
+     * @return The perfect hash, or null if not possible (when keys have the same hashCode, or there are more than 65534)
+     */
+    public static PerfectHash create(List<String> keys)
+    {
+        int numberOfKeys = keys.size();
+        Set<Integer> hashCodes = new HashSet<>();
+        for (String key : keys)
+        {
+            if (!hashCodes.add(key.hashCode()))
+            {
+                // Cannot separate keys with the same hashCode
+                return null;
+            }
+        }
+        if (numberOfKeys >= MAX_DISPLACEMENT)
+        {
+            return null;
+        }
+
+        // Buckets of about 2 keys, and slots at most half used, in powers of 2 (and at least 2 so the shift is less than 32)
+        int bucketBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, numberOfKeys / 2)));
+        int slotBits = Math.max(1, 33 - Integer.numberOfLeadingZeros(Math.max(1, numberOfKeys)));
+        for (; slotBits <= 17; slotBits++)
+        {
+            PerfectHash hash = create(keys, 32 - bucketBits, 32 - slotBits);
+            if (hash != null)
+            {
+                return hash;
+            }
+        }
+        return null;
+    }
+
+    private static PerfectHash create(List<String> keys, int bucketShift, int slotShift)
+    {
+        // Assign the keys to buckets
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i < (1 << (32 - bucketShift)); i++)
+        {
+            buckets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keys.size(); i++)
+        {
+            buckets.get((keys.get(i).hashCode() * BUCKET_MULTIPLIER) >>> bucketShift).add(i);
+        }
+
+        // Place the buckets, largest first, finding a displacement for which all of its keys have unused slots
+        Integer[] bucketOrder = new Integer[buckets.size()];
+        for (int i = 0; i < bucketOrder.length; i++)
+        {
+            bucketOrder[i] = i;
+        }
+        Arrays.sort(bucketOrder, (b1, b2) -> buckets.get(b2).size() - buckets.get(b1).size());
+
+        char[] displacements = new char[buckets.size()];
+        char[] slots = new char[1 << (32 - slotShift)];
+        int[] bucketSlots = new int[keys.size()];
+        for (int bucketIndex : bucketOrder)
+        {
+            List<Integer> bucket = buckets.get(bucketIndex);
+            if (bucket.isEmpty())
+            {
+                break;
+            }
+
+            boolean placed = false;
+            for (int displacement = 0; displacement <= MAX_DISPLACEMENT && !placed; displacement++)
+            {
+                placed = true;
+                for (int i = 0; i < bucket.size(); i++)
+                {
+                    int slot = ((keys.get(bucket.get(i)).hashCode() ^ displacement) * SLOT_MULTIPLIER) >>> slotShift;
+                    bucketSlots[i] = slot;
+                    boolean clash = slots[slot] != 0;
+                    for (int j = 0; j < i && !clash; j++)
+                    {
+                        clash = bucketSlots[j] == slot;
+                    }
+                    if (clash)
+                    {
+                        placed = false;
+                        break;
+                    }
+                }
+                if (placed)
+                {
+                    displacements[bucketIndex] = (char)displacement;
+                    for (int i = 0; i < bucket.size(); i++)
+                    {
+                        slots[bucketSlots[i]] = (char)(bucket.get(i) + 1);
+                    }
+                }
+            }
+            if (!placed)
+            {
+                return null;
+            }
+        }
+        return new PerfectHash(bucketShift, slotShift, displacements, slots);
+    }
+
+    public int getBucketShift()
+    {
+        return bucketShift;
+    }
+
+    public int getSlotShift()
+    {
+        return slotShift;
+    }
+
+    public char[] getDisplacements()
+    {
+        return displacements;
+    }
+
+    public char[] getSlots()
+    {
+        return slots;
+    }
+
+    /**
+     * Accessor for the index that the specified key hashes to, which is only its index if it is one of the keys.
+     * @param key The key
+     * @return The index, or -1 if it hashes to an unused slot
+     */
+    public int getIndex(String key)
+    {
+        int h = key.hashCode();
+        int displacement = displacements[(h * BUCKET_MULTIPLIER) >>> bucketShift];
+        return slots[((h ^ displacement) * SLOT_MULTIPLIER) >>> slotShift] - 1;
+    }
+}
@@ -0,0 +1,195 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index of the persistable classes of a module, written by the processor as the resource RESOURCE_NAME so that the persistable
+ * classes (and their Q classes) can be registered at startup without scanning the classpath.
+ * The format is UTF-8 text with a line per class, of tab-separated fields
+ * <pre>
+ * {className}\t{persistentSupertypeName or "-"}\t{qclassName}\t{fingerprint}
+ * </pre>
+ * with names being binary names, and the fingerprint a hex hash of the persistent members of the class (so changes can be detected).
+ * Lines starting with "#" are comments. Each module has its own index, so all are read (see #load(ClassLoader)) and merged, the
+ * first entry for a class on the classpath taking precedence.
+ */
+public class PersistableIndex
+{
+    public static final String RESOURCE_NAME = "META-INF/datanucleus/persistables.idx";
+
+    private static final String HEADER = "# DataNucleus persistables index v1 : class, persistent supertype, Q class, fingerprint\n";
+
+    /**
+     * Entry in the index for a persistable class.
+     */
+    public static class Entry
+    {
+        final String className;
+        final String supertypeName;
+        final String qclassName;
+        final String fingerprint;
+
+        public Entry(String className, String supertypeName, String qclassName, String fingerprint)
+        {
+            this.className = className;
+            this.supertypeName = supertypeName;
+            this.qclassName = qclassName;
+            this.fingerprint = fingerprint;
+        }
+
+        public String getClassName()
+        {
+            return className;
+        }
+
+        /**
+         * Accessor for the name of the persistent supertype.
+         * @return The name, or null if none
+         */
+        public String getSupertypeName()
+        {
+            return supertypeName;
+        }
+
+        public String getQClassName()
+        {
+            return qclassName;
+        }
+
+        public String getFingerprint()
+        {
+            return fingerprint;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Method to add an entry, replacing any for the same class.
+     * @param entry The entry
+     */
+    public void add(Entry entry)
+    {
+        entries.put(entry.className, entry);
+    }
+
+    /**
+     * Method to add the entries of an index, except for classes that already have an entry.
+     * @param content Content of the index
+     */
+    public void merge(CharSequence content)
+    {
+        int start = 0;
+        int length = content.length();
+        while (start < length)
+        {
+            int end = start;
+            while (end < length && content.charAt(end) != '\n')
+            {
+                end++;
+            }
+            if (end > start && content.charAt(start) != '#')
+            {
+                String[] fields = content.subSequence(start, end).toString().trim().split("\t");
+                if (fields.length >= 4 && !entries.containsKey(fields[0]))
+                {
+                    entries.put(fields[0], new Entry(fields[0], "-".equals(fields[1]) ? null : fields[1], fields[2], fields[3]));
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    public Collection<Entry> getEntries()
+    {
+        return entries.values();
+    }
+
+    public Entry getEntry(String className)
+    {
+        return entries.get(className);
+    }
+
+    public boolean isEmpty()
+    {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Method to load the indexes of all modules visible to the provided ClassLoader, merged.
+     * @param loader The ClassLoader
+     * @return The index
+     * @throws IOException Thrown if an index cannot be read
+     */
+    public static PersistableIndex load(ClassLoader loader)
+    throws IOException
+    {
+        PersistableIndex index = new PersistableIndex();
+        Enumeration<URL> urls = loader.getResources(RESOURCE_NAME);
+        while (urls.hasMoreElements())
+        {
+            try (InputStream is = urls.nextElement().openStream())
+            {
+                index.merge(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Method to return the content of the index.
+     * @return The content
+     */
+    public String toContent()
+    {
+        StringBuilder sb = new StringBuilder(HEADER.length() + entries.size() * 100);
+        sb.append(HEADER);
+        for (Entry entry : entries.values())
+        {
+            sb.append(entry.className).append('\t').append(entry.supertypeName != null ? entry.supertypeName : "-").append('\t');
+            sb.append(entry.qclassName).append('\t').append(entry.fingerprint).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Convenience method to return a fingerprint of the provided string, as 16 hex digits of its 64-bit FNV-1a hash.
+     * @param str The string
+     * @return The fingerprint
+     */
+    public static String getFingerprint(String str)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); i++)
+        {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -0,0 +1,233 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.datanucleus.jdo.query.QClassModel.Member;
+
+/**
+ * Statistics for the Q class generation of a compilation, recording the time spent in each phase per class, the number of
+ * members per expression type and the size of the generated sources.
+ * The statistics are recorded by the compiler thread, except for the render time of a class which may be recorded by a render
+ * thread but is only read after that render has completed.
+ */
+public class ProcessorStats
+{
+    /**
+     * Statistics for the generation of a single Q class.
+     */
+    public static class ClassStats
+    {
+        final String className;
+        int numberOfMembers;
+        long resolutionNanos;
+        long renderNanos;
+        long writeNanos;
+        long generatedBytes;
+
+        ClassStats(String className)
+        {
+            this.className = className;
+        }
+
+        public void setResolutionTime(long nanos)
+        {
+            this.resolutionNanos = nanos;
+        }
+
+        public void setRenderTime(long nanos)
+        {
+            this.renderNanos = nanos;
+        }
+
+        public void setWriteTime(long nanos)
+        {
+            this.writeNanos = nanos;
+        }
+
+        public void setGeneratedBytes(long bytes)
+        {
+            this.generatedBytes = bytes;
+        }
+    }
+
+    private final List<ClassStats> classStats = new ArrayList<>();
+
+    /** Number of members per expression type (e.g "StringExpression"), for all generated Q classes. */
+    private final Map<String, Integer> membersByExpressionType = new TreeMap<>();
+
+    private int numberOfRounds;
+
+    private long discoveryNanos;
+
+    /**
+     * Method to record the discovery of the persistable classes of a round.
+     * @param nanos Time taken (nanoseconds)
+     */
+    public void addDiscoveryTime(long nanos)
+    {
+        numberOfRounds++;
+        discoveryNanos += nanos;
+    }
+
+    /**
+     * Method to register the generation of a Q class, counting its members (including those of any inner classes).
+     * @param model Model of the Q class
+     * @return The statistics for this class, for recording the time of each phase
+     */
+    public ClassStats addClass(QClassModel model)
+    {
+        ClassStats stats = new ClassStats(model.getClassNameFull());
+        stats.numberOfMembers = countMembers(model);
+        classStats.add(stats);
+        return stats;
+    }
+
+    private int countMembers(QClassModel model)
+    {
+        int number = 0;
+        for (Member member : model.getMembers())
+        {
+            membersByExpressionType.merge(getExpressionTypeName(member), 1, Integer::sum);
+            number++;
+        }
+        for (QClassModel innerModel : model.getInnerClasses())
+        {
+            number += countMembers(innerModel);
+        }
+        return number;
+    }
+
+    /**
+     * Convenience method to return the expression type name to group a member under, omitting generics and package.
+     * @param member The member
+     * @return The expression type name (e.g "NumericExpression", "PersistableExpression")
+     */
+    private static String getExpressionTypeName(Member member)
+    {
+        if (member.isPersistable())
+        {
+            return "PersistableExpression";
+        }
+        String name = member.getInterfaceName();
+        if (name.indexOf('<') > 0)
+        {
+            name = name.substring(0, name.indexOf('<'));
+        }
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Accessor for a one-line summary of the statistics, suitable for the build output.
+     * @return The summary
+     */
+    public String getSummary()
+    {
+        long resolutionNanos = 0;
+        long renderNanos = 0;
+        long writeNanos = 0;
+        long generatedBytes = 0;
+        int numberOfMembers = 0;
+        for (ClassStats stats : classStats)
+        {
+            resolutionNanos += stats.resolutionNanos;
+            renderNanos += stats.renderNanos;
+            writeNanos += stats.writeNanos;
+            generatedBytes += stats.generatedBytes;
+            numberOfMembers += stats.numberOfMembers;
+        }
+        return "DataNucleus : JDOQLTypedQuery Q class generation : " + classStats.size() + " classes, " + numberOfMembers + " members, " +
+            generatedBytes + " bytes in " + numberOfRounds + " round(s) : discovery=" + toMillis(discoveryNanos) + "ms resolution=" + toMillis(resolutionNanos) +
+            "ms render=" + toMillis(renderNanos) + "ms write=" + toMillis(writeNanos) + "ms";
+    }
+
+    /**
+     * Accessor for the statistics in JSON form.
+     * @return The JSON
+     */
+    public String toJson()
+    {
+        StringBuilder sb = new StringBuilder(256 + classStats.size() * 160);
+        sb.append("{\n");
+        sb.append("  \"rounds\": ").append(numberOfRounds).append(",\n");
+        sb.append("  \"discoveryNanos\": ").append(discoveryNanos).append(",\n");
+        sb.append("  \"membersByExpressionType\": {");
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : membersByExpressionType.entrySet())
+        {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    ").append(toJsonString(entry.getKey())).append(": ").append(entry.getValue());
+            first = false;
+        }
+        sb.append(first ? "},\n" : "\n  },\n");
+        sb.append("  \"classes\": [");
+        first = true;
+        for (ClassStats stats : classStats)
+        {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    {\"class\": ").append(toJsonString(stats.className));
+            sb.append(", \"members\": ").append(stats.numberOfMembers);
+            sb.append(", \"resolutionNanos\": ").append(stats.resolutionNanos);
+            sb.append(", \"renderNanos\": ").append(stats.renderNanos);
+            sb.append(", \"writeNanos\": ").append(stats.writeNanos);
+            sb.append(", \"generatedBytes\": ").append(stats.generatedBytes).append("}");
+            first = false;
+        }
+        sb.append(first ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static long toMillis(long nanos)
+    {
+        return nanos / 1000000;
+    }
+
+    /**
+     * Convenience method to return the provided string as a JSON string, quoted and escaped.
+     * @param str The string
+     * @return The JSON string
+     */
+    static String toJsonString(String str)
+    {
+        StringBuilder sb = new StringBuilder(str.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20)
+            {
+                sb.append(String.format("\\u%04x", (int)c));
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
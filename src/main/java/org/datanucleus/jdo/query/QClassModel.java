@@ -0,0 +1,363 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable representation of a Q class to be generated for a persistable class.
+ * This is built from the javac model in a single pass, with all types and names resolved, so holds no Elements and
+ * can be rendered (or compared, cached etc) without the processing environment.
+ */
+public class QClassModel
+{
+    /**
+     * Representation of a persistable member of the class, for which the Q class has a member expression.
+     */
+    public static class Member
+    {
+        final String name;
+        final String interfaceName;
+        final String implName;
+        final boolean persistable;
+        final int depthCap;
+        final boolean alwaysCreated;
+
+        /**
+         * Constructor for a member.
+         * @param name Name of the member
+         * @param interfaceName Query expression interface name (e.g "StringExpression", "mydomain.QXxx")
+         * @param implName Query expression implementation name (e.g "StringExpressionImpl", "mydomain.QXxx")
+         * @param persistable Whether the member type is persistable (so the expression is a Q class)
+         */
+        public Member(String name, String interfaceName, String implName, boolean persistable)
+        {
+            this(name, interfaceName, implName, persistable, FieldDepthPlanner.NO_CAP, false);
+        }
+
+        /**
+         * Constructor for a member.
+         * @param name Name of the member
+         * @param interfaceName Query expression interface name (e.g "StringExpression", "mydomain.QXxx")
+         * @param implName Query expression implementation name (e.g "StringExpressionImpl", "mydomain.QXxx")
+         * @param persistable Whether the member type is persistable (so the expression is a Q class)
+         * @param depthCap Cap on the depth of the related Q class (or FieldDepthPlanner.NO_CAP), when persistable
+         * @param alwaysCreated Whether the related Q class is created regardless of depth, when persistable
+         */
+        public Member(String name, String interfaceName, String implName, boolean persistable, int depthCap, boolean alwaysCreated)
+        {
+            this.name = name;
+            this.interfaceName = interfaceName;
+            this.implName = implName;
+            this.persistable = persistable;
+            this.depthCap = depthCap;
+            this.alwaysCreated = alwaysCreated;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getInterfaceName()
+        {
+            return interfaceName;
+        }
+
+        public String getImplName()
+        {
+            return implName;
+        }
+
+        public boolean isPersistable()
+        {
+            return persistable;
+        }
+
+        public int getDepthCap()
+        {
+            return depthCap;
+        }
+
+        public boolean isAlwaysCreated()
+        {
+            return alwaysCreated;
+        }
+    }
+
+    /**
+     * Representation of a (JDOQL) named query declared on the class.
+     */
+    public static class NamedQuery
+    {
+        final String name;
+        final String queryText;
+        final List<Parameter> parameters;
+        final boolean select;
+        final boolean unique;
+        final boolean result;
+
+        /**
+         * Constructor for a named query.
+         * @param name Name of the query
+         * @param queryText Single-string form of the query
+         * @param parameters The parameters, in the order their values are passed when executing the query
+         * @param select Whether this is a SELECT query, so can be executed for its results
+         * @param unique Whether the query returns a unique result ("SELECT UNIQUE")
+         * @param result Whether the query has a result clause, so returns values other than the candidates
+         */
+        public NamedQuery(String name, String queryText, List<Parameter> parameters, boolean select, boolean unique, boolean result)
+        {
+            this.name = name;
+            this.queryText = queryText;
+            this.parameters = Collections.unmodifiableList(parameters);
+            this.select = select;
+            this.unique = unique;
+            this.result = result;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getQueryText()
+        {
+            return queryText;
+        }
+
+        public List<Parameter> getParameters()
+        {
+            return parameters;
+        }
+
+        public boolean isSelect()
+        {
+            return select;
+        }
+
+        public boolean isUnique()
+        {
+            return unique;
+        }
+
+        public boolean isResult()
+        {
+            return result;
+        }
+    }
+
+    /**
+     * Representation of a parameter of a named query.
+     */
+    public static class Parameter
+    {
+        final String name;
+        final String typeName;
+
+        /**
+         * Constructor for a parameter.
+         * @param name Name of the parameter
+         * @param typeName Name of the type of the parameter, as used in the source of the Q class (e.g "int", "java.util.Collection&lt;?&gt;")
+         */
+        public Parameter(String name, String typeName)
+        {
+            this.name = name;
+            this.typeName = typeName;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getTypeName()
+        {
+            return typeName;
+        }
+    }
+
+    /**
+     * Representation of how generated code (in the package of the Q class) can read and write a managed field of the class.
+     */
+    public static class FieldAccess
+    {
+        final String name;
+        final String typeName;
+        final boolean fieldAccessible;
+        final String getterName;
+        final String setterName;
+
+        /**
+         * Constructor for the access to a field.
+         * @param name Name of the field
+         * @param typeName Name of the (erased) type of the field (e.g "int", "java.lang.String", "java.util.List")
+         * @param fieldAccessible Whether the field itself is accessible
+         * @param getterName Name of the accessible JavaBean getter for the field (or null if none)
+         * @param setterName Name of the accessible JavaBean setter for the field (or null if none)
+         */
+        public FieldAccess(String name, String typeName, boolean fieldAccessible, String getterName, String setterName)
+        {
+            this.name = name;
+            this.typeName = typeName;
+            this.fieldAccessible = fieldAccessible;
+            this.getterName = getterName;
+            this.setterName = setterName;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getTypeName()
+        {
+            return typeName;
+        }
+
+        public boolean isFieldAccessible()
+        {
+            return fieldAccessible;
+        }
+
+        public String getGetterName()
+        {
+            return getterName;
+        }
+
+        public String getSetterName()
+        {
+            return setterName;
+        }
+    }
+
+    final String packageName;
+    final String classNameFull;
+    final String classNameSimple;
+    final String qclassNameFull;
+    final String qclassNameSimple;
+    final String superQClassName;
+    final int fieldDepth;
+    final List<Member> members;
+    final List<String> memberPaths;
+    final List<NamedQuery> namedQueries;
+    final List<String> fieldNames;
+    final List<FieldAccess> fieldAccesses;
+    final List<QClassModel> innerClasses;
+
+    /**
+     * Constructor for a Q class.
+     * @param packageName Package of the class
+     * @param classNameFull Binary name of the persistable class (e.g "mydomain.A", "mydomain.A$B")
+     * @param classNameSimple Name of the persistable class as used in the Q class (e.g "A", "B")
+     * @param qclassNameFull Binary name of the Q class (e.g "mydomain.QA", "mydomain.QA$QB")
+     * @param qclassNameSimple Simple name of the Q class (e.g "QA", "QB")
+     * @param superQClassName Name of the Q class of the persistent supertype (or null if none)
+     * @param fieldDepth Depth of the related Q classes created for candidates, parameters and variables of this class
+     * @param members The persistable members
+     * @param memberPaths JDOQL paths of the members (and of members of related classes) from the default candidate, for constants
+     * @param namedQueries JDOQL named queries declared on the class
+     * @param fieldNames Names of the managed fields (including those of persistent supertypes) in field number order, or null if not needed
+     * @param fieldAccesses Access to the managed fields in field number order (as fieldNames), or null if not generating accessors
+     * @param innerClasses Q classes of any persistable static inner classes, to be inlined in this Q class
+     */
+    public QClassModel(String packageName, String classNameFull, String classNameSimple, String qclassNameFull, String qclassNameSimple, String superQClassName,
+            int fieldDepth, List<Member> members, List<String> memberPaths,
+            List<NamedQuery> namedQueries, List<String> fieldNames, List<FieldAccess> fieldAccesses, List<QClassModel> innerClasses)
+    {
+        this.packageName = packageName;
+        this.classNameFull = classNameFull;
+        this.classNameSimple = classNameSimple;
+        this.qclassNameFull = qclassNameFull;
+        this.qclassNameSimple = qclassNameSimple;
+        this.superQClassName = superQClassName;
+        this.fieldDepth = fieldDepth;
+        this.members = Collections.unmodifiableList(members);
+        this.memberPaths = Collections.unmodifiableList(memberPaths);
+        this.namedQueries = Collections.unmodifiableList(namedQueries);
+        this.fieldNames = (fieldNames != null ? Collections.unmodifiableList(fieldNames) : null);
+        this.fieldAccesses = (fieldAccesses != null ? Collections.unmodifiableList(fieldAccesses) : null);
+        this.innerClasses = Collections.unmodifiableList(innerClasses);
+    }
+
+    public String getPackageName()
+    {
+        return packageName;
+    }
+
+    public String getClassNameFull()
+    {
+        return classNameFull;
+    }
+
+    public String getClassNameSimple()
+    {
+        return classNameSimple;
+    }
+
+    public String getQClassNameFull()
+    {
+        return qclassNameFull;
+    }
+
+    public String getQClassNameSimple()
+    {
+        return qclassNameSimple;
+    }
+
+    public String getSuperQClassName()
+    {
+        return superQClassName;
+    }
+
+    public int getFieldDepth()
+    {
+        return fieldDepth;
+    }
+
+    public List<Member> getMembers()
+    {
+        return members;
+    }
+
+    public List<String> getMemberPaths()
+    {
+        return memberPaths;
+    }
+
+    public List<NamedQuery> getNamedQueries()
+    {
+        return namedQueries;
+    }
+
+    public List<String> getFieldNames()
+    {
+        return fieldNames;
+    }
+
+    public List<FieldAccess> getFieldAccesses()
+    {
+        return fieldAccesses;
+    }
+
+    public List<QClassModel> getInnerClasses()
+    {
+        return innerClasses;
+    }
+}
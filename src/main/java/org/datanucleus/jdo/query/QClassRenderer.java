@@ -0,0 +1,1796 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.jdo.query.PersistableExpression;
+
+import org.datanucleus.jdo.query.QClassModel.Member;
+
+/**
+ * Renderer for the source of a Q class from its (immutable) model.
+ * This has no dependency on the javac model and holds no state other than its configuration, so can be used
+ * by multiple threads concurrently.
+ */
+public class QClassRenderer
+{
+    private final static String CODE_INDENT = "    ";
+
+    /** Estimated bytecode size of member initialisation above which it is moved from the constructors into init methods. */
+    private final static int CONSTRUCTOR_BYTECODE_LIMIT = 7000;
+
+    /** Estimated bytecode size of member initialisation for each init method. */
+    private final static int INIT_METHOD_BYTECODE_LIMIT = 6000;
+
+    /** Estimated bytecode size of the cases of each FieldAccessor method, above which its switch is split into range methods. */
+    private final static int FIELD_ACCESSOR_BYTECODE_LIMIT = 6000;
+
+    /** Primitive types, with the suffix of their FieldAccessor methods and their wrapper types. */
+    private final static String[] PRIMITIVE_TYPES = {"boolean", "byte", "char", "short", "int", "long", "float", "double"};
+    private final static String[] PRIMITIVE_METHOD_SUFFIXES = {"Boolean", "Byte", "Char", "Short", "Int", "Long", "Float", "Double"};
+    private final static String[] PRIMITIVE_WRAPPER_TYPES = {"java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short",
+        "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double"};
+
+    /** Name of the generator, for the @Generated annotation. */
+    protected final String generatorName;
+
+    protected final int queryMode;
+
+    /** Max number of candidates (and of parameters, and of variables) cached per Q class, or 0 to not cache them. */
+    protected final int expressionCacheSize;
+
+    /** Whether to add an Evaluator (of filters) to Q classes having a FieldAccessor. */
+    protected final boolean evaluators;
+
+    /** Whether to add the (deprecated) static field "jdoCandidate", which creates the candidate when the Q class is initialised. */
+    protected final boolean candidateField;
+
+    /**
+     * Constructor for a renderer.
+     * The depth of related Q classes is taken from each model, since it can be planned per class and per relation.
+     * @param generatorName Name of the generator, for the @Generated annotation
+     * @param queryMode The query mode
+     * @param expressionCacheSize Max number of candidates (and of parameters, and of variables) cached per Q class, or 0 to not cache them
+     * @param evaluators Whether to add an Evaluator (of filters) to Q classes having a FieldAccessor
+     * @param candidateField Whether to add the (deprecated) static field "jdoCandidate"
+     */
+    public QClassRenderer(String generatorName, int queryMode, int expressionCacheSize, boolean evaluators, boolean candidateField)
+    {
+        this.generatorName = generatorName;
+        this.queryMode = queryMode;
+        this.expressionCacheSize = expressionCacheSize;
+        this.evaluators = evaluators;
+        this.candidateField = candidateField;
+    }
+
+    /**
+     * Method to render the source of the Q class for the provided model.
+     * The source is built in a buffer presized from the model, so can be written with a single write.
+     * @param model Model of the Q class
+     * @return The source
+     */
+    public String render(QClassModel model)
+    {
+        StringBuilder sb = new StringBuilder(estimateSourceLength(model));
+        addClass(sb, model);
+        return sb.toString();
+    }
+
+    /**
+     * Method to estimate the length of the source of the Q class for the provided model, to presize the buffer.
+     * @param model Model of the Q class
+     * @return The estimated length (chars)
+     */
+    protected int estimateSourceLength(QClassModel model)
+    {
+        // Static accessors and constructors, then the declaration and initialisation(s) (or accessor) of each member
+        int length = (expressionCacheSize > 0 ? 2000 : 1200) + model.getMembers().size() * (queryMode == JDOQueryProcessor.MODE_FIELD ? 200 : 340);
+        length += model.getMemberPaths().size() * 80 + model.getNamedQueries().size() * 700;
+        if (model.getFieldNames() != null)
+        {
+            length += 800 + model.getFieldNames().size() * 40;
+        }
+        if (model.getFieldAccesses() != null)
+        {
+            length += 1200 + model.getFieldAccesses().size() * 260 + (evaluators ? 12000 : 0);
+        }
+        for (QClassModel innerModel : model.getInnerClasses())
+        {
+            length += estimateSourceLength(innerModel);
+        }
+        return length;
+    }
+
+    /**
+     * Method to add the source of the Q class for the provided model.
+     * @param model Model of the Q class
+     * @param sb The buffer to append to
+     */
+    protected void addClass(StringBuilder sb, QClassModel model)
+    {
+        // Package declaration and imports
+        sb.append("package ").append(model.getPackageName()).append(";\n");
+        sb.append("\n");
+        sb.append("import javax.annotation.processing.Generated;\n");
+        sb.append("import javax.jdo.query.*;\n");
+        sb.append("import org.datanucleus.api.jdo.query.*;\n");
+        for (QClassModel innerModel : model.getInnerClasses())
+        {
+            sb.append("import ").append(model.getClassNameFull()).append(".").append(innerModel.getClassNameSimple()).append(";\n");
+        }
+        sb.append("\n");
+
+        // Class declaration
+        sb.append("@Generated(value=\"").append(generatorName).append("\")\n");
+        sb.append("public class ").append(model.getQClassNameSimple());
+        addClassBody(sb, "", model);
+
+        for (QClassModel innerModel : model.getInnerClasses())
+        {
+            // Static inner class that is persistable, so needing own Qclass inlined here
+            sb.append("\n");
+            sb.append(CODE_INDENT).append("public static class ").append(innerModel.getQClassNameSimple());
+            addClassBody(sb, CODE_INDENT, innerModel);
+        }
+
+        sb.append("}\n");
+    }
+
+    /**
+     * Method to add the code for the supertypes and body of a Q class, omitting the closing brace for a (top-level) class.
+     * @param sb The buffer to append to
+     * @param classIndent Indent of the class declaration
+     * @param model Model of the Q class
+     */
+    protected void addClassBody(StringBuilder sb, String classIndent, QClassModel model)
+    {
+        String qclassNameSimple = model.getQClassNameSimple();
+        String classNameSimple = model.getClassNameSimple();
+        String indent = classIndent + CODE_INDENT;
+
+        if (model.getSuperQClassName() != null)
+        {
+            // "public class QASub extends QA"
+            sb.append(" extends ").append(model.getSuperQClassName());
+        }
+        else
+        {
+            // "public class QA extends PersistableExpressionImpl<A> implements PersistableExpression<A>"
+            sb.append(" extends ").append("PersistableExpressionImpl").append("<").append(classNameSimple).append(">");
+            sb.append(" implements ").append(PersistableExpression.class.getSimpleName()).append("<").append(classNameSimple).append(">");
+        }
+        sb.append("\n");
+        sb.append(classIndent).append("{\n");
+
+        // Add static accessor for the candidate of this type
+        addStaticMethodAccessors(sb, indent, model);
+        sb.append("\n");
+
+        if (!model.getNamedQueries().isEmpty())
+        {
+            // Add constants and methods for the named queries
+            addNamedQueries(sb, indent, model);
+        }
+
+        if (model.getFieldNames() != null)
+        {
+            // Add the field numbers of the managed fields
+            addFieldNumbers(sb, indent, model);
+            sb.append("\n");
+        }
+
+        if (model.getFieldAccesses() != null)
+        {
+            // Add the accessor for the managed fields
+            addFieldAccessor(sb, indent, model);
+            sb.append("\n");
+            if (evaluators)
+            {
+                // Add the evaluator for filters
+                addEvaluator(sb, indent, model);
+                sb.append("\n");
+            }
+        }
+
+        if (!model.getMemberPaths().isEmpty())
+        {
+            // Add constants for the JDOQL paths of the members
+            addPathConstants(sb, indent, model);
+            sb.append("\n");
+        }
+
+        // Add fields for persistable members
+        List<List<Member>> initChunks = (queryMode == JDOQueryProcessor.MODE_FIELD ? getMemberInitChunks(model) : null);
+        if (queryMode == JDOQueryProcessor.MODE_FIELD)
+        {
+            // Fields are final, except when set by init methods (see getMemberInitChunks)
+            for (Member member : model.getMembers())
+            {
+                sb.append(indent).append(initChunks != null ? "public " : "public final ").append(member.getInterfaceName());
+                sb.append(" ").append(member.getName()).append(";\n");
+            }
+        }
+        else if (queryMode != JDOQueryProcessor.MODE_FLYWEIGHT && !model.getMembers().isEmpty())
+        {
+            // Members are created on first access, and held in an array accessed with acquire/release semantics
+            addLazyMemberArray(sb, indent, model);
+        }
+
+        if (candidateField)
+        {
+            // Add the static field for the candidate after all other static fields, since it creates an instance of this class
+            sb.append("\n");
+            addCandidateField(sb, indent, model);
+        }
+
+        // ========== Constructor(PersistableExpression parent, String name, int depth) ==========
+        sb.append("\n");
+        addConstructorWithPersistableExpression(sb, indent, model);
+
+        if (queryMode == JDOQueryProcessor.MODE_PROPERTY || queryMode == JDOQueryProcessor.MODE_FLYWEIGHT)
+        {
+            // ========== Constructor(PersistableExpression parent, String name) ==========
+            sb.append("\n");
+            addConstructorWithParent(sb, indent, qclassNameSimple);
+        }
+
+        // ========== Constructor(Class type, String name, ExpressionType exprType) ==========
+        sb.append("\n");
+        addConstructorWithType(sb, indent, model);
+
+        if (initChunks != null)
+        {
+            addMemberInitMethods(sb, indent, initChunks);
+        }
+
+        if (queryMode == JDOQueryProcessor.MODE_FLYWEIGHT)
+        {
+            // Accessors creating the member on each call
+            for (Member member : model.getMembers())
+            {
+                sb.append("\n");
+                addFlyweightAccessorMethod(sb, indent, member);
+            }
+        }
+        else if (queryMode != JDOQueryProcessor.MODE_FIELD)
+        {
+            // Property accessors
+            for (int i = 0; i < model.getMembers().size(); i++)
+            {
+                sb.append("\n");
+                addPropertyAccessorMethod(sb, indent, model.getMembers().get(i), i);
+            }
+        }
+
+        if (classIndent.length() > 0)
+        {
+            sb.append(classIndent).append("}\n");
+        }
+    }
+
+    /**
+     * Method to add the code for static method accessors needed by this QClass.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass that this is constructing
+     */
+    protected void addStaticMethodAccessors(StringBuilder sb, String indent, QClassModel model)
+    {
+        String qclassNameSimple = model.getQClassNameSimple();
+        String classNameSimple = model.getClassNameSimple();
+
+        // Add holder for the candidate of this type, so it is only created when first used rather than when this class is initialised
+        // (which would create, and initialise, the related Q classes too), unless the deprecated field "jdoCandidate" is added
+        sb.append(indent).append("private static final class CandidateHolder\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("static final ").append(qclassNameSimple).append(" INSTANCE = new ").append(qclassNameSimple)
+            .append("(null, \"this\", ").append(model.getFieldDepth()).append(");\n");
+        sb.append(indent).append("}\n");
+        sb.append("\n");
+
+        if (expressionCacheSize > 0)
+        {
+            // Add caches of the candidates/parameters/variables of this type keyed by name, since they are not modified once created
+            String mapType = getCacheType(qclassNameSimple);
+            sb.append(indent).append("private static final ").append(mapType).append(" jdoCandidateCache = new java.util.concurrent.ConcurrentHashMap<>();\n");
+            sb.append(indent).append("private static final ").append(mapType).append(" jdoParameterCache = new java.util.concurrent.ConcurrentHashMap<>();\n");
+            sb.append(indent).append("private static final ").append(mapType).append(" jdoVariableCache = new java.util.concurrent.ConcurrentHashMap<>();\n");
+            sb.append("\n");
+        }
+
+        // Add static method to generate candidate of this type with a particular name
+        addFactoryMethod(sb, indent, qclassNameSimple, "candidate", "jdoCandidateCache", "(null, name, " + model.getFieldDepth() + ")");
+        sb.append("\n");
+
+        // Add static method to generate candidate of this type for default name ("this")
+        sb.append(indent).append("public static ").append(qclassNameSimple).append(" candidate()\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("return CandidateHolder.INSTANCE;\n");
+        sb.append(indent).append("}\n");
+        sb.append("\n");
+
+        // Add static method to generate parameter of this type
+        addFactoryMethod(sb, indent, qclassNameSimple, "parameter", "jdoParameterCache", "(" + classNameSimple + ".class, name, ExpressionType.PARAMETER)");
+        sb.append("\n");
+
+        // Add static method to generate variable of this type
+        addFactoryMethod(sb, indent, qclassNameSimple, "variable", "jdoVariableCache", "(" + classNameSimple + ".class, name, ExpressionType.VARIABLE)");
+
+        if (expressionCacheSize > 0)
+        {
+            sb.append("\n");
+            addCacheMethods(sb, indent, qclassNameSimple);
+        }
+    }
+
+    /**
+     * Convenience method to return the type of a cache of expressions of this type keyed by name (see #addCacheMethods).
+     * @param qclassNameSimple Simple name of the QClass
+     * @return The type
+     */
+    private static String getCacheType(String qclassNameSimple)
+    {
+        return "java.util.concurrent.ConcurrentHashMap<String, java.util.AbstractMap.SimpleEntry<" + qclassNameSimple + ", Boolean>>";
+    }
+
+    /**
+     * Method to add the code for the static methods using a cache of expressions of this type keyed by name.
+     * A cache is a ConcurrentHashMap, so finding an expression takes no lock. Each entry holds the expression and whether it
+     * has been used since the last eviction, set on a hit only when not already set so that hits don't write to shared memory.
+     * When full, adding an expression evicts (under a lock on the cache, so only one thread evicts at a time) the entries not used
+     * since the last eviction, clearing the mark of the others, as a "clock" approximation of least recently used.
+     * <pre>
+     * private static {qclassName} jdoCached(java.util.concurrent.ConcurrentHashMap&lt;String, java.util.AbstractMap.SimpleEntry&lt;{qclassName}, Boolean&gt;&gt; cache, String name)
+     * {
+     *     java.util.AbstractMap.SimpleEntry&lt;{qclassName}, Boolean&gt; entry = cache.get(name);
+     *     if (entry == null)
+     *     {
+     *         return null;
+     *     }
+     *     if (entry.getValue() != Boolean.TRUE)
+     *     {
+     *         entry.setValue(Boolean.TRUE);
+     *     }
+     *     return entry.getKey();
+     * }
+     *
+     * private static {qclassName} jdoCache(java.util.concurrent.ConcurrentHashMap&lt;String, java.util.AbstractMap.SimpleEntry&lt;{qclassName}, Boolean&gt;&gt; cache, String name, {qclassName} expr)
+     * {
+     *     java.util.AbstractMap.SimpleEntry&lt;{qclassName}, Boolean&gt; existing = cache.putIfAbsent(name, new java.util.AbstractMap.SimpleEntry&lt;&gt;(expr, Boolean.FALSE));
+     *     if (existing != null)
+     *     {
+     *         return existing.getKey();
+     *     }
+     *     if (cache.size() &gt; {expressionCacheSize})
+     *     {
+     *         synchronized (cache)
+     *         {
+     *             java.util.Iterator&lt;java.util.Map.Entry&lt;String, java.util.AbstractMap.SimpleEntry&lt;{qclassName}, Boolean&gt;&gt;&gt; iter = cache.entrySet().iterator();
+     *             while (cache.size() &gt; {expressionCacheSize})
+     *             {
+     *                 if (!iter.hasNext())
+     *                 {
+     *                     iter = cache.entrySet().iterator();
+     *                 }
+     *                 java.util.Map.Entry&lt;String, java.util.AbstractMap.SimpleEntry&lt;{qclassName}, Boolean&gt;&gt; entry = iter.next();
+     *                 if (entry.getValue().getValue() == Boolean.TRUE)
+     *                 {
+     *                     entry.getValue().setValue(Boolean.FALSE);
+     *                 }
+     *                 else if (!entry.getKey().equals(name))
+     *                 {
+     *                     iter.remove();
+     *                 }
+     *             }
+     *         }
+     *     }
+     *     return expr;
+     * }
+     * </pre>
+     * The mark is read and written without synchronisation since it is only a hint for the eviction; the expression itself is
+     * published by the ConcurrentHashMap.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param qclassNameSimple Simple name of the QClass
+     */
+    protected void addCacheMethods(StringBuilder sb, String indent, String qclassNameSimple)
+    {
+        String mapType = getCacheType(qclassNameSimple);
+        String entryType = "java.util.AbstractMap.SimpleEntry<" + qclassNameSimple + ", Boolean>";
+        String mapEntryType = "java.util.Map.Entry<String, " + entryType + ">";
+        String indent2 = indent + CODE_INDENT;
+        String indent3 = indent2 + CODE_INDENT;
+        String indent4 = indent3 + CODE_INDENT;
+        String indent5 = indent4 + CODE_INDENT;
+
+        sb.append(indent).append("private static ").append(qclassNameSimple).append(" jdoCached(").append(mapType).append(" cache, String name)\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append(entryType).append(" entry = cache.get(name);\n");
+        sb.append(indent2).append("if (entry == null)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("return null;\n");
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("if (entry.getValue() != Boolean.TRUE)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("entry.setValue(Boolean.TRUE);\n");
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("return entry.getKey();\n");
+        sb.append(indent).append("}\n");
+        sb.append("\n");
+
+        sb.append(indent).append("private static ").append(qclassNameSimple).append(" jdoCache(").append(mapType).append(" cache, String name, ")
+            .append(qclassNameSimple).append(" expr)\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append(entryType).append(" existing = cache.putIfAbsent(name, new java.util.AbstractMap.SimpleEntry<>(expr, Boolean.FALSE));\n");
+        sb.append(indent2).append("if (existing != null)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("return existing.getKey();\n");
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("if (cache.size() > ").append(expressionCacheSize).append(")\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("synchronized (cache)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("java.util.Iterator<").append(mapEntryType).append("> iter = cache.entrySet().iterator();\n");
+        sb.append(indent4).append("while (cache.size() > ").append(expressionCacheSize).append(")\n");
+        sb.append(indent4).append("{\n");
+        sb.append(indent5).append("if (!iter.hasNext())\n");
+        sb.append(indent5).append("{\n");
+        sb.append(indent5).append(CODE_INDENT).append("iter = cache.entrySet().iterator();\n");
+        sb.append(indent5).append("}\n");
+        sb.append(indent5).append(mapEntryType).append(" entry = iter.next();\n");
+        sb.append(indent5).append("if (entry.getValue().getValue() == Boolean.TRUE)\n");
+        sb.append(indent5).append("{\n");
+        sb.append(indent5).append(CODE_INDENT).append("entry.getValue().setValue(Boolean.FALSE);\n");
+        sb.append(indent5).append("}\n");
+        sb.append(indent5).append("else if (!entry.getKey().equals(name))\n");
+        sb.append(indent5).append("{\n");
+        sb.append(indent5).append(CODE_INDENT).append("iter.remove();\n");
+        sb.append(indent5).append("}\n");
+        sb.append(indent4).append("}\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("return expr;\n");
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for the static field for the candidate of this type with the default name ("this"), as in earlier
+     * versions, deprecated in favour of the method "candidate()" since using the field creates the candidate (and initialises the
+     * related Q classes) when this class is initialised.
+     * <pre>
+     * &#64;Deprecated
+     * public static final {qclassName} jdoCandidate = CandidateHolder.INSTANCE;
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addCandidateField(StringBuilder sb, String indent, QClassModel model)
+    {
+        String qclassNameSimple = model.getQClassNameSimple();
+        sb.append(indent).append("/** @deprecated Use {@link #candidate()}, which does not create the candidate when this class is initialised */\n");
+        sb.append(indent).append("@Deprecated\n");
+        sb.append(indent).append("public static final ").append(qclassNameSimple).append(" jdoCandidate = CandidateHolder.INSTANCE;\n");
+    }
+
+    /**
+     * Method to add the code for a static method creating an expression of this type with a particular name, using the cache when enabled.
+     * <pre>
+     * public static {qclassName} {methodName}(String name)
+     * {
+     *     {qclassName} result = jdoCached({cacheName}, name);
+     *     return (result != null ? result : jdoCache({cacheName}, name, new {qclassName}{constructorArgs}));
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param qclassNameSimple Simple name of the QClass
+     * @param methodName Name of the method
+     * @param cacheName Name of the cache field
+     * @param constructorArgs Arguments for the constructor, including parentheses
+     */
+    protected void addFactoryMethod(StringBuilder sb, String indent, String qclassNameSimple, String methodName, String cacheName, String constructorArgs)
+    {
+        sb.append(indent).append("public static ").append(qclassNameSimple).append(" ").append(methodName).append("(String name)\n");
+        sb.append(indent).append("{\n");
+        if (expressionCacheSize > 0)
+        {
+            sb.append(indent).append(CODE_INDENT).append(qclassNameSimple).append(" result = jdoCached(").append(cacheName).append(", name);\n");
+            sb.append(indent).append(CODE_INDENT).append("return (result != null ? result : jdoCache(").append(cacheName).append(", name, new ")
+                .append(qclassNameSimple).append(constructorArgs).append("));\n");
+        }
+        else
+        {
+            sb.append(indent).append(CODE_INDENT).append("return new ").append(qclassNameSimple).append(constructorArgs).append(";\n");
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for the named queries declared on the class, with the single-string JDOQL as a constant, a method
+     * to create the (typed) query, using the named query so the datastore can reuse its compilation, and for a SELECT query a
+     * method to execute it with typed parameters. Names that clash (e.g "byName" and "by_name") are made unique with a suffix.
+     * <pre>
+     * public static final String QUERY_{NAME} = "{queryText}";
+     *
+     * public static javax.jdo.Query&lt;{className}&gt; newQuery{Name}(javax.jdo.PersistenceManager pm)
+     * {
+     *     return pm.newNamedQuery({className}.class, "{name}");
+     * }
+     *
+     * public static java.util.List&lt;{className}&gt; execute{Name}(javax.jdo.PersistenceManager pm, {paramType} {paramName}, ...)
+     * {
+     *     return newQuery{Name}(pm).setParameters({paramName}, ...).executeList();
+     * }
+     * </pre>
+     * A query with "UNIQUE" returns the (single) result, and one with a result clause returns Objects (executeResultList/executeResultUnique).
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addNamedQueries(StringBuilder sb, String indent, QClassModel model)
+    {
+        Set<String> constantNames = new HashSet<>();
+        Set<String> identifiers = new HashSet<>();
+        for (QClassModel.NamedQuery query : model.getNamedQueries())
+        {
+            StringBuilder identifier = new StringBuilder(query.getName().length());
+            for (int i = 0; i < query.getName().length(); i++)
+            {
+                char c = query.getName().charAt(i);
+                identifier.append(Character.isJavaIdentifierPart(c) ? c : '_');
+            }
+            String methodSuffix = getUniqueName(identifiers, Character.toUpperCase(identifier.charAt(0)) + identifier.substring(1));
+            String constantName = getUniqueName(constantNames, "QUERY_" + getConstantName(identifier.toString()));
+            String className = model.getClassNameSimple();
+
+            sb.append(indent).append("public static final String ").append(constantName)
+                .append(" = \"").append(getJavaString(query.getQueryText())).append("\";\n");
+            sb.append("\n");
+            sb.append(indent).append("public static javax.jdo.Query<").append(className).append("> newQuery").append(methodSuffix)
+                .append("(javax.jdo.PersistenceManager pm)\n");
+            sb.append(indent).append("{\n");
+            sb.append(indent).append(CODE_INDENT).append("return pm.newNamedQuery(").append(className).append(".class, \"")
+                .append(getJavaString(query.getName())).append("\");\n");
+            sb.append(indent).append("}\n");
+            sb.append("\n");
+
+            if (query.isSelect())
+            {
+                addNamedQueryExecuteMethod(sb, indent, className, query, methodSuffix);
+                sb.append("\n");
+            }
+        }
+    }
+
+    /**
+     * Method to add the code for the method executing a (SELECT) named query with the values of its parameters.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param className Simple name of the candidate class
+     * @param query The named query
+     * @param methodSuffix Suffix of the names of the methods for the query (e.g "ByName")
+     */
+    protected void addNamedQueryExecuteMethod(StringBuilder sb, String indent, String className, QClassModel.NamedQuery query, String methodSuffix)
+    {
+        // Name the PersistenceManager so as not to hide a parameter
+        String pmName = "pm";
+        for (QClassModel.Parameter param : query.getParameters())
+        {
+            if (param.getName().equals(pmName))
+            {
+                pmName = "jdoPersistenceManager";
+            }
+        }
+
+        String resultType;
+        String executeMethod;
+        if (query.isResult())
+        {
+            resultType = (query.isUnique() ? "Object" : "java.util.List<Object>");
+            executeMethod = (query.isUnique() ? "executeResultUnique" : "executeResultList");
+        }
+        else
+        {
+            resultType = (query.isUnique() ? className : "java.util.List<" + className + ">");
+            executeMethod = (query.isUnique() ? "executeUnique" : "executeList");
+        }
+
+        sb.append(indent).append("public static ").append(resultType).append(" execute").append(methodSuffix)
+            .append("(javax.jdo.PersistenceManager ").append(pmName);
+        for (QClassModel.Parameter param : query.getParameters())
+        {
+            sb.append(", ").append(param.getTypeName()).append(" ").append(param.getName());
+        }
+        sb.append(")\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("return newQuery").append(methodSuffix).append("(").append(pmName).append(")");
+        if (!query.getParameters().isEmpty())
+        {
+            sb.append(".setParameters(");
+            for (int i = 0; i < query.getParameters().size(); i++)
+            {
+                QClassModel.Parameter param = query.getParameters().get(i);
+                // Pass an array as a single value rather than as the varargs
+                sb.append(i > 0 ? ", " : "").append(param.getTypeName().endsWith("[]") ? "(Object)" : "").append(param.getName());
+            }
+            sb.append(")");
+        }
+        sb.append(".").append(executeMethod).append("();\n");
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Convenience method to return a name that is not already used, adding a suffix ("_2", "_3", ...) when it is.
+     * @param names The names already used, to add the name to
+     * @param name The name
+     * @return The unique name
+     */
+    private static String getUniqueName(Set<String> names, String name)
+    {
+        if (names.add(name))
+        {
+            return name;
+        }
+        int i = 2;
+        while (!names.add(name + "_" + i))
+        {
+            i++;
+        }
+        return name + "_" + i;
+    }
+
+    /**
+     * Method to add the code for the field numbers of the managed fields, as assigned by the enhancer, and lookup of the field
+     * number for a name using a perfect hash (see PerfectHash) whose tables are String constants, so cost nothing to initialise.
+     * <pre>
+     * private static final String[] jdoFieldNames = {"{name0}", "{name1}", ...};
+     * private static final String jdoFieldDisplacements = "...";
+     * private static final String jdoFieldSlots = "...";
+     *
+     * public static int jdoFieldCount() ...
+     * public static String jdoFieldName(int fieldNumber) ...
+     * public static int jdoFieldNumber(String name) ... (or -1 if not a managed field)
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addFieldNumbers(StringBuilder sb, String indent, QClassModel model)
+    {
+        List<String> fieldNames = model.getFieldNames();
+        PerfectHash hash = PerfectHash.create(fieldNames);
+        if (hash != null && getConstantLength(hash.getSlots()) > 0xFFFF)
+        {
+            // Too large for a String constant
+            hash = null;
+        }
+
+        sb.append(indent).append("private static final String[] jdoFieldNames = {");
+        for (int i = 0; i < fieldNames.size(); i++)
+        {
+            sb.append(i > 0 ? ", \"" : "\"").append(fieldNames.get(i)).append("\"");
+        }
+        sb.append("};\n");
+        if (hash != null)
+        {
+            sb.append(indent).append("private static final String jdoFieldDisplacements = \"").append(getJavaString(new String(hash.getDisplacements()))).append("\";\n");
+            sb.append(indent).append("private static final String jdoFieldSlots = \"").append(getJavaString(new String(hash.getSlots()))).append("\";\n");
+        }
+        sb.append("\n");
+
+        sb.append(indent).append("public static int jdoFieldCount()\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("return ").append(fieldNames.size()).append(";\n");
+        sb.append(indent).append("}\n");
+        sb.append("\n");
+
+        sb.append(indent).append("public static String jdoFieldName(int fieldNumber)\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("return jdoFieldNames[fieldNumber];\n");
+        sb.append(indent).append("}\n");
+        sb.append("\n");
+
+        sb.append(indent).append("public static int jdoFieldNumber(String name)\n");
+        sb.append(indent).append("{\n");
+        if (hash != null)
+        {
+            sb.append(indent).append(CODE_INDENT).append("int h = name.hashCode();\n");
+            sb.append(indent).append(CODE_INDENT).append("int fieldNumber = jdoFieldSlots.charAt(((h ^ jdoFieldDisplacements.charAt((h * 0x")
+                .append(Integer.toHexString(PerfectHash.BUCKET_MULTIPLIER).toUpperCase()).append(") >>> ").append(hash.getBucketShift()).append(")) * 0x")
+                .append(Integer.toHexString(PerfectHash.SLOT_MULTIPLIER).toUpperCase()).append(") >>> ").append(hash.getSlotShift()).append(") - 1;\n");
+            sb.append(indent).append(CODE_INDENT).append("return (fieldNumber >= 0 && jdoFieldNames[fieldNumber].equals(name) ? fieldNumber : -1);\n");
+        }
+        else
+        {
+            // No perfect hash (names with the same hashCode) so search
+            sb.append(indent).append(CODE_INDENT).append("for (int i = 0; i < jdoFieldNames.length; i++)\n");
+            sb.append(indent).append(CODE_INDENT).append("{\n");
+            sb.append(indent).append(CODE_INDENT).append(CODE_INDENT).append("if (jdoFieldNames[i].equals(name))\n");
+            sb.append(indent).append(CODE_INDENT).append(CODE_INDENT).append("{\n");
+            sb.append(indent).append(CODE_INDENT).append(CODE_INDENT).append(CODE_INDENT).append("return i;\n");
+            sb.append(indent).append(CODE_INDENT).append(CODE_INDENT).append("}\n");
+            sb.append(indent).append(CODE_INDENT).append("}\n");
+            sb.append(indent).append(CODE_INDENT).append("return -1;\n");
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for a nested class to read and write the managed fields of the class by field number (see addFieldNumbers)
+     * without reflection, with variants for each primitive type (of a managed field) that avoid boxing.
+     * A field is accessed via its JavaBean getter/setter, otherwise directly, and a field with neither accessible throws an
+     * IllegalArgumentException.
+     * <pre>
+     * public static final class FieldAccessor
+     * {
+     *     public static Object get({class} obj, int fieldNumber) ...
+     *     public static void set({class} obj, int fieldNumber, Object value) ...
+     *     public static int getInt({class} obj, int fieldNumber) ... (when having int fields)
+     *     public static void setInt({class} obj, int fieldNumber, int value) ... (when having int fields)
+     *     ...
+     * }
+     * </pre>
+     * For a class with many fields, each method delegates by range of field number to private methods (get0, get1, ...) so that
+     * each switch is small enough to be JIT compiled.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addFieldAccessor(StringBuilder sb, String indent, QClassModel model)
+    {
+        String indent2 = indent + CODE_INDENT;
+        sb.append(indent).append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        sb.append(indent).append("public static final class FieldAccessor\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append("private FieldAccessor()\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent2).append("}\n");
+
+        sb.append("\n");
+        addFieldAccessorMethods(sb, indent2, model, null, "", "Object");
+        for (int i = 0; i < PRIMITIVE_TYPES.length; i++)
+        {
+            for (QClassModel.FieldAccess fieldAccess : model.getFieldAccesses())
+            {
+                if (fieldAccess.getTypeName().equals(PRIMITIVE_TYPES[i]))
+                {
+                    sb.append("\n");
+                    addFieldAccessorMethods(sb, indent2, model, PRIMITIVE_TYPES[i], PRIMITIVE_METHOD_SUFFIXES[i], PRIMITIVE_TYPES[i]);
+                    break;
+                }
+            }
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for the get and set methods of the FieldAccessor for the fields of a type.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     * @param typeName Primitive type of the fields, or null for all fields
+     * @param methodSuffix Suffix for the method names (e.g "Int")
+     * @param valueTypeName Type of the value got/set
+     */
+    private void addFieldAccessorMethods(StringBuilder sb, String indent, QClassModel model, String typeName, String methodSuffix, String valueTypeName)
+    {
+        List<QClassModel.FieldAccess> fieldAccesses = model.getFieldAccesses();
+        List<Integer> readable = new ArrayList<>();
+        List<Integer> writable = new ArrayList<>();
+        for (int i = 0; i < fieldAccesses.size(); i++)
+        {
+            QClassModel.FieldAccess fieldAccess = fieldAccesses.get(i);
+            if (typeName == null || typeName.equals(fieldAccess.getTypeName()))
+            {
+                if (fieldAccess.getGetterName() != null || fieldAccess.isFieldAccessible())
+                {
+                    readable.add(i);
+                }
+                if (fieldAccess.getSetterName() != null || fieldAccess.isFieldAccessible())
+                {
+                    writable.add(i);
+                }
+            }
+        }
+
+        // get{suffix}(obj, fieldNumber) : lookupswitch entry, aload_0, getfield (or invokevirtual), [invokestatic valueOf], areturn
+        addFieldAccessorMethod(sb, indent, model, typeName, valueTypeName, true, "get" + methodSuffix, readable, 16);
+        sb.append("\n");
+
+        // set{suffix}(obj, fieldNumber, value) : lookupswitch entry, aload_0, aload_2, [checkcast, invokevirtual xxxValue], putfield (or
+        // invokevirtual), return
+        addFieldAccessorMethod(sb, indent, model, typeName, valueTypeName, false, "set" + methodSuffix, writable, 20);
+    }
+
+    /**
+     * Method to add the code for a get or set method of the FieldAccessor. When the estimated size of its switch exceeds
+     * FIELD_ACCESSOR_BYTECODE_LIMIT the switch is split into private methods for ranges of field numbers, as
+     * <pre>
+     * public static Object get({class} obj, int fieldNumber)
+     * {
+     *     if (fieldNumber &lt; {first field number of range 1})
+     *     {
+     *         return get0(obj, fieldNumber);
+     *     }
+     *     ...
+     *     return get{n}(obj, fieldNumber);
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     * @param typeName Primitive type of the fields, or null for all fields
+     * @param valueTypeName Type of the value got/set
+     * @param get Whether this is the get method (otherwise the set method)
+     * @param methodName Name of the method
+     * @param fieldNumbers Numbers of the fields that can be got/set
+     * @param caseSize Estimated bytecode size of each case of the switch
+     */
+    private void addFieldAccessorMethod(StringBuilder sb, String indent, QClassModel model, String typeName, String valueTypeName, boolean get,
+            String methodName, List<Integer> fieldNumbers, int caseSize)
+    {
+        if (fieldNumbers.size() * caseSize <= FIELD_ACCESSOR_BYTECODE_LIMIT)
+        {
+            addFieldAccessorSwitch(sb, indent, model, typeName, valueTypeName, get, "public", methodName, fieldNumbers);
+            return;
+        }
+
+        int rangeSize = FIELD_ACCESSOR_BYTECODE_LIMIT / caseSize;
+        List<List<Integer>> ranges = new ArrayList<>();
+        for (int i = 0; i < fieldNumbers.size(); i += rangeSize)
+        {
+            ranges.add(fieldNumbers.subList(i, Math.min(i + rangeSize, fieldNumbers.size())));
+        }
+
+        String indent2 = indent + CODE_INDENT;
+        String indent3 = indent2 + CODE_INDENT;
+        addFieldAccessorSignature(sb, indent, model, valueTypeName, get, "public", methodName);
+        sb.append(indent).append("{\n");
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            String call = methodName + i + "(obj, fieldNumber" + (get ? "" : ", value") + ");\n";
+            if (i < ranges.size() - 1)
+            {
+                sb.append(indent2).append("if (fieldNumber < ").append(ranges.get(i + 1).get(0)).append(")\n");
+                sb.append(indent2).append("{\n");
+                if (get)
+                {
+                    sb.append(indent3).append("return ").append(call);
+                }
+                else
+                {
+                    sb.append(indent3).append(call);
+                    sb.append(indent3).append("return;\n");
+                }
+                sb.append(indent2).append("}\n");
+            }
+            else
+            {
+                sb.append(indent2).append(get ? "return " : "").append(call);
+            }
+        }
+        sb.append(indent).append("}\n");
+
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            sb.append("\n");
+            addFieldAccessorSwitch(sb, indent, model, typeName, valueTypeName, get, "private", methodName + i, ranges.get(i));
+        }
+    }
+
+    /**
+     * Method to add the signature of a get or set method of the FieldAccessor.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     * @param valueTypeName Type of the value got/set
+     * @param get Whether this is a get method (otherwise a set method)
+     * @param modifier Access modifier of the method
+     * @param methodName Name of the method
+     */
+    private static void addFieldAccessorSignature(StringBuilder sb, String indent, QClassModel model, String valueTypeName, boolean get,
+            String modifier, String methodName)
+    {
+        sb.append(indent).append(modifier).append(" static ").append(get ? valueTypeName : "void").append(" ").append(methodName)
+            .append("(").append(model.getClassNameSimple()).append(" obj, int fieldNumber").append(get ? "" : ", " + valueTypeName + " value").append(")\n");
+    }
+
+    /**
+     * Method to add the code for a get or set method of the FieldAccessor with a switch over the provided fields.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     * @param typeName Primitive type of the fields, or null for all fields
+     * @param valueTypeName Type of the value got/set
+     * @param get Whether this is a get method (otherwise a set method)
+     * @param modifier Access modifier of the method
+     * @param methodName Name of the method
+     * @param fieldNumbers Numbers of the fields that can be got/set
+     */
+    private void addFieldAccessorSwitch(StringBuilder sb, String indent, QClassModel model, String typeName, String valueTypeName, boolean get,
+            String modifier, String methodName, List<Integer> fieldNumbers)
+    {
+        String indent2 = indent + CODE_INDENT;
+        String indent3 = indent2 + CODE_INDENT;
+        List<QClassModel.FieldAccess> fieldAccesses = model.getFieldAccesses();
+
+        addFieldAccessorSignature(sb, indent, model, valueTypeName, get, modifier, methodName);
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append("switch (fieldNumber)\n");
+        sb.append(indent2).append("{\n");
+        for (int fieldNumber : fieldNumbers)
+        {
+            QClassModel.FieldAccess fieldAccess = fieldAccesses.get(fieldNumber);
+            sb.append(indent3).append("case ").append(fieldNumber).append(":\n");
+            if (get)
+            {
+                sb.append(indent3).append(CODE_INDENT).append("return obj.").append(fieldAccess.getGetterName() != null ? fieldAccess.getGetterName() + "()" : fieldAccess.getName()).append(";\n");
+                continue;
+            }
+
+            String value = "value";
+            if (typeName == null)
+            {
+                // Cast the Object, to the wrapper when primitive
+                int primitiveIndex = Arrays.asList(PRIMITIVE_TYPES).indexOf(fieldAccess.getTypeName());
+                if (primitiveIndex >= 0 || !fieldAccess.getTypeName().equals("java.lang.Object"))
+                {
+                    value = "(" + (primitiveIndex >= 0 ? PRIMITIVE_WRAPPER_TYPES[primitiveIndex] : fieldAccess.getTypeName()) + ")value";
+                }
+            }
+            if (fieldAccess.getSetterName() != null)
+            {
+                sb.append(indent3).append(CODE_INDENT).append("obj.").append(fieldAccess.getSetterName()).append("(").append(value).append(");\n");
+            }
+            else
+            {
+                sb.append(indent3).append(CODE_INDENT).append("obj.").append(fieldAccess.getName()).append(" = ").append(value).append(";\n");
+            }
+            sb.append(indent3).append(CODE_INDENT).append("return;\n");
+        }
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("throw new IllegalArgumentException(\"Field \" + fieldNumber + \" of ").append(model.getClassNameSimple())
+            .append(get ? " cannot be read" : " cannot be written").append(typeName != null ? " as " + typeName : "").append("\");\n");
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for a nested class to compile a filter (built using the Q classes) into a Predicate for evaluating it
+     * in-memory, reading the members directly (as FieldAccessor) and comparing primitive members without boxing.
+     * The filter is compiled from its (DataNucleus) query expression, supporting AND, OR, NOT, boolean members, and comparisons
+     * (==, !=, &lt;, &lt;=, &gt;, &gt;=) of a member of the candidate with a literal or (provided) parameter, following the JDOQL null
+     * semantics (null is only equal to null, and has no order). Any other filter compiles to null, so the caller can fall back
+     * to the query evaluator. This includes a filter on members of anything other than the candidate, the candidate being "this"
+     * unless provided (e.g when created using candidate(name)).
+     * <pre>
+     * public static final class Evaluator
+     * {
+     *     public static Predicate&lt;{class}&gt; compile(BooleanExpression filter) ...
+     *     public static Predicate&lt;{class}&gt; compile(BooleanExpression filter, Map&lt;String, ?&gt; parameters) ...
+     *     public static Predicate&lt;{class}&gt; compile({qclass} candidate, BooleanExpression filter, Map&lt;String, ?&gt; parameters) ...
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addEvaluator(StringBuilder sb, String indent, QClassModel model)
+    {
+        String className = model.getClassNameSimple();
+        String indent2 = indent + CODE_INDENT;
+        String indent3 = indent2 + CODE_INDENT;
+        String indent4 = indent3 + CODE_INDENT;
+        String indent5 = indent4 + CODE_INDENT;
+
+        sb.append(indent).append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        sb.append(indent).append("public static final class Evaluator\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append("private static final Object NO_VALUE = new Object();\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static final java.util.List<org.datanucleus.store.query.expression.Expression.Operator> COMPARISONS = java.util.Arrays.asList(\n");
+        sb.append(indent3).append("org.datanucleus.store.query.expression.Expression.OP_EQ, org.datanucleus.store.query.expression.Expression.OP_NOTEQ,\n");
+        sb.append(indent3).append("org.datanucleus.store.query.expression.Expression.OP_LT, org.datanucleus.store.query.expression.Expression.OP_LTEQ,\n");
+        sb.append(indent3).append("org.datanucleus.store.query.expression.Expression.OP_GT, org.datanucleus.store.query.expression.Expression.OP_GTEQ);\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static final int[] REVERSED_COMPARISONS = {0, 1, 4, 5, 2, 3};\n");
+        sb.append("\n");
+        sb.append(indent2).append("private Evaluator()\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("public static java.util.function.Predicate<").append(className).append("> compile(BooleanExpression filter)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("return compile(filter, java.util.Collections.<String, Object>emptyMap());\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("public static java.util.function.Predicate<").append(className).append("> compile(BooleanExpression filter, java.util.Map<String, ?> parameters)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("return compile(((ExpressionImpl)filter).getQueryExpression(), \"this\", parameters);\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("public static java.util.function.Predicate<").append(className).append("> compile(").append(model.getQClassNameSimple())
+            .append(" candidate, BooleanExpression filter, java.util.Map<String, ?> parameters)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("org.datanucleus.store.query.expression.Expression candidateExpr = ((ExpressionImpl)candidate).getQueryExpression();\n");
+        sb.append(indent3).append("if (!(candidateExpr instanceof org.datanucleus.store.query.expression.PrimaryExpression) || candidateExpr.getLeft() != null ||\n");
+        sb.append(indent4).append("((org.datanucleus.store.query.expression.PrimaryExpression)candidateExpr).getTuples().size() != 1)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("// Not a candidate (e.g a parameter or variable)\n");
+        sb.append(indent4).append("return null;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("String candidateAlias = ((org.datanucleus.store.query.expression.PrimaryExpression)candidateExpr).getTuples().get(0);\n");
+        sb.append(indent3).append("return compile(((ExpressionImpl)filter).getQueryExpression(), candidateAlias, parameters);\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static java.util.function.Predicate<").append(className).append("> compile(org.datanucleus.store.query.expression.Expression expr, String candidateAlias,\n");
+        sb.append(indent4).append("java.util.Map<String, ?> parameters)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("org.datanucleus.store.query.expression.Expression.Operator op = expr.getOperator();\n");
+        sb.append(indent3).append("if (op == org.datanucleus.store.query.expression.Expression.OP_AND || op == org.datanucleus.store.query.expression.Expression.OP_OR)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("java.util.function.Predicate<").append(className).append("> left = compile(expr.getLeft(), candidateAlias, parameters);\n");
+        sb.append(indent4).append("java.util.function.Predicate<").append(className).append("> right = (left != null ? compile(expr.getRight(), candidateAlias, parameters) : null);\n");
+        sb.append(indent4).append("if (right == null)\n");
+        sb.append(indent4).append("{\n");
+        sb.append(indent5).append("return null;\n");
+        sb.append(indent4).append("}\n");
+        sb.append(indent4).append("return (op == org.datanucleus.store.query.expression.Expression.OP_AND ? left.and(right) : left.or(right));\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (op == org.datanucleus.store.query.expression.Expression.OP_NOT)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("java.util.function.Predicate<").append(className).append("> left = compile(expr.getLeft(), candidateAlias, parameters);\n");
+        sb.append(indent4).append("return (left != null ? left.negate() : null);\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (op == null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("// Boolean member\n");
+        sb.append(indent4).append("return compile(getFieldNumber(expr, candidateAlias), 0, Boolean.TRUE);\n");
+        sb.append(indent3).append("}\n");
+        sb.append("\n");
+        sb.append(indent3).append("int cmp = COMPARISONS.indexOf(op);\n");
+        sb.append(indent3).append("if (cmp < 0)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return null;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("int fieldNumber = getFieldNumber(expr.getLeft(), candidateAlias);\n");
+        sb.append(indent3).append("Object value = getValue(expr.getRight(), parameters);\n");
+        sb.append(indent3).append("if (fieldNumber < 0)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("// Value compared with member\n");
+        sb.append(indent4).append("fieldNumber = getFieldNumber(expr.getRight(), candidateAlias);\n");
+        sb.append(indent4).append("value = getValue(expr.getLeft(), parameters);\n");
+        sb.append(indent4).append("cmp = REVERSED_COMPARISONS[cmp];\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("return (value != NO_VALUE ? compile(fieldNumber, cmp, value) : null);\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static int getFieldNumber(org.datanucleus.store.query.expression.Expression expr, String candidateAlias)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("if (expr instanceof org.datanucleus.store.query.expression.PrimaryExpression && expr.getLeft() == null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("// Member of the candidate, not of another candidate alias or of a relation\n");
+        sb.append(indent4).append("java.util.List<String> tuples = ((org.datanucleus.store.query.expression.PrimaryExpression)expr).getTuples();\n");
+        sb.append(indent4).append("if (tuples.size() == 2 && tuples.get(0).equals(candidateAlias))\n");
+        sb.append(indent4).append("{\n");
+        sb.append(indent5).append("return jdoFieldNumber(tuples.get(1));\n");
+        sb.append(indent4).append("}\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("return -1;\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static Object getValue(org.datanucleus.store.query.expression.Expression expr, java.util.Map<String, ?> parameters)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("if (expr instanceof org.datanucleus.store.query.expression.Literal)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return ((org.datanucleus.store.query.expression.Literal)expr).getLiteral();\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (expr instanceof org.datanucleus.store.query.expression.ParameterExpression)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("String name = ((org.datanucleus.store.query.expression.ParameterExpression)expr).getId();\n");
+        sb.append(indent4).append("return (parameters.containsKey(name) ? parameters.get(name) : NO_VALUE);\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("return NO_VALUE;\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static java.util.function.Predicate<").append(className).append("> compile(int fieldNumber, int cmp, Object value)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("if (fieldNumber < 0)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return null;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("java.util.function.ToLongFunction<").append(className).append("> longReader = getLongReader(fieldNumber);\n");
+        sb.append(indent3).append("java.util.function.ToDoubleFunction<").append(className).append("> doubleReader = getDoubleReader(fieldNumber);\n");
+        sb.append(indent3).append("java.util.function.Predicate<").append(className).append("> booleanReader = getBooleanReader(fieldNumber);\n");
+        sb.append(indent3).append("if (longReader == null && doubleReader == null && booleanReader == null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("java.util.function.Function<").append(className).append(", Object> objectReader = getObjectReader(fieldNumber);\n");
+        sb.append(indent4).append("return (objectReader != null ? obj -> compare(objectReader.apply(obj), cmp, value) : null);\n");
+        sb.append(indent3).append("}\n");
+        sb.append("\n");
+        sb.append(indent3).append("// Primitive, so never null\n");
+        sb.append(indent3).append("if (value == null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return (cmp == 1 ? obj -> true : obj -> false);\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (booleanReader != null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("if (!(value instanceof Boolean) || cmp > 1)\n");
+        sb.append(indent4).append("{\n");
+        sb.append(indent5).append("return null;\n");
+        sb.append(indent4).append("}\n");
+        sb.append(indent4).append("return (((Boolean)value).booleanValue() == (cmp == 0) ? booleanReader : booleanReader.negate());\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (longReader != null && (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte))\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return compareLong(longReader, cmp, ((Number)value).longValue());\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (longReader != null && value instanceof Character)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return compareLong(longReader, cmp, ((Character)value).charValue());\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (value instanceof Number)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return compareDouble(doubleReader != null ? doubleReader : obj -> longReader.applyAsLong(obj), cmp, ((Number)value).doubleValue());\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("return null;\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static java.util.function.Predicate<").append(className).append("> compareLong(java.util.function.ToLongFunction<").append(className).append("> reader, int cmp, long value)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("switch (cmp)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("case 0:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsLong(obj) == value;\n");
+        sb.append(indent4).append("case 1:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsLong(obj) != value;\n");
+        sb.append(indent4).append("case 2:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsLong(obj) < value;\n");
+        sb.append(indent4).append("case 3:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsLong(obj) <= value;\n");
+        sb.append(indent4).append("case 4:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsLong(obj) > value;\n");
+        sb.append(indent4).append("default:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsLong(obj) >= value;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static java.util.function.Predicate<").append(className).append("> compareDouble(java.util.function.ToDoubleFunction<").append(className).append("> reader, int cmp, double value)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("switch (cmp)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("case 0:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsDouble(obj) == value;\n");
+        sb.append(indent4).append("case 1:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsDouble(obj) != value;\n");
+        sb.append(indent4).append("case 2:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsDouble(obj) < value;\n");
+        sb.append(indent4).append("case 3:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsDouble(obj) <= value;\n");
+        sb.append(indent4).append("case 4:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsDouble(obj) > value;\n");
+        sb.append(indent4).append("default:\n");
+        sb.append(indent5).append("return obj -> reader.applyAsDouble(obj) >= value;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static boolean compare(Object fieldValue, int cmp, Object value)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("if (fieldValue == null || value == null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("// Null is only equal to null, and has no order\n");
+        sb.append(indent4).append("return (cmp == 0 ? fieldValue == value : (cmp == 1 && fieldValue != value));\n");
+        sb.append(indent3).append("}\n");
+        sb.append("\n");
+        sb.append(indent3).append("int result;\n");
+        sb.append(indent3).append("if (fieldValue instanceof Number && value instanceof Number)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("result = compareNumbers((Number)fieldValue, (Number)value);\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (fieldValue instanceof Comparable && (fieldValue.getClass().isInstance(value) || value.getClass().isInstance(fieldValue)))\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("result = ((Comparable)fieldValue).compareTo(value);\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("// Not ordered, so only equality\n");
+        sb.append(indent4).append("return (cmp < 2 && fieldValue.equals(value) == (cmp == 0));\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("switch (cmp)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("case 0:\n");
+        sb.append(indent5).append("return result == 0;\n");
+        sb.append(indent4).append("case 1:\n");
+        sb.append(indent5).append("return result != 0;\n");
+        sb.append(indent4).append("case 2:\n");
+        sb.append(indent5).append("return result < 0;\n");
+        sb.append(indent4).append("case 3:\n");
+        sb.append(indent5).append("return result <= 0;\n");
+        sb.append(indent4).append("case 4:\n");
+        sb.append(indent5).append("return result > 0;\n");
+        sb.append(indent4).append("default:\n");
+        sb.append(indent5).append("return result >= 0;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent2).append("}\n");
+        sb.append("\n");
+        sb.append(indent2).append("private static int compareNumbers(Number a, Number b)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append("if (a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return Double.compare(a.doubleValue(), b.doubleValue());\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("else if (a instanceof java.math.BigDecimal || a instanceof java.math.BigInteger || b instanceof java.math.BigDecimal || b instanceof java.math.BigInteger)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent4).append("return new java.math.BigDecimal(a.toString()).compareTo(new java.math.BigDecimal(b.toString()));\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent3).append("return Long.compare(a.longValue(), b.longValue());\n");
+        sb.append(indent2).append("}\n");
+
+        // Readers for the members, by type
+        sb.append("\n");
+        addEvaluatorReader(sb, indent2, model, "java.util.function.ToLongFunction", "getLongReader", Arrays.asList("byte", "char", "short", "int", "long"));
+        sb.append("\n");
+        addEvaluatorReader(sb, indent2, model, "java.util.function.ToDoubleFunction", "getDoubleReader", Arrays.asList("float", "double"));
+        sb.append("\n");
+        addEvaluatorReader(sb, indent2, model, "java.util.function.Predicate", "getBooleanReader", Arrays.asList("boolean"));
+        sb.append("\n");
+        addEvaluatorReader(sb, indent2, model, "java.util.function.Function", "getObjectReader", null);
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for a method of the Evaluator returning a reader for the readable fields of some types.
+     * <pre>
+     * private static {readerType}&lt;{class}&gt; {methodName}(int fieldNumber)
+     * {
+     *     switch (fieldNumber)
+     *     {
+     *         case {fieldNumber}:
+     *             return obj -&gt; obj.{getter}();
+     *         ...
+     *     }
+     *     return null;
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     * @param readerType Type of the reader
+     * @param methodName Name of the method
+     * @param typeNames The (primitive) types of the fields to read, or null for all non-primitive fields
+     */
+    private void addEvaluatorReader(StringBuilder sb, String indent, QClassModel model, String readerType, String methodName, List<String> typeNames)
+    {
+        String indent2 = indent + CODE_INDENT;
+        String indent3 = indent2 + CODE_INDENT;
+        String className = model.getClassNameSimple();
+        String readerTypeArgs = (typeNames == null ? "<" + className + ", Object>" : "<" + className + ">");
+        List<QClassModel.FieldAccess> fieldAccesses = model.getFieldAccesses();
+
+        sb.append(indent).append("private static ").append(readerType).append(readerTypeArgs).append(" ").append(methodName).append("(int fieldNumber)\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append("switch (fieldNumber)\n");
+        sb.append(indent2).append("{\n");
+        for (int i = 0; i < fieldAccesses.size(); i++)
+        {
+            QClassModel.FieldAccess fieldAccess = fieldAccesses.get(i);
+            boolean matches = (typeNames != null ? typeNames.contains(fieldAccess.getTypeName()) : !Arrays.asList(PRIMITIVE_TYPES).contains(fieldAccess.getTypeName()));
+            if (matches && (fieldAccess.getGetterName() != null || fieldAccess.isFieldAccessible()))
+            {
+                sb.append(indent3).append("case ").append(i).append(":\n");
+                sb.append(indent3).append(CODE_INDENT).append("return obj -> obj.")
+                    .append(fieldAccess.getGetterName() != null ? fieldAccess.getGetterName() + "()" : fieldAccess.getName()).append(";\n");
+            }
+        }
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("return null;\n");
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Convenience method to return the length of the provided chars as a String constant in a class file (modified UTF-8).
+     * @param chars The chars
+     * @return The length (bytes)
+     */
+    private static int getConstantLength(char[] chars)
+    {
+        int length = 0;
+        for (char c : chars)
+        {
+            length += (c >= 0x01 && c <= 0x7F) ? 1 : (c <= 0x7FF ? 2 : 3);
+        }
+        return length;
+    }
+
+    /**
+     * Convenience method to escape a string for use in a Java string literal.
+     * @param str The string
+     * @return The escaped string
+     */
+    protected static String getJavaString(String str)
+    {
+        StringBuilder sb = new StringBuilder(str.length() + 8);
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            switch (c)
+            {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x7F && c < 0x100))
+                    {
+                        // Octal escape (of 3 digits so a following digit isn't part of it), since a unicode escape of a line
+                        // terminator would be translated before the literal is parsed
+                        sb.append(String.format("\\%03o", (int)c));
+                    }
+                    else if (c >= 0x100)
+                    {
+                        sb.append(String.format("\\u%04x", (int)c));
+                    }
+                    else
+                    {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to add the code for a nested class with the JDOQL paths of the members as constants, named from the path in upper case.
+     * <pre>
+     * public static final class Paths
+     * {
+     *     public static final String CUSTOMER_ADDRESS_CITY = "this.customer.address.city";
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addPathConstants(StringBuilder sb, String indent, QClassModel model)
+    {
+        sb.append(indent).append("public static final class Paths\n");
+        sb.append(indent).append("{\n");
+        Set<String> constantNames = new HashSet<>();
+        for (String path : model.getMemberPaths())
+        {
+            // Make unique when names clash (e.g "aB" and "a_b")
+            String constantName = getUniqueName(constantNames, getConstantName(path.substring(path.indexOf('.') + 1)));
+            sb.append(indent).append(CODE_INDENT).append("public static final String ").append(constantName).append(" = \"").append(path).append("\";\n");
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Convenience method to return the name of a constant for a path, splitting camel case words with "_" and in upper case.
+     * @param path The path (e.g "customer.homeAddress")
+     * @return The constant name (e.g "CUSTOMER_HOME_ADDRESS")
+     */
+    protected static String getConstantName(String path)
+    {
+        StringBuilder sb = new StringBuilder(path.length() + 8);
+        for (int i = 0; i < path.length(); i++)
+        {
+            char c = path.charAt(i);
+            if (c == '.')
+            {
+                sb.append('_');
+            }
+            else
+            {
+                if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(path.charAt(i - 1)))
+                {
+                    sb.append('_');
+                }
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to add the code for a constructor taking in (PersistableExpression parent, String name, int depth).
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass that this is constructing
+     */
+    protected void addConstructorWithPersistableExpression(StringBuilder sb, String indent, QClassModel model)
+    {
+        List<List<Member>> initChunks = (queryMode == JDOQueryProcessor.MODE_FIELD ? getMemberInitChunks(model) : null);
+        sb.append(indent).append("public ").append(model.getQClassNameSimple()).append("(").append(PersistableExpression.class.getSimpleName()).append(" parent, String name, int depth)\n");
+        sb.append(indent).append("{\n");
+        if (model.getSuperQClassName() != null)
+        {
+            sb.append(indent).append(CODE_INDENT).append("super(parent, name, depth);\n");
+        }
+        else
+        {
+            sb.append(indent).append(CODE_INDENT).append("super(parent, name);\n");
+        }
+        if (queryMode == JDOQueryProcessor.MODE_FIELD)
+        {
+            if (initChunks != null)
+            {
+                // Initialise all fields using the init methods
+                addMemberInitCalls(sb, indent + CODE_INDENT, initChunks, "depth");
+            }
+            else
+            {
+                // Initialise all fields
+                for (Member member : model.getMembers())
+                {
+                    addMemberInitialisation(sb, indent + CODE_INDENT, member);
+                }
+            }
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code to initialise a member with the depth of the Q class in "depth".
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param member The member
+     */
+    protected void addMemberInitialisation(StringBuilder sb, String indent, Member member)
+    {
+        addMemberInitialisation(sb, indent, member, "this." + member.getName(), true);
+    }
+
+    /**
+     * Method to add the code to create a member with the depth of the Q class in "depth", and assign it to the specified target.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param member The member
+     * @param target The target to assign to (e.g "this.{field}", "members[{position}]")
+     * @param assignNull Whether to assign null to the target when a related Q class is not created (beyond the depth)
+     */
+    protected void addMemberInitialisation(StringBuilder sb, String indent, Member member, String target, boolean assignNull)
+    {
+        String memberName = member.getName();
+        if (member.isPersistable() && member.isAlwaysCreated())
+        {
+            // {target} = new {ImplType}(this, memberName, 0);
+            sb.append(indent).append(target).append(" = new ").append(member.getImplName())
+                .append("(this, \"").append(memberName).append("\", 0);\n");
+        }
+        else if (member.isPersistable())
+        {
+            // if (depth > 0)
+            // {
+            //     {target} = new {ImplType}(this, memberName, depth-1);   [or Math.min(depth-1, {depthCap})]
+            // }
+            // else
+            // {
+            //     {target} = null;
+            // }
+            sb.append(indent).append("if (depth > 0)\n");
+            sb.append(indent).append("{\n");
+            sb.append(indent).append(CODE_INDENT).append(target).append(" = new ").append(member.getImplName())
+                .append("(this, \"").append(memberName).append("\", ");
+            if (member.getDepthCap() != FieldDepthPlanner.NO_CAP)
+            {
+                sb.append("Math.min(depth-1, ").append(member.getDepthCap()).append("));\n");
+            }
+            else
+            {
+                sb.append("depth-1);\n");
+            }
+            sb.append(indent).append("}\n");
+            if (assignNull)
+            {
+                sb.append(indent).append("else\n");
+                sb.append(indent).append("{\n");
+                sb.append(indent).append(CODE_INDENT).append(target).append(" = null;\n");
+                sb.append(indent).append("}\n");
+            }
+        }
+        else
+        {
+            // {target} = new {ImplType}(this, memberName);
+            sb.append(indent).append(target);
+            sb.append(" = new ").append(member.getImplName()).append("(this, \"").append(memberName).append("\");\n");
+        }
+    }
+
+    /**
+     * Method to return the members to create in each init method, when the initialisation of all members in a constructor
+     * would exceed the size of method that HotSpot will JIT compile ("HugeMethodLimit", 8000 bytes of bytecode), or at the extreme
+     * the 64KB limit of a method. Each init method is kept under INIT_METHOD_BYTECODE_LIMIT, from an estimate of the bytecode of each
+     * member creation. The constructors then only call the init methods (about 6 bytes of bytecode per init method), so are small
+     * whatever the number of members. Since the init methods set the fields, the fields of such a Q class are not final; its
+     * instances are still published safely, by the initialisation of CandidateHolder or by the caches.
+     * @param model Model of the Q class
+     * @return The members for each init method, or null if the members are initialised in the constructors
+     */
+    protected List<List<Member>> getMemberInitChunks(QClassModel model)
+    {
+        int totalSize = 0;
+        for (Member member : model.getMembers())
+        {
+            totalSize += estimateInitBytecodeSize(member);
+        }
+        if (totalSize <= CONSTRUCTOR_BYTECODE_LIMIT)
+        {
+            return null;
+        }
+
+        List<List<Member>> chunks = new ArrayList<>();
+        List<Member> chunk = new ArrayList<>();
+        int chunkSize = 0;
+        for (Member member : model.getMembers())
+        {
+            int size = estimateInitBytecodeSize(member);
+            if (chunkSize + size > INIT_METHOD_BYTECODE_LIMIT && !chunk.isEmpty())
+            {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkSize = 0;
+            }
+            chunk.add(member);
+            chunkSize += size;
+        }
+        chunks.add(chunk);
+        return chunks;
+    }
+
+    /**
+     * Convenience method to estimate the bytecode size of the initialisation of a member (see #addMemberInitialisation), allowing for
+     * wide constant pool indexes.
+     * @param member The member
+     * @return The estimated size (bytes)
+     */
+    protected static int estimateInitBytecodeSize(Member member)
+    {
+        if (!member.isPersistable())
+        {
+            // aload_0, new, dup, aload_0, ldc_w, invokespecial, putfield
+            return 16;
+        }
+        else if (member.isAlwaysCreated())
+        {
+            // aload_0, new, dup, aload_0, ldc_w, iconst_0, invokespecial, putfield
+            return 17;
+        }
+        // iload, ifle, aload_0, new, dup, aload_0, ldc_w, iload, iconst_1, isub, [bipush, invokestatic], invokespecial, putfield,
+        // goto, aload_0, aconst_null, putfield (or, in an init method, the array store without the else branch)
+        return (member.getDepthCap() != FieldDepthPlanner.NO_CAP ? 40 : 35);
+    }
+
+    /**
+     * Method to add the code for the methods creating the members, when not created in the constructors.
+     * <pre>
+     * private void jdoInitMembers{n}(int depth)
+     * {
+     *     this.{field} = ... creation of each member ...
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param initChunks The members created by each method
+     */
+    protected void addMemberInitMethods(StringBuilder sb, String indent, List<List<Member>> initChunks)
+    {
+        for (int i = 0; i < initChunks.size(); i++)
+        {
+            sb.append("\n");
+            sb.append(indent).append("private void jdoInitMembers").append(i).append("(int depth)\n");
+            sb.append(indent).append("{\n");
+            for (Member member : initChunks.get(i))
+            {
+                // The fields are not final, so are already null when not created
+                addMemberInitialisation(sb, indent + CODE_INDENT, member, "this." + member.getName(), false);
+            }
+            sb.append(indent).append("}\n");
+        }
+    }
+
+    /**
+     * Method to add the code to a constructor to initialise the fields using the init methods.
+     * <pre>
+     * jdoInitMembers{n}({depth});
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param initChunks The members created by each init method
+     * @param depth The depth to create the members with
+     */
+    protected void addMemberInitCalls(StringBuilder sb, String indent, List<List<Member>> initChunks, String depth)
+    {
+        for (int i = 0; i < initChunks.size(); i++)
+        {
+            sb.append(indent).append("jdoInitMembers").append(i).append("(").append(depth).append(");\n");
+        }
+    }
+
+    /**
+     * Method to add the code for a constructor taking in (PersistableExpression parent, String name).
+     * This is used by the lazy accessors when navigating to a related Q class, and initialises no members since
+     * they are created on first access, hence has no limit on depth and is safe with cyclic relations.
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param qclassNameSimple Simple name of the QClass that this is constructing
+     */
+    protected void addConstructorWithParent(StringBuilder sb, String indent, String qclassNameSimple)
+    {
+        sb.append(indent).append("public ").append(qclassNameSimple).append("(").append(PersistableExpression.class.getSimpleName()).append(" parent, String name)\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("super(parent, name);\n");
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for a constructor taking in (Class type, String name, ExpressionType exprType).
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass that this is constructing
+     */
+    protected void addConstructorWithType(StringBuilder sb, String indent, QClassModel model)
+    {
+        List<List<Member>> initChunks = (queryMode == JDOQueryProcessor.MODE_FIELD ? getMemberInitChunks(model) : null);
+        sb.append(indent).append("public ").append(model.getQClassNameSimple()).append("(").append(Class.class.getSimpleName()).append("<?> type, String name, ExpressionType exprType)\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("super(type, name, exprType);\n");
+        if (initChunks != null)
+        {
+            // Initialise all fields using the init methods, with a depth such that related Q classes have the depth of this class
+            addMemberInitCalls(sb, indent + CODE_INDENT, initChunks, String.valueOf(model.getFieldDepth() + 1));
+        }
+        else if (queryMode == JDOQueryProcessor.MODE_FIELD)
+        {
+            // Initialise all fields
+            for (Member member : model.getMembers())
+            {
+                String memberName = member.getName();
+                if (member.isPersistable())
+                {
+                    // this.{field} = new {ImplType}(this, memberName, fieldDepth);
+                    int depth = model.getFieldDepth();
+                    if (member.isAlwaysCreated())
+                    {
+                        depth = 0;
+                    }
+                    else if (member.getDepthCap() != FieldDepthPlanner.NO_CAP)
+                    {
+                        depth = Math.min(depth, member.getDepthCap());
+                    }
+                    sb.append(indent).append(CODE_INDENT).append("this.").append(memberName).append(" = new ").append(member.getImplName())
+                        .append("(this, \"").append(memberName).append("\", ").append(depth).append(");\n");
+                }
+                else
+                {
+                    // this.{field} = new {ImplType}(this, memberName);
+                    sb.append(indent).append(CODE_INDENT).append("this.").append(memberName).append(" = new ").append(member.getImplName())
+                        .append("(this, \"").append(memberName).append("\");\n");
+                }
+            }
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for the accessor of a member in FLYWEIGHT mode, creating the expression for the member on each call so
+     * that a Q class holds no expressions for its members, and only those navigated to (when building a query) are ever created.
+     * <pre>
+     * public {type} {memberName}()
+     * {
+     *     return new {implClassName}(this, "{memberName}");
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent The indent to use
+     * @param member The member we are generating for
+     */
+    protected void addFlyweightAccessorMethod(StringBuilder sb, String indent, Member member)
+    {
+        String memberName = member.getName();
+        sb.append(indent).append("public ").append(member.getInterfaceName()).append(" ").append(memberName).append("()\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent).append(CODE_INDENT).append("return new ").append(member.getImplName()).append("(this, \"").append(memberName).append("\");\n");
+        sb.append(indent).append("}\n");
+    }
+
+    /**
+     * Method to add the code for the array holding the members in PROPERTY mode, and the VarHandle used to access its elements.
+     * <pre>
+     * private static final java.lang.invoke.VarHandle jdoMembersHandle = java.lang.invoke.MethodHandles.arrayElementVarHandle(Expression[].class);
+     *
+     * private final Expression&lt;?&gt;[] jdoMembers = new Expression&lt;?&gt;[{numberOfMembers}];
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent Indent to apply to the code
+     * @param model Model of the QClass
+     */
+    protected void addLazyMemberArray(StringBuilder sb, String indent, QClassModel model)
+    {
+        sb.append(indent).append("private static final java.lang.invoke.VarHandle jdoMembersHandle = ");
+        sb.append("java.lang.invoke.MethodHandles.arrayElementVarHandle(Expression[].class);\n");
+        sb.append("\n");
+        sb.append(indent).append("private final Expression<?>[] jdoMembers = new Expression<?>[").append(model.getMembers().size()).append("];\n");
+    }
+
+    /**
+     * Generate accessor for a property.
+     * The member is created on first access and held in the member array, read with acquire semantics (a plain load on x86 and
+     * similar) so a thread seeing the member also sees it fully constructed. Concurrent first access never blocks : racing threads
+     * may each create the expression, but only the first is published by the compare-and-exchange and all of them return that one.
+     * <pre>
+     * public {type} {memberName}()
+     * {
+     *     {type} result = ({type})jdoMembersHandle.getAcquire(jdoMembers, {position});
+     *     if (result == null)
+     *     {
+     *         {type} created = new {implClassName}(this, "{memberName}");
+     *         result = ({type})jdoMembersHandle.compareAndExchange(jdoMembers, {position}, (Expression&lt;?&gt;)null, created);
+     *         if (result == null)
+     *         {
+     *             result = created;
+     *         }
+     *     }
+     *     return result;
+     * }
+     * </pre>
+     * @param sb The buffer to append to
+     * @param indent The indent to use
+     * @param member The member we are generating for
+     * @param position Position of the member in the member array
+     */
+    protected void addPropertyAccessorMethod(StringBuilder sb, String indent, Member member, int position)
+    {
+        String memberName = member.getName();
+        String typeName = member.getInterfaceName();
+        String indent2 = indent + CODE_INDENT;
+        String indent3 = indent2 + CODE_INDENT;
+        if (typeName.indexOf('<') > 0)
+        {
+            sb.append(indent).append("@SuppressWarnings(\"unchecked\")\n");
+        }
+        sb.append(indent).append("public ").append(typeName).append(" ").append(memberName).append("()\n");
+        sb.append(indent).append("{\n");
+        sb.append(indent2).append(typeName).append(" result = (").append(typeName).append(")jdoMembersHandle.getAcquire(jdoMembers, ").append(position).append(");\n");
+        sb.append(indent2).append("if (result == null)\n");
+        sb.append(indent2).append("{\n");
+        sb.append(indent3).append(typeName).append(" created = new ").append(member.getImplName()).append("(this, \"").append(memberName).append("\");\n");
+        sb.append(indent3).append("result = (").append(typeName).append(")jdoMembersHandle.compareAndExchange(jdoMembers, ").append(position).append(", (Expression<?>)null, created);\n");
+        sb.append(indent3).append("if (result == null)\n");
+        sb.append(indent3).append("{\n");
+        sb.append(indent3).append(CODE_INDENT).append("result = created;\n");
+        sb.append(indent3).append("}\n");
+        sb.append(indent2).append("}\n");
+        sb.append(indent2).append("return result;\n");
+        sb.append(indent).append("}\n");
+    }
+}
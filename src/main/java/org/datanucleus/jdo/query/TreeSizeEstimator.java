@@ -0,0 +1,262 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Estimator for the number of expression objects ("nodes") that the constructors of a generated Q class build, following the
+ * same depth rules as the generated code (see FieldDepthPlanner). In FIELD mode a candidate builds an expression for every member,
+ * recursing into the related Q classes, so the size grows exponentially with the depth and the number of relations; in the other
+ * modes the members are created on access so a constructor builds a single node.
+ * The estimates are memoised per class and depth for the round, and saturate at Long.MAX_VALUE rather than overflow.
+ */
+public class TreeSizeEstimator
+{
+    /**
+     * Estimate of the expression nodes built by the constructors of a Q class.
+     */
+    public static class Estimate
+    {
+        final String className;
+        final long candidateNodes;
+        final long typeNodes;
+
+        Estimate(String className, long candidateNodes, long typeNodes)
+        {
+            this.className = className;
+            this.candidateNodes = candidateNodes;
+            this.typeNodes = typeNodes;
+        }
+
+        public String getClassName()
+        {
+            return className;
+        }
+
+        /**
+         * Accessor for the number of nodes built by candidate(), using the constructor taking a parent and depth.
+         * @return The number of nodes
+         */
+        public long getCandidateNodes()
+        {
+            return candidateNodes;
+        }
+
+        /**
+         * Accessor for the number of nodes built by parameter() and variable(), using the constructor taking a type.
+         * @return The number of nodes
+         */
+        public long getTypeNodes()
+        {
+            return typeNodes;
+        }
+    }
+
+    private final TypeMetadataCache typeMetadata;
+
+    private final FieldDepthPlanner fieldDepthPlanner;
+
+    private final int queryMode;
+
+    /** Number of nodes built by the constructor taking a depth, keyed by class then depth. */
+    private final Map<TypeElement, Map<Integer, Long>> nodesByTypeAndDepth = new HashMap<>();
+
+    private final List<Estimate> estimates = new ArrayList<>();
+
+    /**
+     * Constructor for an estimator.
+     * @param typeMetadata Metadata for the types
+     * @param fieldDepthPlanner Planner for the depth of related Q classes
+     * @param queryMode The query mode
+     */
+    public TreeSizeEstimator(TypeMetadataCache typeMetadata, FieldDepthPlanner fieldDepthPlanner, int queryMode)
+    {
+        this.typeMetadata = typeMetadata;
+        this.fieldDepthPlanner = fieldDepthPlanner;
+        this.queryMode = queryMode;
+    }
+
+    /**
+     * Method to clear the memoised estimates, to be called at the start of each processing round.
+     * The recorded estimates are retained for the report.
+     */
+    public void clear()
+    {
+        nodesByTypeAndDepth.clear();
+    }
+
+    /**
+     * Method to estimate the nodes built by the constructors of the Q class of the specified class, and record it for the report.
+     * @param el The class
+     * @param className Name of the class to report
+     * @return The estimate
+     */
+    public Estimate estimate(TypeElement el, String className)
+    {
+        Estimate estimate;
+        if (queryMode == JDOQueryProcessor.MODE_FIELD)
+        {
+            estimate = new Estimate(className, getNodes(el, fieldDepthPlanner.getClassDepth(el)), getTypeNodes(el));
+        }
+        else
+        {
+            estimate = new Estimate(className, 1, 1);
+        }
+        estimates.add(estimate);
+        return estimate;
+    }
+
+    /**
+     * Method to return the nodes built by the constructor taking (parent, name, depth) of the Q class of the specified class.
+     * @param el The class
+     * @param depth The depth
+     * @return The number of nodes
+     */
+    private long getNodes(TypeElement el, int depth)
+    {
+        Map<Integer, Long> nodesByDepth = nodesByTypeAndDepth.get(el);
+        if (nodesByDepth == null)
+        {
+            nodesByDepth = new HashMap<>();
+            nodesByTypeAndDepth.put(el, nodesByDepth);
+        }
+        Long nodes = nodesByDepth.get(depth);
+        if (nodes != null)
+        {
+            return nodes;
+        }
+
+        // This node, plus the members of this class and (via the super constructor) its persistable supertypes
+        long total = 1;
+        TypeElement currentEl = el;
+        while (currentEl != null)
+        {
+            for (Element member : typeMetadata.getPersistentMembers(currentEl))
+            {
+                if (member.getKind() != ElementKind.FIELD)
+                {
+                    continue;
+                }
+
+                TypeElement relatedEl = fieldDepthPlanner.getRelatedType(member);
+                if (relatedEl == null)
+                {
+                    total = add(total, 1);
+                }
+                else
+                {
+                    String memberName = member.getSimpleName().toString();
+                    if (fieldDepthPlanner.isAlwaysCreated(currentEl, memberName, relatedEl))
+                    {
+                        total = add(total, getNodes(relatedEl, 0));
+                    }
+                    else if (depth > 0)
+                    {
+                        int cap = fieldDepthPlanner.getDepthCap(currentEl, memberName, relatedEl);
+                        total = add(total, getNodes(relatedEl, cap != FieldDepthPlanner.NO_CAP ? Math.min(depth - 1, cap) : depth - 1));
+                    }
+                }
+            }
+            currentEl = typeMetadata.getPersistentSupertype(currentEl);
+        }
+
+        nodesByDepth.put(depth, total);
+        return total;
+    }
+
+    /**
+     * Method to return the nodes built by the constructor taking (type, name, exprType) of the Q class of the specified class.
+     * Each class in the hierarchy creates its relations using its own depth.
+     * @param el The class
+     * @return The number of nodes
+     */
+    private long getTypeNodes(TypeElement el)
+    {
+        long total = 1;
+        TypeElement currentEl = el;
+        while (currentEl != null)
+        {
+            int depth = fieldDepthPlanner.getClassDepth(currentEl);
+            for (Element member : typeMetadata.getPersistentMembers(currentEl))
+            {
+                if (member.getKind() != ElementKind.FIELD)
+                {
+                    continue;
+                }
+
+                TypeElement relatedEl = fieldDepthPlanner.getRelatedType(member);
+                if (relatedEl == null)
+                {
+                    total = add(total, 1);
+                }
+                else
+                {
+                    String memberName = member.getSimpleName().toString();
+                    int cap = fieldDepthPlanner.getDepthCap(currentEl, memberName, relatedEl);
+                    if (fieldDepthPlanner.isAlwaysCreated(currentEl, memberName, relatedEl))
+                    {
+                        total = add(total, getNodes(relatedEl, 0));
+                    }
+                    else
+                    {
+                        total = add(total, getNodes(relatedEl, cap != FieldDepthPlanner.NO_CAP ? Math.min(depth, cap) : depth));
+                    }
+                }
+            }
+            currentEl = typeMetadata.getPersistentSupertype(currentEl);
+        }
+        return total;
+    }
+
+    private static long add(long a, long b)
+    {
+        long sum = a + b;
+        return (sum < 0 ? Long.MAX_VALUE : sum);
+    }
+
+    /**
+     * Accessor for the estimates recorded (for all rounds) in JSON form.
+     * @return The JSON
+     */
+    public String toJson()
+    {
+        StringBuilder sb = new StringBuilder(64 + estimates.size() * 100);
+        sb.append("{\n");
+        sb.append("  \"classes\": [");
+        boolean first = true;
+        for (Estimate estimate : estimates)
+        {
+            sb.append(first ? "\n" : ",\n");
+            sb.append("    {\"class\": ").append(ProcessorStats.toJsonString(estimate.className));
+            sb.append(", \"candidateNodes\": ").append(estimate.candidateNodes);
+            sb.append(", \"typeNodes\": ").append(estimate.typeNodes).append("}");
+            first = false;
+        }
+        sb.append(first ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
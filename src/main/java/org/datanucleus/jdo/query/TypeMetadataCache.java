@@ -0,0 +1,253 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.jdo.annotations.NotPersistent;
+import javax.jdo.annotations.PersistenceCapable;
+import javax.jdo.annotations.PersistenceModifier;
+import javax.jdo.annotations.Persistent;
+import javax.jdo.annotations.Transactional;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Cache of the metadata for types that is needed when generating Q classes, namely whether a type is persistable,
+ * its persistent supertype, and its persistent members. Each is derived once per type, rather than each time a type is
+ * referenced as a member type, an inner class or a supertype in a hierarchy.
+ * The elements are only valid for a single processing round, so the cache must be cleared at the start of each round.
+ */
+public class TypeMetadataCache
+{
+    private final ProcessingEnvironment processingEnv;
+
+    private final Map<TypeElement, Boolean> persistableByType = new HashMap<>();
+
+    /** Persistent supertype of each type, with a null value when there is no persistent supertype. */
+    private final Map<TypeElement, TypeElement> persistentSupertypeByType = new HashMap<>();
+
+    private final Map<TypeElement, List<? extends Element>> persistentMembersByType = new HashMap<>();
+
+    private final Map<TypeElement, List<String>> managedFieldNamesByType = new HashMap<>();
+
+    public TypeMetadataCache(ProcessingEnvironment processingEnv)
+    {
+        this.processingEnv = processingEnv;
+    }
+
+    /**
+     * Method to clear all cached metadata, to be called at the start of each processing round.
+     */
+    public void clear()
+    {
+        persistableByType.clear();
+        persistentSupertypeByType.clear();
+        persistentMembersByType.clear();
+        managedFieldNamesByType.clear();
+    }
+
+    /**
+     * Accessor for whether the specified type is persistable.
+     * @param el The type
+     * @return Whether it is persistable
+     */
+    public boolean isPersistable(TypeElement el)
+    {
+        if (el == null)
+        {
+            return false;
+        }
+
+        Boolean persistable = persistableByType.get(el);
+        if (persistable == null)
+        {
+            // Check the annotation mirrors rather than el.getAnnotation() which creates a proxy for the annotation
+            persistable = Boolean.FALSE;
+            for (AnnotationMirror annot : el.getAnnotationMirrors())
+            {
+                if (((TypeElement)annot.getAnnotationType().asElement()).getQualifiedName().contentEquals(PersistenceCapable.class.getName()))
+                {
+                    persistable = Boolean.TRUE;
+                    break;
+                }
+            }
+            // TODO Also allow for types that are specified as persistable in XML
+            persistableByType.put(el, persistable);
+        }
+        return persistable;
+    }
+
+    /**
+     * Method to find the next persistent supertype above this one.
+     * @param el The type
+     * @return Its next parent that is persistable (or null if no persistable predecessors)
+     */
+    public TypeElement getPersistentSupertype(TypeElement el)
+    {
+        if (persistentSupertypeByType.containsKey(el))
+        {
+            return persistentSupertypeByType.get(el);
+        }
+
+        TypeElement persistentSuperEl = null;
+        TypeMirror superType = el.getSuperclass();
+        if (superType != null && !Object.class.getName().equals(el.toString()))
+        {
+            TypeElement superEl = (TypeElement) processingEnv.getTypeUtils().asElement(superType);
+            if (superEl == null || isPersistable(superEl))
+            {
+                persistentSuperEl = superEl;
+            }
+            else
+            {
+                persistentSuperEl = getPersistentSupertype(superEl);
+            }
+        }
+        persistentSupertypeByType.put(el, persistentSuperEl);
+        return persistentSuperEl;
+    }
+
+    /**
+     * Method to return the persistable members for the specified class.
+     * @param el The class (TypeElement)
+     * @return The members that are persistable (Element)
+     */
+    public List<? extends Element> getPersistentMembers(TypeElement el)
+    {
+        List<? extends Element> members = persistentMembersByType.get(el);
+        if (members == null)
+        {
+            members = AnnotationProcessorUtils.getFieldMembers(el); // All fields needed
+
+            // Remove any non-persistent members
+            Iterator<? extends Element> iter = members.iterator();
+            while (iter.hasNext())
+            {
+                Element member = iter.next();
+                boolean persistent = true;
+
+                if (member.getModifiers().contains(Modifier.STATIC))
+                {
+                    // Don't include static member in Q class
+                    persistent = false;
+                }
+                else
+                {
+                    List<? extends AnnotationMirror> annots = member.getAnnotationMirrors();
+                    if (annots != null)
+                    {
+                        Iterator<? extends AnnotationMirror> annotIter = annots.iterator();
+                        while (annotIter.hasNext())
+                        {
+                            AnnotationMirror annot = annotIter.next();
+                            if (annot.getAnnotationType().toString().equals(NotPersistent.class.getName()))
+                            {
+                                // Ignore this
+                                persistent = false;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (!persistent)
+                {
+                    iter.remove();
+                }
+            }
+
+            members = Collections.unmodifiableList(members);
+            persistentMembersByType.put(el, members);
+        }
+        return members;
+    }
+
+    /**
+     * Method to return the names of the fields managed by JDO that are declared in the specified class, in the order that the
+     * DataNucleus enhancer numbers them (by name), so the (absolute) field number of each is its index here plus the number of
+     * managed fields of the persistent supertypes. A field is managed when persistent or transactional, which by default excludes
+     * static, final and transient fields, unless transient and marked as @Persistent or @Transactional.
+     * @param el The class
+     * @return Names of the managed fields
+     */
+    public List<String> getManagedFieldNames(TypeElement el)
+    {
+        List<String> names = managedFieldNamesByType.get(el);
+        if (names == null)
+        {
+            names = new ArrayList<>();
+            for (Element member : el.getEnclosedElements())
+            {
+                if (member.getKind() != ElementKind.FIELD || member.getModifiers().contains(Modifier.STATIC) || member.getModifiers().contains(Modifier.FINAL))
+                {
+                    continue;
+                }
+
+                Boolean managed = null;
+                for (AnnotationMirror annot : member.getAnnotationMirrors())
+                {
+                    String annotName = annot.getAnnotationType().toString();
+                    if (annotName.equals(NotPersistent.class.getName()))
+                    {
+                        managed = Boolean.FALSE;
+                    }
+                    else if (annotName.equals(Transactional.class.getName()))
+                    {
+                        managed = Boolean.TRUE;
+                    }
+                    else if (annotName.equals(Persistent.class.getName()))
+                    {
+                        managed = Boolean.TRUE;
+                        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annot.getElementValues().entrySet())
+                        {
+                            if (entry.getKey().getSimpleName().contentEquals("persistenceModifier") &&
+                                entry.getValue().getValue().toString().equals(PersistenceModifier.NONE.name()))
+                            {
+                                managed = Boolean.FALSE;
+                            }
+                        }
+                    }
+                }
+                if (managed == null)
+                {
+                    managed = !member.getModifiers().contains(Modifier.TRANSIENT);
+                }
+                if (managed)
+                {
+                    names.add(member.getSimpleName().toString());
+                }
+            }
+            Collections.sort(names);
+            names = Collections.unmodifiableList(names);
+            managedFieldNamesByType.put(el, names);
+        }
+        return names;
+    }
+}
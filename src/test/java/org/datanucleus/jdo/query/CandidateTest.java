@@ -0,0 +1,201 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the default candidate of the Q classes, created on first use by "candidate()" and also available (when "candidateField"
+ * is true) from the deprecated static field "jdoCandidate".
+ */
+public class CandidateTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestCompilation compileCyclicClasses(String candidateField)
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Department", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Department",
+                "{",
+                "    String name;",
+                "    Employee manager;",
+                "}")
+            .source("mydomain.Employee", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Employee",
+                "{",
+                "    String name;",
+                "    Department department;",
+                "}");
+        if (candidateField != null)
+        {
+            compilation.option(JDOQueryProcessor.OPTION_CANDIDATE_FIELD, candidateField);
+        }
+        compilation.compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        return compilation;
+    }
+
+    @Test
+    public void testCandidateFieldIsDefaultCandidate()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compileCyclicClasses("true");
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QDepartment");
+            Field field = qcls.getField("jdoCandidate");
+            assertTrue(Modifier.isStatic(field.getModifiers()) && Modifier.isFinal(field.getModifiers()));
+            assertTrue(field.isAnnotationPresent(Deprecated.class));
+
+            Object candidate = qcls.getMethod("candidate").invoke(null);
+            assertNotNull(candidate);
+            assertSame(candidate, field.get(null));
+            assertSame(candidate, qcls.getMethod("candidate").invoke(null));
+            assertNotSame(candidate, qcls.getMethod("candidate", String.class).invoke(null, "d"));
+        }
+    }
+
+    @Test
+    public void testCandidateFieldOmittedByDefault()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compileCyclicClasses(null);
+        assertFalse(compilation.getGeneratedSource("mydomain.QDepartment").contains(" jdoCandidate "));
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QDepartment");
+            Object candidate = qcls.getMethod("candidate").invoke(null);
+            assertNotNull(candidate);
+            assertSame(candidate, qcls.getMethod("candidate").invoke(null));
+        }
+    }
+
+    /**
+     * Class loader recording the (generated) classes that it loads, which are those not found by its parent.
+     */
+    private static class RecordingClassLoader extends URLClassLoader
+    {
+        final Set<String> loaded = Collections.synchronizedSet(new HashSet<>());
+
+        RecordingClassLoader(TestCompilation compilation)
+        throws MalformedURLException
+        {
+            super(new URL[] {compilation.getClassOutput().toUri().toURL()}, CandidateTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> findClass(String name)
+        throws ClassNotFoundException
+        {
+            loaded.add(name);
+            return super.findClass(name);
+        }
+    }
+
+    @Test
+    public void testInitialisationDoesNotCreateCandidate()
+    throws IOException, ReflectiveOperationException
+    {
+        try (RecordingClassLoader loader = new RecordingClassLoader(compileCyclicClasses(null)))
+        {
+            // Initialising the Q class doesn't initialise the holder of the candidate, nor load the related Q classes
+            Class<?> qcls = Class.forName("mydomain.QDepartment", true, loader);
+            assertFalse(loader.loaded.toString(), loader.loaded.contains("mydomain.QDepartment$CandidateHolder"));
+            assertFalse(loader.loaded.toString(), loader.loaded.contains("mydomain.QEmployee"));
+
+            assertNotNull(qcls.getMethod("candidate").invoke(null));
+            assertTrue(loader.loaded.toString(), loader.loaded.contains("mydomain.QDepartment$CandidateHolder"));
+            assertTrue(loader.loaded.toString(), loader.loaded.contains("mydomain.QEmployee"));
+        }
+
+        try (RecordingClassLoader loader = new RecordingClassLoader(compileCyclicClasses("true")))
+        {
+            // The deprecated field creates the candidate, and its related Q classes, when the Q class is initialised
+            Class.forName("mydomain.QDepartment", true, loader);
+            assertTrue(loader.loaded.toString(), loader.loaded.contains("mydomain.QDepartment$CandidateHolder"));
+            assertTrue(loader.loaded.toString(), loader.loaded.contains("mydomain.QEmployee"));
+        }
+    }
+
+    @Test
+    public void testConcurrentInitialisationOfCyclicClasses()
+    throws Exception
+    {
+        TestCompilation compilation = compileCyclicClasses(null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                // Initialise each of the Q classes of the cycle on its own thread, in a fresh class loader each time
+                try (URLClassLoader loader = compilation.newClassLoader())
+                {
+                    CyclicBarrier barrier = new CyclicBarrier(2);
+                    List<Future<Object>> results = new ArrayList<>();
+                    for (String qclassName : new String[] {"mydomain.QDepartment", "mydomain.QEmployee"})
+                    {
+                        results.add(executor.submit(() -> {
+                            barrier.await();
+                            return Class.forName(qclassName, true, loader).getMethod("candidate").invoke(null);
+                        }));
+                    }
+                    for (Future<Object> result : results)
+                    {
+                        assertNotNull(result.get(30, TimeUnit.SECONDS));
+                    }
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
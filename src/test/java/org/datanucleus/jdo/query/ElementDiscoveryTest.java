@@ -0,0 +1,152 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the discovery of the persistable classes to generate Q classes for, from the classes annotated as PersistenceCapable.
+ */
+public class ElementDiscoveryTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyPersistableClassesGenerated()
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Person", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Person",
+                "{",
+                "    String name;",
+                "    Helper helper;",
+                "}")
+            .source("mydomain.Helper", "package mydomain;",
+                "public class Helper",
+                "{",
+                "    String value;",
+                "}")
+            .source("other.Service", "package other;",
+                "public class Service",
+                "{",
+                "    mydomain.Person find(String name) { return null; }",
+                "}")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertEquals(Collections.singleton("mydomain.QPerson"), compilation.getOriginatingElements().keySet());
+    }
+
+    @Test
+    public void testNestedPersistableClassInlinedOnce()
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Order", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Order",
+                "{",
+                "    Line firstLine;",
+                "    @javax.jdo.annotations.PersistenceCapable",
+                "    public static class Line",
+                "    {",
+                "        int quantity;",
+                "    }",
+                "    @javax.jdo.annotations.PersistenceCapable",
+                "    public static class Payment",
+                "    {",
+                "        double amount;",
+                "    }",
+                "}")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertEquals(Collections.singleton("mydomain.QOrder"), compilation.getOriginatingElements().keySet());
+        String source = compilation.getGeneratedSource("mydomain.QOrder");
+        assertTrue(source.contains("public static class QLine"));
+        assertTrue(source.contains("public static class QPayment"));
+    }
+
+    @Test
+    public void testGenerationReportedAsNote()
+    throws IOException
+    {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        TestCompilation compilation;
+        System.setOut(new PrintStream(captured, true, "UTF-8"));
+        try
+        {
+            compilation = new TestCompilation(folder.newFolder().toPath())
+                .source("mydomain.Person", "package mydomain;",
+                    "@javax.jdo.annotations.PersistenceCapable",
+                    "public class Person",
+                    "{",
+                    "    String name;",
+                    "}")
+                .compile();
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+        assertTrue(compilation.succeeded());
+        assertEquals("", captured.toString("UTF-8"));
+        assertTrue(compilation.getMessages(Diagnostic.Kind.NOTE).contains("DataNucleus : JDOQLTypedQuery Q class generation : mydomain.Person -> mydomain.QPerson"));
+    }
+
+    @Test
+    public void testNestedPersistableClassOfNonPersistableClassIgnored()
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Holder", "package mydomain;",
+                "public class Holder",
+                "{",
+                "    @javax.jdo.annotations.PersistenceCapable",
+                "    public static class Item",
+                "    {",
+                "        String name;",
+                "    }",
+                "}")
+            .source("mydomain.Store", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Store",
+                "{",
+                "    String name;",
+                "}")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertEquals(Collections.singleton("mydomain.QStore"), compilation.getOriginatingElements().keySet());
+        assertFalse(compilation.getGeneratedSource("mydomain.QStore").contains("QItem"));
+    }
+}
@@ -0,0 +1,162 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.jdo.query.BooleanExpression;
+import javax.tools.Diagnostic;
+
+import org.datanucleus.api.jdo.query.BooleanExpressionImpl;
+import org.datanucleus.api.jdo.query.ExpressionImpl;
+import org.datanucleus.store.query.expression.DyadicExpression;
+import org.datanucleus.store.query.expression.Expression;
+import org.datanucleus.store.query.expression.Literal;
+import org.datanucleus.store.query.expression.PrimaryExpression;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the Evaluator of the Q classes, compiling filters on the members of the candidate into Predicates ("evaluators").
+ */
+public class EvaluatorTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private URLClassLoader loader;
+
+    private URLClassLoader compile()
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Person", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Person",
+                "{",
+                "    String name;",
+                "    int age;",
+                "    Person manager;",
+                "    public Person(String name, int age, Person manager)",
+                "    {",
+                "        this.name = name;",
+                "        this.age = age;",
+                "        this.manager = manager;",
+                "    }",
+                "}")
+            .option(JDOQueryProcessor.OPTION_EVALUATORS, "true")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        return compilation.newClassLoader();
+    }
+
+    private static Expression greaterThan(Expression member, int value)
+    {
+        return new DyadicExpression(member, Expression.OP_GT, new Literal(value));
+    }
+
+    private static Expression member(String... tuples)
+    {
+        return new PrimaryExpression(Arrays.asList(tuples));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<Object> compile(Expression filter)
+    throws ReflectiveOperationException
+    {
+        return (Predicate<Object>)loader.loadClass("mydomain.QPerson$Evaluator").getMethod("compile", BooleanExpression.class)
+            .invoke(null, new BooleanExpressionImpl(filter));
+    }
+
+    private Object newPerson(String name, int age, Object manager)
+    throws ReflectiveOperationException
+    {
+        Class<?> cls = loader.loadClass("mydomain.Person");
+        return cls.getConstructor(String.class, int.class, cls).newInstance(name, age, manager);
+    }
+
+    @Test
+    public void testMemberOfCandidateCompiled()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile())
+        {
+            this.loader = loader;
+            Predicate<Object> predicate = compile(greaterThan(member("this", "age"), 30));
+            assertNotNull(predicate);
+            assertTrue(predicate.test(newPerson("Fred", 40, null)));
+            assertFalse(predicate.test(newPerson("Bill", 20, null)));
+        }
+    }
+
+    @Test
+    public void testMemberOfOtherAliasNotCompiled()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile())
+        {
+            this.loader = loader;
+
+            // "manager.age" is the age of the manager, not of the candidate, so must be left to the query evaluator
+            assertNull(compile(greaterThan(member("manager", "age"), 30)));
+            assertNull(compile(greaterThan(member("other", "age"), 30)));
+            assertNull(compile(greaterThan(member("this", "manager", "age"), 30)));
+            assertNull(compile(new DyadicExpression(greaterThan(member("this", "age"), 30), Expression.OP_AND, greaterThan(member("p", "age"), 30))));
+        }
+    }
+
+    @Test
+    public void testCandidateAlias()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile())
+        {
+            this.loader = loader;
+            Class<?> qcls = loader.loadClass("mydomain.QPerson");
+            Method compile = loader.loadClass("mydomain.QPerson$Evaluator").getMethod("compile", qcls, BooleanExpression.class, Map.class);
+
+            // Filter built from candidate("p"), i.e "p.age > 30"
+            Object candidate = qcls.getMethod("candidate", String.class).invoke(null, "p");
+            Expression age = ((ExpressionImpl<?>)qcls.getField("age").get(candidate)).getQueryExpression();
+            Expression filter = greaterThan(age, 30);
+
+            @SuppressWarnings("unchecked")
+            Predicate<Object> predicate = (Predicate<Object>)compile.invoke(null, candidate, new BooleanExpressionImpl(filter), Collections.emptyMap());
+            assertNotNull(predicate);
+            assertTrue(predicate.test(newPerson("Fred", 40, null)));
+            assertFalse(predicate.test(newPerson("Bill", 20, null)));
+
+            // Not a filter on "this", nor on another candidate, nor on a parameter
+            assertNull(compile(filter));
+            assertNull(compile.invoke(null, qcls.getMethod("candidate", String.class).invoke(null, "q"), new BooleanExpressionImpl(filter), Collections.emptyMap()));
+            assertNull(compile.invoke(null, qcls.getMethod("parameter", String.class).invoke(null, "p"), new BooleanExpressionImpl(filter), Collections.emptyMap()));
+        }
+    }
+}
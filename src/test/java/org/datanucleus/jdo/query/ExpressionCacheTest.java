@@ -0,0 +1,207 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the caches of the candidates, parameters and variables of the Q classes by name ("expressionCache", "expressionCacheSize").
+ */
+public class ExpressionCacheTest
+{
+    private static final int THREAD_COUNT = 8;
+
+    private static final int ROUNDS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestCompilation compile(String option, String value)
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Item", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Item",
+                "{",
+                "    String name;",
+                "    Item parent;",
+                "}")
+            .option(option, value)
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        return compilation;
+    }
+
+    @Test
+    public void testCachedByNameAndExpressionType()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile(JDOQueryProcessor.OPTION_EXPRESSION_CACHE_SIZE, "4").newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QItem");
+            Method candidate = qcls.getMethod("candidate", String.class);
+            Method parameter = qcls.getMethod("parameter", String.class);
+            Method variable = qcls.getMethod("variable", String.class);
+
+            Object candidateA = candidate.invoke(null, "a");
+            assertSame(candidateA, candidate.invoke(null, "a"));
+            assertNotSame(candidateA, candidate.invoke(null, "b"));
+
+            Object parameterA = parameter.invoke(null, "a");
+            Object variableA = variable.invoke(null, "a");
+            assertSame(parameterA, parameter.invoke(null, "a"));
+            assertSame(variableA, variable.invoke(null, "a"));
+            assertNotSame(candidateA, parameterA);
+            assertNotSame(candidateA, variableA);
+            assertNotSame(parameterA, variableA);
+        }
+    }
+
+    @Test
+    public void testUnusedEvictedBeforeUsed()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile(JDOQueryProcessor.OPTION_EXPRESSION_CACHE_SIZE, "2").newClassLoader())
+        {
+            Method variable = loader.loadClass("mydomain.QItem").getMethod("variable", String.class);
+
+            Object variableA = variable.invoke(null, "a");
+            Object variableB = variable.invoke(null, "b");
+
+            // Use "a", so that "b" is the only one not used since being added when "c" is added
+            assertSame(variableA, variable.invoke(null, "a"));
+            Object variableC = variable.invoke(null, "c");
+
+            assertSame(variableA, variable.invoke(null, "a"));
+            assertSame(variableC, variable.invoke(null, "c"));
+            assertNotSame(variableB, variable.invoke(null, "b"));
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess()
+    throws Exception
+    {
+        try (URLClassLoader loader = compile(JDOQueryProcessor.OPTION_EXPRESSION_CACHE_SIZE, "4").newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QItem");
+            Method variable = qcls.getMethod("variable", String.class);
+            Field cacheField = qcls.getDeclaredField("jdoVariableCache");
+            cacheField.setAccessible(true);
+            Map<?, ?> cache = (Map<?, ?>)cacheField.get(null);
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+            try
+            {
+                // Names that fit in the cache, so all threads must get the same expression for a name, whoever created it
+                List<Future<Object[]>> results = new ArrayList<>();
+                CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+                for (int i = 0; i < THREAD_COUNT; i++)
+                {
+                    results.add(executor.submit(() -> {
+                        barrier.await();
+                        Object[] variables = new Object[4];
+                        for (int round = 0; round < ROUNDS; round++)
+                        {
+                            Object var = variable.invoke(null, "v" + (round % variables.length));
+                            if (variables[round % variables.length] == null)
+                            {
+                                variables[round % variables.length] = var;
+                            }
+                            assertSame(variables[round % variables.length], var);
+                        }
+                        return variables;
+                    }));
+                }
+                Object[] variables = results.get(0).get();
+                for (Future<Object[]> result : results)
+                {
+                    for (int j = 0; j < variables.length; j++)
+                    {
+                        assertNotNull(variables[j]);
+                        assertSame(variables[j], result.get()[j]);
+                    }
+                }
+
+                // More names than fit in the cache, so threads evict concurrently with others finding and adding
+                List<Future<?>> evictions = new ArrayList<>();
+                CyclicBarrier evictionBarrier = new CyclicBarrier(THREAD_COUNT);
+                for (int i = 0; i < THREAD_COUNT; i++)
+                {
+                    int thread = i;
+                    evictions.add(executor.submit(() -> {
+                        evictionBarrier.await();
+                        for (int round = 0; round < ROUNDS; round++)
+                        {
+                            assertNotNull(variable.invoke(null, "w" + ((round + thread) % 32)));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> eviction : evictions)
+                {
+                    eviction.get();
+                }
+                assertTrue(cache.toString(), cache.size() <= 4);
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testCacheDisabled()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compile(JDOQueryProcessor.OPTION_EXPRESSION_CACHE, "false");
+        assertFalse(compilation.getGeneratedSource("mydomain.QItem").contains("jdoCache"));
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QItem");
+            Method candidate = qcls.getMethod("candidate", String.class);
+            Method variable = qcls.getMethod("variable", String.class);
+            assertNotSame(candidate.invoke(null, "a"), candidate.invoke(null, "a"));
+            assertNotSame(variable.invoke(null, "a"), variable.invoke(null, "a"));
+        }
+    }
+}
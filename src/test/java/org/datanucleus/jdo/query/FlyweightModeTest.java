@@ -0,0 +1,203 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URLClassLoader;
+
+import javax.jdo.query.ListExpression;
+import javax.jdo.query.NumericExpression;
+import javax.jdo.query.StringExpression;
+import javax.tools.Diagnostic;
+
+import org.datanucleus.api.jdo.query.ExpressionImpl;
+import org.datanucleus.store.query.expression.PrimaryExpression;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the FLYWEIGHT query mode, where a Q class holds no member expressions and each accessor call creates the expression
+ * for the member.
+ */
+public class FlyweightModeTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] ADDRESS = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Address",
+        "{",
+        "    String city;",
+        "    Person occupant;",
+        "}"};
+
+    private static final String[] PERSON = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Person",
+        "{",
+        "    String name;",
+        "    int age;",
+        "    java.math.BigDecimal salary;",
+        "    java.util.Date born;",
+        "    Address address;",
+        "    Person spouse;",
+        "    java.util.List<Address> previousAddresses;",
+        "}"};
+
+    private TestCompilation compile(String queryMode)
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Person", PERSON)
+            .source("mydomain.Address", ADDRESS)
+            .option(JDOQueryProcessor.OPTION_MODE, queryMode)
+            .option(JDOQueryProcessor.OPTION_FIELD_DEPTH, "1")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertTrue(compilation.getMessages(Diagnostic.Kind.WARNING).toString(), compilation.getMessages(Diagnostic.Kind.WARNING).isEmpty());
+        return compilation;
+    }
+
+    private static String getPath(Object expr)
+    {
+        return ((PrimaryExpression)((ExpressionImpl<?>)expr).getQueryExpression()).getId();
+    }
+
+    @Test
+    public void testMembersCreatedOnEachAccess()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile("FLYWEIGHT").newClassLoader())
+        {
+            for (String className : new String[] {"mydomain.QPerson", "mydomain.QAddress"})
+            {
+                // A Q class holds nothing beyond what its superclass holds (its name and parent)
+                for (Field field : loader.loadClass(className).getDeclaredFields())
+                {
+                    assertTrue(field.toString(), Modifier.isStatic(field.getModifiers()));
+                }
+            }
+
+            Class<?> qcls = loader.loadClass("mydomain.QPerson");
+            Object candidate = qcls.getMethod("candidate").invoke(null);
+            Object name = qcls.getMethod("name").invoke(candidate);
+            assertTrue(name instanceof StringExpression);
+            assertTrue(qcls.getMethod("age").invoke(candidate) instanceof NumericExpression);
+            assertTrue(qcls.getMethod("salary").invoke(candidate) instanceof NumericExpression);
+            assertTrue(qcls.getMethod("previousAddresses").invoke(candidate) instanceof ListExpression);
+            assertTrue(loader.loadClass("mydomain.QAddress").isInstance(qcls.getMethod("address").invoke(candidate)));
+
+            // Each call creates a new expression, for the same path
+            Object nameAgain = qcls.getMethod("name").invoke(candidate);
+            assertNotSame(name, nameAgain);
+            assertEquals("this.name", getPath(name));
+            assertEquals(getPath(name), getPath(nameAgain));
+        }
+    }
+
+    @Test
+    public void testNavigationOfCyclicRelations()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader loader = compile("FLYWEIGHT").newClassLoader())
+        {
+            Class<?> qperson = loader.loadClass("mydomain.QPerson");
+            Class<?> qaddress = loader.loadClass("mydomain.QAddress");
+            Method spouse = qperson.getMethod("spouse");
+            Method address = qperson.getMethod("address");
+            Method occupant = qaddress.getMethod("occupant");
+
+            // Navigation isn't limited by the field depth, since nothing is created until navigated to
+            Object candidate = qperson.getMethod("candidate").invoke(null);
+            StringBuilder path = new StringBuilder("this");
+            Object person = candidate;
+            for (int i = 0; i < 20; i++)
+            {
+                person = spouse.invoke(person);
+                path.append(".spouse");
+                assertTrue(qperson.isInstance(person));
+                assertEquals(path.toString(), getPath(person));
+            }
+            assertEquals(path + ".name", getPath(qperson.getMethod("name").invoke(person)));
+
+            // Person -> Address -> Person cycle
+            Object related = candidate;
+            path = new StringBuilder("this");
+            for (int i = 0; i < 10; i++)
+            {
+                Object addr = address.invoke(related);
+                related = occupant.invoke(addr);
+                path.append(".address.occupant");
+                assertTrue(qaddress.isInstance(addr));
+                assertTrue(qperson.isInstance(related));
+                assertEquals(path.toString(), getPath(related));
+            }
+            assertNotNull(qaddress.getMethod("city").invoke(address.invoke(related)));
+
+            // Parameters and variables navigate the same way, relative to the parameter/variable
+            Object parameter = qperson.getMethod("parameter", String.class).invoke(null, "p");
+            assertEquals("spouse.spouse.name", getPath(qperson.getMethod("name").invoke(spouse.invoke(spouse.invoke(parameter)))));
+        }
+    }
+
+    @Test
+    public void testSameMembersAsFieldMode()
+    throws IOException, ReflectiveOperationException
+    {
+        try (URLClassLoader fieldLoader = compile("FIELD").newClassLoader(); URLClassLoader flyweightLoader = compile("FLYWEIGHT").newClassLoader())
+        {
+            for (String className : new String[] {"mydomain.QPerson", "mydomain.QAddress"})
+            {
+                Class<?> fieldCls = fieldLoader.loadClass(className);
+                Class<?> flyweightCls = flyweightLoader.loadClass(className);
+                Object fieldCandidate = fieldCls.getMethod("candidate").invoke(null);
+                Object flyweightCandidate = flyweightCls.getMethod("candidate").invoke(null);
+
+                int members = 0;
+                for (Field field : fieldCls.getFields())
+                {
+                    if (Modifier.isStatic(field.getModifiers()))
+                    {
+                        continue;
+                    }
+                    members++;
+                    Method accessor = flyweightCls.getMethod(field.getName());
+                    assertEquals(field.getName(), field.getType().getName(), accessor.getReturnType().getName());
+                    assertEquals(field.getGenericType().getTypeName(), accessor.getGenericReturnType().getTypeName());
+
+                    Object fieldMember = field.get(fieldCandidate);
+                    Object flyweightMember = accessor.invoke(flyweightCandidate);
+                    assertNotNull(field.getName(), fieldMember);
+                    assertEquals(field.getName(), fieldMember.getClass().getName(), flyweightMember.getClass().getName());
+                    assertEquals(getPath(fieldMember), getPath(flyweightMember));
+                }
+                assertTrue(className, members > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the support of incremental builds, i.e each Q class being generated from (and registered against) only its own
+ * persistable class, and the processor declaring itself "isolating" unless an option needs all persistable classes.
+ */
+public class IncrementalProcessingTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] CUSTOMER = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Customer",
+        "{",
+        "    String name;",
+        "    Address address;",
+        "}"};
+
+    private static final String[] CUSTOMER_EDITED = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Customer",
+        "{",
+        "    String name;",
+        "    String email;",
+        "    Address address;",
+        "}"};
+
+    private static final String[] ADDRESS = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Address",
+        "{",
+        "    String street;",
+        "    Customer resident;",
+        "}"};
+
+    private static final String[] ORDER = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Order",
+        "{",
+        "    Customer customer;",
+        "    @javax.jdo.annotations.PersistenceCapable",
+        "    public static class Line",
+        "    {",
+        "        int quantity;",
+        "    }",
+        "}"};
+
+    private static final String[] HELPER = {"package mydomain;",
+        "public class Helper",
+        "{",
+        "    String value;",
+        "}"};
+
+    private TestCompilation newCompilation()
+    throws IOException
+    {
+        return new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Customer", CUSTOMER)
+            .source("mydomain.Address", ADDRESS)
+            .source("mydomain.Order", ORDER)
+            .source("mydomain.Helper", HELPER);
+    }
+
+    @Test
+    public void testQClassRegisteredAgainstOwnClassOnly()
+    throws IOException
+    {
+        TestCompilation compilation = newCompilation().compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+
+        Map<String, Object> expected = new TreeMap<>();
+        expected.put("mydomain.QAddress", Collections.singletonList("mydomain.Address"));
+        expected.put("mydomain.QCustomer", Collections.singletonList("mydomain.Customer"));
+        expected.put("mydomain.QOrder", Collections.singletonList("mydomain.Order"));
+        assertEquals(expected, compilation.getOriginatingElements());
+        assertTrue(compilation.getGeneratedSource("mydomain.QOrder").contains("public static class QLine"));
+    }
+
+    @Test
+    public void testEditingOneClassRegeneratesOnlyItsQClass()
+    throws IOException
+    {
+        TestCompilation full = newCompilation().compile();
+        assertTrue(full.succeeded());
+
+        // Recompile just the edited class against the previous output, as Gradle does for an isolating processor
+        TestCompilation incremental = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Customer", CUSTOMER_EDITED)
+            .classpath(full.getClassOutput())
+            .compile();
+        assertTrue(incremental.getMessages(Diagnostic.Kind.ERROR).toString(), incremental.succeeded());
+        assertEquals(Collections.singleton("mydomain.QCustomer"), incremental.getOriginatingElements().keySet());
+        assertTrue(incremental.getGeneratedSource("mydomain.QCustomer").contains("email"));
+        assertNull(incremental.getGeneratedSource("mydomain.QAddress"));
+    }
+
+    @Test
+    public void testEditingOneClassRewritesOnlyItsQClassInOutputDirectory()
+    throws IOException
+    {
+        Path outputDir = folder.newFolder("qclasses").toPath();
+        TestCompilation first = newCompilation().option(JDOQueryProcessor.OPTION_OUTPUT_DIRECTORY, outputDir.toString()).compile();
+        assertTrue(first.succeeded());
+
+        FileTime marker = FileTime.fromMillis(1000L);
+        for (String name : Arrays.asList("QCustomer", "QAddress", "QOrder"))
+        {
+            Files.setLastModifiedTime(outputDir.resolve("mydomain/" + name + ".java"), marker);
+        }
+
+        TestCompilation second = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Customer", CUSTOMER_EDITED)
+            .source("mydomain.Address", ADDRESS)
+            .source("mydomain.Order", ORDER)
+            .option(JDOQueryProcessor.OPTION_OUTPUT_DIRECTORY, outputDir.toString())
+            .compile();
+        assertTrue(second.succeeded());
+        assertFalse(marker.equals(Files.getLastModifiedTime(outputDir.resolve("mydomain/QCustomer.java"))));
+        assertEquals(marker, Files.getLastModifiedTime(outputDir.resolve("mydomain/QAddress.java")));
+        assertEquals(marker, Files.getLastModifiedTime(outputDir.resolve("mydomain/QOrder.java")));
+    }
+
+    @Test
+    public void testIsolatingByDefault()
+    throws IOException
+    {
+        TestCompilation compilation = newCompilation().compile();
+        assertIncrementalType(compilation, "org.gradle.annotation.processing.isolating");
+    }
+
+    @Test
+    public void testAggregatingWithStats()
+    throws IOException
+    {
+        TestCompilation compilation = newCompilation().option(JDOQueryProcessor.OPTION_STATS, "true").compile();
+        assertIncrementalType(compilation, "org.gradle.annotation.processing.aggregating");
+        assertNotNull(compilation.getResource(JDOQueryProcessor.STATS_RESOURCE_NAME));
+    }
+
+    @Test
+    public void testAggregatingWithTreeSizeReport()
+    throws IOException
+    {
+        TestCompilation compilation = newCompilation().option(JDOQueryProcessor.OPTION_TREE_SIZE_REPORT, "true").compile();
+        assertIncrementalType(compilation, "org.gradle.annotation.processing.aggregating");
+    }
+
+    @Test
+    public void testAggregatingWithPersistableIndex()
+    throws IOException
+    {
+        TestCompilation compilation = newCompilation().option(JDOQueryProcessor.OPTION_PERSISTABLE_INDEX, "true").compile();
+        assertIncrementalType(compilation, "org.gradle.annotation.processing.aggregating");
+    }
+
+    @Test
+    public void testIsolatingWithOtherOptions()
+    throws IOException
+    {
+        TestCompilation compilation = newCompilation()
+            .option(JDOQueryProcessor.OPTION_MODE, "PROPERTY")
+            .option(JDOQueryProcessor.OPTION_PARALLEL_RENDER, "2")
+            .option(JDOQueryProcessor.OPTION_FIELD_DEPTH_PLANNING, "true")
+            .option(JDOQueryProcessor.OPTION_PATH_CONSTANTS, "true")
+            .compile();
+        assertIncrementalType(compilation, "org.gradle.annotation.processing.isolating");
+    }
+
+    private static void assertIncrementalType(TestCompilation compilation, String expected)
+    {
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertTrue(compilation.getProcessor().getSupportedOptions().contains(expected));
+        String other = expected.endsWith("isolating") ? "org.gradle.annotation.processing.aggregating" : "org.gradle.annotation.processing.isolating";
+        assertFalse(compilation.getProcessor().getSupportedOptions().contains(other));
+    }
+}
@@ -0,0 +1,142 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader of the bytecode sizes of the methods of a class file, to check generated methods against the limits of HotSpot
+ * ("HugeMethodLimit", 8000 bytes) and of the JVM (64KB).
+ */
+final class MethodSizes
+{
+    /** Size of method that HotSpot will JIT compile (HugeMethodLimit). */
+    static final int HUGE_METHOD_LIMIT = 8000;
+
+    private MethodSizes()
+    {
+    }
+
+    /**
+     * Method to read the bytecode sizes of the methods of a class file.
+     * @param classFile The class file
+     * @return The size of the code of each method, keyed by name and descriptor (e.g "&lt;init&gt;(I)V")
+     * @throws IOException If the class file cannot be read
+     */
+    static Map<String, Integer> read(Path classFile)
+    throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(classFile))))
+        {
+            in.readInt(); // magic
+            in.readUnsignedShort(); // minor_version
+            in.readUnsignedShort(); // major_version
+            int constantPoolCount = in.readUnsignedShort();
+            String[] utf8 = new String[constantPoolCount];
+            for (int i = 1; i < constantPoolCount; i++)
+            {
+                int tag = in.readUnsignedByte();
+                switch (tag)
+                {
+                    case 1: // Utf8
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 7: // Class
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        in.skipBytes(2);
+                        break;
+                    case 15: // MethodHandle
+                        in.skipBytes(3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        in.skipBytes(4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+            in.skipBytes(6); // access_flags, this_class, super_class
+            in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+            int fieldCount = in.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i++)
+            {
+                in.skipBytes(6);
+                skipAttributes(in);
+            }
+
+            Map<String, Integer> sizes = new LinkedHashMap<>();
+            int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++)
+            {
+                in.readUnsignedShort(); // access_flags
+                String name = utf8[in.readUnsignedShort()];
+                String descriptor = utf8[in.readUnsignedShort()];
+                int attributeCount = in.readUnsignedShort();
+                for (int j = 0; j < attributeCount; j++)
+                {
+                    String attributeName = utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if (attributeName.equals("Code"))
+                    {
+                        in.skipBytes(4); // max_stack, max_locals
+                        int codeLength = in.readInt();
+                        sizes.put(name + descriptor, codeLength);
+                        in.skipBytes(length - 8);
+                    }
+                    else
+                    {
+                        in.skipBytes(length);
+                    }
+                }
+            }
+            return sizes;
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in)
+    throws IOException
+    {
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++)
+        {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the validation of the JDOQL named queries of the persistable classes, and the constants and methods added to their Q
+ * classes for them ("namedQueries").
+ */
+public class NamedQueryTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] ADDRESS = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Address",
+        "{",
+        "    String city;",
+        "}"};
+
+    private TestCompilation compile(String... queries)
+    throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("package mydomain;");
+        lines.add("@javax.jdo.annotations.PersistenceCapable");
+        lines.add("@javax.jdo.annotations.Queries({");
+        for (int i = 0; i < queries.length; i += 2)
+        {
+            lines.add("    @javax.jdo.annotations.Query(name=\"" + queries[i] + "\", value=\"" + queries[i + 1].replace("\"", "\\\"") + "\")" +
+                (i + 2 < queries.length ? "," : ""));
+        }
+        lines.add("})");
+        lines.add("public class Person");
+        lines.add("{");
+        lines.add("    enum Status {ACTIVE, RETIRED}");
+        lines.add("    String name;");
+        lines.add("    int age;");
+        lines.add("    Status status;");
+        lines.add("    Address address;");
+        lines.add("    java.util.Date born;");
+        lines.add("}");
+
+        return new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Person", lines.toArray(new String[lines.size()]))
+            .source("mydomain.Address", ADDRESS)
+            .option(JDOQueryProcessor.OPTION_NAMED_QUERIES, "true")
+            .compile();
+    }
+
+    private static void assertCompiled(TestCompilation compilation)
+    {
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+    }
+
+    private static void assertError(TestCompilation compilation, String message)
+    {
+        assertFalse(compilation.succeeded());
+        List<String> errors = compilation.getMessages(Diagnostic.Kind.ERROR);
+        assertTrue(errors.toString(), errors.stream().anyMatch(e -> e.contains(message)));
+    }
+
+    @Test
+    public void testTypedMethodsGenerated()
+    throws IOException
+    {
+        TestCompilation compilation = compile(
+            "byName", "SELECT FROM mydomain.Person WHERE this.name == :name",
+            "olderThan", "SELECT FROM mydomain.Person WHERE this.age > minAge PARAMETERS int minAge",
+            "unique", "SELECT UNIQUE FROM mydomain.Person WHERE this.name == n && this.address.city == c PARAMETERS String n, String c",
+            "count", "SELECT count(this) FROM mydomain.Person WHERE this.status == s PARAMETERS mydomain.Person.Status s",
+            "bornAfter", "SELECT FROM mydomain.Person WHERE :date < this.born");
+        assertCompiled(compilation);
+
+        String source = compilation.getGeneratedSource("mydomain.QPerson");
+        assertTrue(source, source.contains("public static final String QUERY_BY_NAME = \"SELECT FROM mydomain.Person WHERE this.name == :name\";"));
+        assertTrue(source, source.contains("public static javax.jdo.Query<Person> newQueryByName(javax.jdo.PersistenceManager pm)"));
+        assertTrue(source, source.contains("public static java.util.List<Person> executeByName(javax.jdo.PersistenceManager pm, java.lang.String name)"));
+        assertTrue(source, source.contains("public static java.util.List<Person> executeOlderThan(javax.jdo.PersistenceManager pm, int minAge)"));
+        assertTrue(source, source.contains("public static Person executeUnique(javax.jdo.PersistenceManager pm, java.lang.String n, java.lang.String c)"));
+        assertTrue(source, source.contains("public static java.util.List<Object> executeCount(javax.jdo.PersistenceManager pm, mydomain.Person.Status s)"));
+        assertTrue(source, source.contains("public static java.util.List<Person> executeBornAfter(javax.jdo.PersistenceManager pm, java.util.Date date)"));
+    }
+
+    @Test
+    public void testExecuteSetsParametersInOrder()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compile(
+            "byNameAndAge", "SELECT FROM mydomain.Person WHERE this.age == a && this.name == n PARAMETERS int a, String n",
+            "byCity", "SELECT FROM mydomain.Person WHERE this.address.city == :city && this.name != :name");
+        assertCompiled(compilation);
+
+        List<Object> calls = new ArrayList<>();
+        List<Object> results = Collections.singletonList("result");
+        Query<?> query = (Query<?>)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Query.class}, (proxy, method, args) -> {
+            calls.add(method.getName());
+            if (method.getName().equals("setParameters"))
+            {
+                calls.add(Arrays.asList((Object[])args[0]));
+                return proxy;
+            }
+            return results;
+        });
+        PersistenceManager pm = (PersistenceManager)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {PersistenceManager.class},
+            (proxy, method, args) -> {
+                calls.add(method.getName());
+                calls.add(((Class<?>)args[0]).getName());
+                calls.add(args[1]);
+                return query;
+            });
+
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QPerson");
+            Object result = qcls.getMethod("executeByNameAndAge", PersistenceManager.class, int.class, String.class).invoke(null, pm, 42, "Fred");
+            assertSame(results, result);
+            assertEquals(Arrays.asList("newNamedQuery", "mydomain.Person", "byNameAndAge", "setParameters", Arrays.asList(42, "Fred"), "executeList"), calls);
+
+            calls.clear();
+            qcls.getMethod("executeByCity", PersistenceManager.class, String.class, String.class).invoke(null, pm, "Paris", "Fred");
+            assertEquals(Arrays.asList("newNamedQuery", "mydomain.Person", "byCity", "setParameters", Arrays.asList("Paris", "Fred"), "executeList"), calls);
+        }
+    }
+
+    @Test
+    public void testStringLiteralsIgnored()
+    throws IOException
+    {
+        assertCompiled(compile("literals", "SELECT FROM mydomain.Person WHERE this.name == 'this.unknown :p' || this.name == \"this.other == x\""));
+    }
+
+    @Test
+    public void testUnknownMemberIsError()
+    throws IOException
+    {
+        assertError(compile("unknown", "SELECT FROM mydomain.Person WHERE this.address.street == 'High St'"),
+            "named query \"unknown\" refers to \"street\" which is not a persistent member of mydomain.Address");
+    }
+
+    @Test
+    public void testParameterTypeMismatchIsError()
+    throws IOException
+    {
+        assertError(compile("mismatch", "SELECT FROM mydomain.Person WHERE this.age == n PARAMETERS String n"),
+            "named query \"mismatch\" compares \"this.age\" of type int with parameter \"n\" of type java.lang.String");
+    }
+
+    @Test
+    public void testComparableParameterTypes()
+    throws IOException
+    {
+        assertCompiled(compile("numeric", "SELECT FROM mydomain.Person WHERE this.age >= n PARAMETERS long n",
+            "boxed", "SELECT FROM mydomain.Person WHERE n == this.age PARAMETERS Integer n",
+            "enumString", "SELECT FROM mydomain.Person WHERE this.status == s PARAMETERS String s",
+            "relation", "SELECT FROM mydomain.Person WHERE this.address == a PARAMETERS Address a"));
+    }
+
+    @Test
+    public void testUnresolvableParameterTypeIsError()
+    throws IOException
+    {
+        assertError(compile("unresolved", "SELECT FROM mydomain.Person WHERE this.name == n PARAMETERS Unknown n"),
+            "named query \"unresolved\" declares parameter \"n\" of type \"Unknown\" which cannot be resolved");
+    }
+
+    @Test
+    public void testMixedParametersIsError()
+    throws IOException
+    {
+        assertError(compile("mixed", "SELECT FROM mydomain.Person WHERE this.name == n && this.age == :age PARAMETERS String n"),
+            "named query \"mixed\" uses implicit parameter \":age\" as well as declaring parameters");
+    }
+
+    @Test
+    public void testClashingNamesMadeUnique()
+    throws IOException
+    {
+        TestCompilation compilation = compile("byName", "SELECT FROM mydomain.Person WHERE this.name == :name",
+            "by_name", "SELECT FROM mydomain.Person WHERE this.name == :name ORDER BY this.age",
+            "ByName", "SELECT FROM mydomain.Person ORDER BY this.name");
+        assertCompiled(compilation);
+
+        String source = compilation.getGeneratedSource("mydomain.QPerson");
+        assertTrue(source, source.contains("QUERY_BY_NAME = "));
+        assertTrue(source, source.contains("QUERY_BY_NAME_2 = "));
+        assertTrue(source, source.contains("QUERY_BY_NAME_3 = "));
+        assertTrue(source, source.contains("newQueryByName("));
+        assertTrue(source, source.contains("newQueryBy_name("));
+        assertTrue(source, source.contains("newQueryByName_2("));
+    }
+}
@@ -0,0 +1,157 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for writing the Q classes to an output directory ("outputDirectory"), including the removal of the Q classes
+ * of classes that no longer exist or are no longer persistable.
+ */
+public class OutputDirectoryTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path outputDir;
+
+    private static final String[] CUSTOMER = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Customer",
+        "{",
+        "    String name;",
+        "}"};
+
+    private static final String[] ADDRESS = {"package mydomain;",
+        "@javax.jdo.annotations.PersistenceCapable",
+        "public class Address",
+        "{",
+        "    String street;",
+        "}"};
+
+    @Before
+    public void setUp()
+    throws IOException
+    {
+        outputDir = folder.newFolder("qclasses").toPath();
+    }
+
+    private TestCompilation newCompilation()
+    throws IOException
+    {
+        return new TestCompilation(folder.newFolder().toPath()).option(JDOQueryProcessor.OPTION_OUTPUT_DIRECTORY, outputDir.toString());
+    }
+
+    private void assertCompiled(TestCompilation compilation)
+    {
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+    }
+
+    private String readManifest()
+    throws IOException
+    {
+        return new String(Files.readAllBytes(outputDir.resolve(JDOQueryProcessor.OUTPUT_DIRECTORY_MANIFEST_NAME)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testQClassesListed()
+    throws IOException
+    {
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER).source("mydomain.Address", ADDRESS).compile());
+        assertTrue(Files.isRegularFile(outputDir.resolve("mydomain/QCustomer.java")));
+        assertTrue(Files.isRegularFile(outputDir.resolve("mydomain/QAddress.java")));
+        assertEquals("mydomain.QAddress=mydomain.Address\nmydomain.QCustomer=mydomain.Customer\n", readManifest());
+    }
+
+    @Test
+    public void testQClassOfRemovedClassDeleted()
+    throws IOException
+    {
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER).source("mydomain.Address", ADDRESS).compile());
+
+        TestCompilation compilation = newCompilation().source("mydomain.Customer", CUSTOMER).compile();
+        assertCompiled(compilation);
+        assertTrue(Files.isRegularFile(outputDir.resolve("mydomain/QCustomer.java")));
+        assertFalse(Files.exists(outputDir.resolve("mydomain/QAddress.java")));
+        assertEquals("mydomain.QCustomer=mydomain.Customer\n", readManifest());
+        assertEquals(1, compilation.getMessages(Diagnostic.Kind.NOTE).stream().filter(m -> m.contains("QAddress deleted")).count());
+    }
+
+    @Test
+    public void testQClassOfRenamedClassDeleted()
+    throws IOException
+    {
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER).source("mydomain.Address", ADDRESS).compile());
+
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER)
+            .source("mydomain.Location", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Location",
+                "{",
+                "    String street;",
+                "}")
+            .compile());
+        assertFalse(Files.exists(outputDir.resolve("mydomain/QAddress.java")));
+        assertTrue(Files.isRegularFile(outputDir.resolve("mydomain/QLocation.java")));
+        assertEquals("mydomain.QCustomer=mydomain.Customer\nmydomain.QLocation=mydomain.Location\n", readManifest());
+    }
+
+    @Test
+    public void testQClassOfNoLongerPersistableClassDeleted()
+    throws IOException
+    {
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER).source("mydomain.Address", ADDRESS).compile());
+
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER)
+            .source("mydomain.Address", "package mydomain;",
+                "public class Address",
+                "{",
+                "    String street;",
+                "}")
+            .compile());
+        assertFalse(Files.exists(outputDir.resolve("mydomain/QAddress.java")));
+        assertEquals("mydomain.QCustomer=mydomain.Customer\n", readManifest());
+    }
+
+    @Test
+    public void testQClassOfClassNotRecompiledRetained()
+    throws IOException
+    {
+        TestCompilation full = newCompilation().source("mydomain.Customer", CUSTOMER).source("mydomain.Address", ADDRESS).compile();
+        assertCompiled(full);
+
+        // Incremental compilation of just one class, with the other class on the classpath
+        assertCompiled(newCompilation().source("mydomain.Customer", CUSTOMER).classpath(full.getClassOutput()).compile());
+        assertTrue(Files.isRegularFile(outputDir.resolve("mydomain/QAddress.java")));
+        assertEquals("mydomain.QAddress=mydomain.Address\nmydomain.QCustomer=mydomain.Customer\n", readManifest());
+    }
+}
@@ -0,0 +1,110 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the rendering of the Q classes on a pool of threads ("parallelRender"), which must generate the same sources as serial rendering.
+ */
+public class ParallelRenderTest
+{
+    private static final int CLASS_COUNT = 40;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestCompilation newCompilation()
+    throws IOException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath());
+        for (int i = 0; i < CLASS_COUNT; i++)
+        {
+            compilation.source("mydomain.Entity" + i, "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Entity" + i + (i % 4 != 0 ? " extends Entity" + (i - 1) : ""),
+                "{",
+                "    String name" + i + ";",
+                "    int count" + i + ";",
+                "    java.util.List<Entity" + ((i + 3) % CLASS_COUNT) + "> items" + i + ";",
+                "    Entity" + ((i + 1) % CLASS_COUNT) + " next" + i + ";",
+                "    @javax.jdo.annotations.PersistenceCapable",
+                "    public static class Detail",
+                "    {",
+                "        java.util.Date when;",
+                "        Entity" + i + " owner;",
+                "    }",
+                "}");
+        }
+        return compilation;
+    }
+
+    @Test
+    public void testParallelRenderMatchesSerial()
+    throws IOException
+    {
+        assertParallelRenderMatchesSerial(null);
+    }
+
+    @Test
+    public void testParallelRenderMatchesSerialWithOptions()
+    throws IOException
+    {
+        assertParallelRenderMatchesSerial("PROPERTY");
+    }
+
+    private void assertParallelRenderMatchesSerial(String queryMode)
+    throws IOException
+    {
+        TestCompilation serial = newCompilation()
+            .option(JDOQueryProcessor.OPTION_FIELD_NUMBERS, "true")
+            .option(JDOQueryProcessor.OPTION_PATH_CONSTANTS, "true");
+        TestCompilation parallel = newCompilation()
+            .option(JDOQueryProcessor.OPTION_FIELD_NUMBERS, "true")
+            .option(JDOQueryProcessor.OPTION_PATH_CONSTANTS, "true")
+            .option(JDOQueryProcessor.OPTION_PARALLEL_RENDER, "4");
+        if (queryMode != null)
+        {
+            serial.option(JDOQueryProcessor.OPTION_MODE, queryMode);
+            parallel.option(JDOQueryProcessor.OPTION_MODE, queryMode);
+        }
+        serial.compile();
+        parallel.compile();
+        assertTrue(serial.getMessages(Diagnostic.Kind.ERROR).toString(), serial.succeeded());
+        assertTrue(parallel.getMessages(Diagnostic.Kind.ERROR).toString(), parallel.succeeded());
+
+        assertEquals(CLASS_COUNT, serial.getOriginatingElements().size());
+        assertEquals(serial.getOriginatingElements(), parallel.getOriginatingElements());
+        for (String qclassName : serial.getOriginatingElements().keySet())
+        {
+            String serialSource = serial.getGeneratedSource(qclassName);
+            assertNotNull(serialSource);
+            assertEquals(qclassName, serialSource, parallel.getGeneratedSource(qclassName));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.tools.Diagnostic;
+
+import org.datanucleus.api.jdo.query.ExpressionType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stress test of the lazy accessors of the Q classes generated in PROPERTY mode, calling the accessors of fresh Q class instances from
+ * many threads at once, which must all get the same (fully constructed) expression for a member.
+ */
+public class PropertyAccessorConcurrencyTest
+{
+    private static final int THREAD_COUNT = 8;
+
+    private static final int ROUNDS = 500;
+
+    private static final String[] MEMBER_NAMES = {"name", "count", "items", "next"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentFirstAccessReturnsSameMember()
+    throws Exception
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Node", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Node",
+                "{",
+                "    String name;",
+                "    int count;",
+                "    java.util.List<Node> items;",
+                "    Node next;",
+                "}")
+            .option(JDOQueryProcessor.OPTION_MODE, "PROPERTY")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> cls = loader.loadClass("mydomain.Node");
+            Class<?> qcls = loader.loadClass("mydomain.QNode");
+            Constructor<?> constructor = qcls.getConstructor(Class.class, String.class, ExpressionType.class);
+            List<Method> accessors = new ArrayList<>();
+            for (String memberName : MEMBER_NAMES)
+            {
+                accessors.add(qcls.getMethod(memberName));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+            try
+            {
+                for (int round = 0; round < ROUNDS; round++)
+                {
+                    Object qobject = constructor.newInstance(cls, "n" + round, ExpressionType.VARIABLE);
+                    Method accessor = accessors.get(round % accessors.size());
+                    CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+                    List<Future<Object>> results = new ArrayList<>();
+                    for (int i = 0; i < THREAD_COUNT; i++)
+                    {
+                        results.add(executor.submit(() -> {
+                            barrier.await();
+                            return accessor.invoke(qobject);
+                        }));
+                    }
+
+                    Object member = results.get(0).get();
+                    assertNotNull(accessor.getName(), member);
+                    for (Future<Object> result : results)
+                    {
+                        assertSame(accessor.getName(), member, result.get());
+                    }
+                    assertSame(accessor.getName(), member, accessor.invoke(qobject));
+                }
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testNavigationCreatesMembersOnce()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Node", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Node",
+                "{",
+                "    String name;",
+                "    Node next;",
+                "}")
+            .option(JDOQueryProcessor.OPTION_MODE, "PROPERTY")
+            .compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QNode");
+            Method next = qcls.getMethod("next");
+            Object candidate = qcls.getMethod("candidate").invoke(null);
+
+            // Navigating a cyclic relation creates each related Q class on first access only
+            Object related = candidate;
+            for (int i = 0; i < 10; i++)
+            {
+                Object nextRelated = next.invoke(related);
+                assertNotNull(nextRelated);
+                assertSame(nextRelated, next.invoke(related));
+                related = nextRelated;
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Compilation of some (persistable) classes with the JDOQueryProcessor, for use by the tests.
+ * The classes are compiled against the JDO API, and DataNucleus JDO API and core, so the generated Q classes compile (and can be
+ * loaded) as in a user project. The sources generated by the processor are recorded along with the elements they were registered
+ * against with the Filer.
+ * <pre>
+ * TestCompilation compilation = new TestCompilation(dir)
+ *     .source("mydomain.A", "package mydomain;", "@javax.jdo.annotations.PersistenceCapable", "public class A {", "String name;", "}")
+ *     .option("queryMode", "PROPERTY")
+ *     .compile();
+ * </pre>
+ */
+final class TestCompilation
+{
+    /** Classes whose location is put on the classpath of the compilation. */
+    private static final String[] CLASSPATH_CLASSES = {"javax.jdo.annotations.PersistenceCapable", "org.datanucleus.api.jdo.query.PersistableExpressionImpl",
+        "org.datanucleus.store.query.expression.Expression", "org.datanucleus.jdo.query.JDOQueryProcessor"};
+
+    private final Path sourceOutput;
+
+    private final Path classOutput;
+
+    private final Map<String, String> sources = new LinkedHashMap<>();
+
+    private final List<Path> classpath = new ArrayList<>();
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+
+    private final JDOQueryProcessor processor = new JDOQueryProcessor();
+
+    /** Names of the generated sources, and the names of the elements they were registered against. */
+    private final Map<String, List<String>> originatingElements = new TreeMap<>();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    private boolean succeeded;
+
+    /**
+     * Constructor for a compilation writing the generated sources and classes under the specified directory.
+     * @param dir The directory
+     * @throws IOException Thrown if the output directories can't be created
+     */
+    TestCompilation(Path dir)
+    throws IOException
+    {
+        this.sourceOutput = Files.createDirectories(dir.resolve("generated"));
+        this.classOutput = Files.createDirectories(dir.resolve("classes"));
+    }
+
+    /**
+     * Method to add a source to compile.
+     * @param className Fully-qualified name of the (top level) class
+     * @param lines Lines of the source
+     * @return This compilation
+     */
+    TestCompilation source(String className, String... lines)
+    {
+        sources.put(className, String.join("\n", lines) + "\n");
+        return this;
+    }
+
+    /**
+     * Method to add a directory (or jar) of classes to the classpath, e.g the output of a previous compilation.
+     * @param path The path
+     * @return This compilation
+     */
+    TestCompilation classpath(Path path)
+    {
+        classpath.add(path);
+        return this;
+    }
+
+    /**
+     * Method to add an option for the processor (i.e "-A{name}={value}").
+     * @param name Name of the option
+     * @param value Value of the option
+     * @return This compilation
+     */
+    TestCompilation option(String name, String value)
+    {
+        options.put(name, value);
+        return this;
+    }
+
+    /**
+     * Method to compile the sources with the processor.
+     * @return This compilation
+     * @throws IOException Thrown if an error occurs setting up the file manager
+     */
+    TestCompilation compile()
+    throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8))
+        {
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(sourceOutput.toFile()));
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classOutput.toFile()));
+            fileManager.setLocation(StandardLocation.CLASS_PATH, getClasspath());
+
+            List<JavaFileObject> compilationUnits = new ArrayList<>();
+            for (Map.Entry<String, String> entry : sources.entrySet())
+            {
+                compilationUnits.add(new StringSource(entry.getKey(), entry.getValue()));
+            }
+            List<String> args = new ArrayList<>();
+            for (Map.Entry<String, String> entry : options.entrySet())
+            {
+                args.add("-A" + entry.getKey() + "=" + entry.getValue());
+            }
+
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, args, null, compilationUnits);
+            task.setProcessors(Collections.singletonList(new RecordingProcessor(processor, originatingElements)));
+            succeeded = task.call();
+        }
+        return this;
+    }
+
+    /**
+     * Accessor for the classpath of the compilation, being any added paths and the locations of the APIs the Q classes use.
+     * @return The classpath
+     */
+    private List<File> getClasspath()
+    {
+        Set<File> files = new LinkedHashSet<>();
+        for (Path path : classpath)
+        {
+            files.add(path.toFile());
+        }
+        for (String className : CLASSPATH_CLASSES)
+        {
+            files.add(getLocation(className));
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Accessor for the location (directory or jar) of the specified class.
+     * @param className Name of the class
+     * @return The location
+     */
+    static File getLocation(String className)
+    {
+        try
+        {
+            return new File(Class.forName(className).getProtectionDomain().getCodeSource().getLocation().toURI());
+        }
+        catch (ClassNotFoundException | URISyntaxException e)
+        {
+            throw new IllegalStateException("Location of " + className + " not found", e);
+        }
+    }
+
+    /**
+     * Accessor for whether the compilation (including the compilation of the generated sources) succeeded.
+     * @return Whether it succeeded
+     */
+    boolean succeeded()
+    {
+        return succeeded;
+    }
+
+    /**
+     * Accessor for the processor used by the compilation.
+     * @return The processor
+     */
+    JDOQueryProcessor getProcessor()
+    {
+        return processor;
+    }
+
+    /**
+     * Accessor for the messages of the specified kind reported by the compilation.
+     * @param kind Kind of message
+     * @return The messages
+     */
+    List<String> getMessages(Diagnostic.Kind kind)
+    {
+        List<String> messages = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+        {
+            if (diagnostic.getKind() == kind)
+            {
+                messages.add(diagnostic.getMessage(Locale.ROOT));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Accessor for the names of the sources generated via the Filer, and the names of the elements they were registered against.
+     * @return The originating elements, keyed by the name of the generated source
+     */
+    Map<String, List<String>> getOriginatingElements()
+    {
+        return originatingElements;
+    }
+
+    /**
+     * Accessor for a generated source.
+     * @param className Fully-qualified name of the generated class
+     * @return The source, or null if not generated
+     * @throws IOException Thrown if an error occurs reading the source
+     */
+    String getGeneratedSource(String className)
+    throws IOException
+    {
+        Path file = sourceOutput.resolve(className.replace('.', '/') + ".java");
+        return Files.isRegularFile(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Accessor for a resource generated in the class output.
+     * @param name Name of the resource
+     * @return The resource, or null if not generated
+     * @throws IOException Thrown if an error occurs reading the resource
+     */
+    String getResource(String name)
+    throws IOException
+    {
+        Path file = classOutput.resolve(name);
+        return Files.isRegularFile(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Accessor for the directory the classes were compiled to.
+     * @return The directory
+     */
+    Path getClassOutput()
+    {
+        return classOutput;
+    }
+
+    /**
+     * Method to create a class loader for the compiled classes, delegating to the class loader of the tests for the APIs.
+     * @return The class loader
+     */
+    URLClassLoader newClassLoader()
+    {
+        try
+        {
+            List<URL> urls = new ArrayList<>();
+            urls.add(classOutput.toUri().toURL());
+            for (Path path : classpath)
+            {
+                urls.add(path.toUri().toURL());
+            }
+            return new URLClassLoader(urls.toArray(new URL[urls.size()]), TestCompilation.class.getClassLoader());
+        }
+        catch (MalformedURLException mue)
+        {
+            throw new IllegalStateException(mue);
+        }
+    }
+
+    /**
+     * Source of a class held as a String.
+     */
+    private static class StringSource extends SimpleJavaFileObject
+    {
+        private final String code;
+
+        StringSource(String className, String code)
+        {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return code;
+        }
+    }
+
+    /**
+     * Processor delegating to the JDOQueryProcessor, providing it with a Filer that records the originating elements of the sources it creates.
+     */
+    private static class RecordingProcessor implements Processor
+    {
+        private final Processor delegate;
+
+        private final Map<String, List<String>> originatingElements;
+
+        RecordingProcessor(Processor delegate, Map<String, List<String>> originatingElements)
+        {
+            this.delegate = delegate;
+            this.originatingElements = originatingElements;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions()
+        {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes()
+        {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion()
+        {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment pe)
+        {
+            delegate.init(new RecordingProcessingEnvironment(pe, new RecordingFiler(pe.getFiler(), originatingElements)));
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+        {
+            return delegate.process(annotations, roundEnv);
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation, ExecutableElement member, String userText)
+        {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+
+    /**
+     * Processing environment delegating to that of the compiler, except for the Filer.
+     */
+    private static class RecordingProcessingEnvironment implements ProcessingEnvironment
+    {
+        private final ProcessingEnvironment delegate;
+
+        private final Filer filer;
+
+        RecordingProcessingEnvironment(ProcessingEnvironment delegate, Filer filer)
+        {
+            this.delegate = delegate;
+            this.filer = filer;
+        }
+
+        @Override
+        public Map<String, String> getOptions()
+        {
+            return delegate.getOptions();
+        }
+
+        @Override
+        public Messager getMessager()
+        {
+            return delegate.getMessager();
+        }
+
+        @Override
+        public Filer getFiler()
+        {
+            return filer;
+        }
+
+        @Override
+        public Elements getElementUtils()
+        {
+            return delegate.getElementUtils();
+        }
+
+        @Override
+        public Types getTypeUtils()
+        {
+            return delegate.getTypeUtils();
+        }
+
+        @Override
+        public SourceVersion getSourceVersion()
+        {
+            return delegate.getSourceVersion();
+        }
+
+        @Override
+        public Locale getLocale()
+        {
+            return delegate.getLocale();
+        }
+    }
+
+    /**
+     * Filer delegating to that of the compiler, recording the originating elements of the sources created.
+     */
+    private static class RecordingFiler implements Filer
+    {
+        private final Filer delegate;
+
+        private final Map<String, List<String>> originatingElements;
+
+        RecordingFiler(Filer delegate, Map<String, List<String>> originatingElements)
+        {
+            this.delegate = delegate;
+            this.originatingElements = originatingElements;
+        }
+
+        @Override
+        public JavaFileObject createSourceFile(CharSequence name, Element... elements)
+        throws IOException
+        {
+            List<String> elementNames = new ArrayList<>();
+            for (Element element : elements)
+            {
+                elementNames.add(((TypeElement)element).getQualifiedName().toString());
+            }
+            synchronized (originatingElements)
+            {
+                originatingElements.put(name.toString(), elementNames);
+            }
+            return delegate.createSourceFile(name, elements);
+        }
+
+        @Override
+        public JavaFileObject createClassFile(CharSequence name, Element... elements)
+        throws IOException
+        {
+            return delegate.createClassFile(name, elements);
+        }
+
+        @Override
+        public FileObject createResource(Location location, CharSequence pkg, CharSequence relativeName, Element... elements)
+        throws IOException
+        {
+            return delegate.createResource(location, pkg, relativeName, elements);
+        }
+
+        @Override
+        public FileObject getResource(Location location, CharSequence pkg, CharSequence relativeName)
+        throws IOException
+        {
+            return delegate.getResource(location, pkg, relativeName);
+        }
+    }
+}
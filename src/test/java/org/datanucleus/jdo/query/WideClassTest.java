@@ -0,0 +1,224 @@
+/**********************************************************************
+Copyright (c) 2026 Andy Jefferson and others. All rights reserved.
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+
+Contributors:
+   ...
+**********************************************************************/
+package org.datanucleus.jdo.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the Q classes of persistable classes with many fields, whose members are created by init methods (each small enough
+ * to be JIT compiled) rather than in the constructors, and whose FieldAccessor methods delegate to methods for ranges of field numbers.
+ */
+public class WideClassTest
+{
+    private static final String[] FIELD_TYPES = {"String", "int", "java.util.List<Other>", "Other", "Long", "java.util.Date"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestCompilation newWideClassCompilation(int numberOfFields)
+    throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("package mydomain;");
+        lines.add("@javax.jdo.annotations.PersistenceCapable");
+        lines.add("public class Wide");
+        lines.add("{");
+        for (int i = 0; i < numberOfFields; i++)
+        {
+            lines.add("    " + FIELD_TYPES[i % FIELD_TYPES.length] + " field" + i + ";");
+        }
+        lines.add("}");
+
+        return new TestCompilation(folder.newFolder().toPath())
+            .source("mydomain.Wide", lines.toArray(new String[lines.size()]))
+            .source("mydomain.Other", "package mydomain;",
+                "@javax.jdo.annotations.PersistenceCapable",
+                "public class Other",
+                "{",
+                "    String name;",
+                "}");
+    }
+
+    private TestCompilation compileWideClass(int numberOfFields, String... options)
+    throws IOException
+    {
+        TestCompilation compilation = newWideClassCompilation(numberOfFields);
+        for (int i = 0; i < options.length; i += 2)
+        {
+            compilation.option(options[i], options[i + 1]);
+        }
+        compilation.compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertTrue(compilation.getMessages(Diagnostic.Kind.WARNING).toString(), compilation.getMessages(Diagnostic.Kind.WARNING).isEmpty());
+        return compilation;
+    }
+
+    @Test
+    public void testWideClassMembersCreatedByInitMethods()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compileWideClass(900);
+        assertTrue(compilation.getGeneratedSource("mydomain.QWide").contains("jdoInitMembers0"));
+
+        // All methods, including both constructors, are small enough to be JIT compiled
+        Map<String, Integer> methodSizes = MethodSizes.read(compilation.getClassOutput().resolve("mydomain/QWide.class"));
+        assertTrue(methodSizes.toString(), methodSizes.containsKey("<init>(Ljavax/jdo/query/PersistableExpression;Ljava/lang/String;I)V"));
+        assertTrue(methodSizes.toString(), methodSizes.containsKey("<init>(Ljava/lang/Class;Ljava/lang/String;Lorg/datanucleus/api/jdo/query/ExpressionType;)V"));
+        int initMethods = 0;
+        for (Map.Entry<String, Integer> method : methodSizes.entrySet())
+        {
+            if (method.getKey().startsWith("jdoInitMembers"))
+            {
+                initMethods++;
+            }
+            assertTrue(method.toString(), method.getValue() < MethodSizes.HUGE_METHOD_LIMIT);
+        }
+        assertTrue(initMethods > 1);
+
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QWide");
+            Object candidate = qcls.getMethod("candidate").invoke(null);
+            Object parameter = qcls.getMethod("parameter", String.class).invoke(null, "p");
+            for (int i = 0; i < 900; i++)
+            {
+                // Set by the init methods, so not final
+                Field field = qcls.getField("field" + i);
+                assertFalse(field.getName(), Modifier.isFinal(field.getModifiers()));
+                assertNotNull(field.getName(), field.get(candidate));
+                assertNotNull(field.getName(), field.get(parameter));
+            }
+        }
+    }
+
+    @Test
+    public void testConstructorsUnderHugeMethodLimit()
+    throws IOException
+    {
+        TestCompilation compilation = compileWideClass(500);
+        assertTrue(compilation.getGeneratedSource("mydomain.QWide").contains("jdoInitMembers0"));
+
+        for (Map.Entry<String, Integer> method : MethodSizes.read(compilation.getClassOutput().resolve("mydomain/QWide.class")).entrySet())
+        {
+            assertTrue(method.toString(), method.getValue() < MethodSizes.HUGE_METHOD_LIMIT);
+        }
+    }
+
+    @Test
+    public void testFieldsFinalWhenCreatedInConstructors()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compileWideClass(100);
+        assertFalse(compilation.getGeneratedSource("mydomain.QWide").contains("jdoInitMembers"));
+
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> qcls = loader.loadClass("mydomain.QWide");
+            for (int i = 0; i < 100; i++)
+            {
+                assertTrue(Modifier.isFinal(qcls.getField("field" + i).getModifiers()));
+            }
+        }
+    }
+
+    @Test
+    public void testCompactModeUsesFields()
+    throws IOException
+    {
+        // COMPACT mode (members created from a table) is no longer supported, since FIELD mode now splits the constructors of wide classes
+        TestCompilation compilation = newWideClassCompilation(900).option(JDOQueryProcessor.OPTION_MODE, "COMPACT");
+        compilation.compile();
+        assertTrue(compilation.getMessages(Diagnostic.Kind.ERROR).toString(), compilation.succeeded());
+        assertEquals(1, compilation.getMessages(Diagnostic.Kind.WARNING).size());
+        assertTrue(compilation.getMessages(Diagnostic.Kind.WARNING).get(0).contains("queryMode=COMPACT"));
+
+        assertEquals(compileWideClass(900).getGeneratedSource("mydomain.QWide"), compilation.getGeneratedSource("mydomain.QWide"));
+    }
+
+    @Test
+    public void testFieldAccessorSplitIntoRanges()
+    throws IOException, ReflectiveOperationException
+    {
+        TestCompilation compilation = compileWideClass(900, JDOQueryProcessor.OPTION_ACCESSORS, "true");
+        String source = compilation.getGeneratedSource("mydomain.QWide");
+        assertTrue(source.contains("return get0(obj, fieldNumber);"));
+        assertTrue(source.contains("set0(obj, fieldNumber, value);"));
+
+        for (Map.Entry<String, Integer> method : MethodSizes.read(compilation.getClassOutput().resolve("mydomain/QWide$FieldAccessor.class")).entrySet())
+        {
+            assertTrue(method.toString(), method.getValue() < MethodSizes.HUGE_METHOD_LIMIT);
+        }
+
+        try (URLClassLoader loader = compilation.newClassLoader())
+        {
+            Class<?> cls = loader.loadClass("mydomain.Wide");
+            Class<?> accessor = loader.loadClass("mydomain.QWide$FieldAccessor");
+            Method fieldNumber = loader.loadClass("mydomain.QWide").getMethod("jdoFieldNumber", String.class);
+            Method get = accessor.getMethod("get", cls, int.class);
+            Method set = accessor.getMethod("set", cls, int.class, Object.class);
+            Method getInt = accessor.getMethod("getInt", cls, int.class);
+            Method setInt = accessor.getMethod("setInt", cls, int.class, int.class);
+
+            Object obj = cls.getConstructor().newInstance();
+            for (int i = 0; i < 900; i += FIELD_TYPES.length)
+            {
+                set.invoke(null, obj, fieldNumber.invoke(null, "field" + i), "value" + i);
+                setInt.invoke(null, obj, fieldNumber.invoke(null, "field" + (i + 1)), i);
+            }
+            for (int i = 0; i < 900; i += FIELD_TYPES.length)
+            {
+                assertEquals("value" + i, get.invoke(null, obj, fieldNumber.invoke(null, "field" + i)));
+                assertEquals(i, getInt.invoke(null, obj, fieldNumber.invoke(null, "field" + (i + 1))));
+                assertEquals(i, get.invoke(null, obj, fieldNumber.invoke(null, "field" + (i + 1))));
+            }
+
+            for (int unknown : new int[] {-1, 900, 100000})
+            {
+                try
+                {
+                    get.invoke(null, obj, unknown);
+                    fail("Field " + unknown + " should not be readable");
+                }
+                catch (InvocationTargetException e)
+                {
+                    assertTrue(e.getCause() instanceof IllegalArgumentException);
+                }
+            }
+        }
+    }
+}